@@ -21,6 +21,15 @@ public interface ASTVisitor {
 	void visitEnter(IfNode node);
 	void visitExit(IfNode node);
 
+	void visitEnter(WhileNode node);
+	void visitExit(WhileNode node);
+
+	void visitEnter(ProcedureNode node);
+	void visitExit(ProcedureNode node);
+
+	void visitEnter(CallNode node);
+	void visitExit(CallNode node);
+
 	void visitEnter(IntOperatorNode node);
 	void visitExit(IntOperatorNode node);
 
@@ -65,6 +74,24 @@ public interface ASTVisitor {
 		@Override
 		public void visitExit(IfNode node) {}
 
+		@Override
+		public void visitEnter(WhileNode node) {}
+
+		@Override
+		public void visitExit(WhileNode node) {}
+
+		@Override
+		public void visitEnter(ProcedureNode node) {}
+
+		@Override
+		public void visitExit(ProcedureNode node) {}
+
+		@Override
+		public void visitEnter(CallNode node) {}
+
+		@Override
+		public void visitExit(CallNode node) {}
+
 		@Override
 		public void visitEnter(IntOperatorNode node) {}
 
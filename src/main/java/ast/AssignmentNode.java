@@ -6,7 +6,7 @@ public class AssignmentNode extends ASTNode {
 	public LocatedString lhs;
 	public ASTNode rhs;
 
-	AssignmentNode(LocatedString lexeme, LocatedString lhs, ASTNode rhs) {
+	public AssignmentNode(LocatedString lexeme, LocatedString lhs, ASTNode rhs) {
 		super(lexeme);
 		this.lhs = lhs;
 		this.rhs = rhs;
@@ -0,0 +1,30 @@
+package ast;
+
+import lexer.LocatedString;
+
+import java.util.List;
+
+public class CallNode extends ASTNode {
+	public LocatedString lhs;
+	public LocatedString name;
+	public List<ASTNode> args;
+	// resolved by the parser; procedures must be declared before they are called
+	public ProcedureNode procedure;
+
+	CallNode(LocatedString lexeme, LocatedString lhs, LocatedString name, List<ASTNode> args, ProcedureNode procedure) {
+		super(lexeme);
+		this.lhs = lhs;
+		this.name = name;
+		this.args = args;
+		this.procedure = procedure;
+	}
+
+	@Override
+	public void acceptVisitor(ASTVisitor visitor) {
+		visitor.visitEnter(this);
+		for (ASTNode arg : args) {
+			arg.acceptVisitor(visitor);
+		}
+		visitor.visitExit(this);
+	}
+}
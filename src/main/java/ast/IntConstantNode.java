@@ -2,12 +2,22 @@ package ast;
 
 import lexer.LocatedString;
 
+import java.math.BigInteger;
+
 public class IntConstantNode extends ASTNode {
 	// for the same reason as in the lexer, the integer representation is a String.
-	// We use super's lexeme
+	// We use super's lexeme, and parse it once here for everything that evaluates the constant.
+	public final BigInteger value;
+	// whether the value fits in a long, and if so the value as one, so evaluators on longs need
+	// not decide again every time they meet the constant
+	public final boolean fitsLong;
+	public final long longValue;
 
 	public IntConstantNode(LocatedString lexeme) {
 		super(lexeme);
+		this.value = new BigInteger(lexeme.s);
+		this.fitsLong = this.value.bitLength() < Long.SIZE;
+		this.longValue = this.value.longValue();
 	}
 
 	@Override
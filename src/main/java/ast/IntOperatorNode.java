@@ -40,6 +40,14 @@ public class IntOperatorNode extends ASTNode {
 		this.right = right;
 	}
 
+	// for rewritten expressions, which have no token of their own; right is null for NEGATE
+	public IntOperatorNode(LocatedString lexeme, Operator op, ASTNode left, ASTNode right) {
+		super(lexeme);
+		this.op = op;
+		this.left = left;
+		this.right = right;
+	}
+
 
 	@Override
 	public void acceptVisitor(ASTVisitor visitor) {
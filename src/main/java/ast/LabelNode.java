@@ -5,7 +5,7 @@ import lexer.LocatedString;
 public class LabelNode extends ASTNode {
 	public LocatedString label;
 
-	LabelNode(LocatedString lexeme) {
+	public LabelNode(LocatedString lexeme) {
 		super(lexeme);
 		this.label = lexeme;
 	}
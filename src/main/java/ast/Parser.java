@@ -8,20 +8,36 @@ import java.util.*;
 public class Parser {
 	public Lexer stream;
 	public Logger logger;
+	// procedures declared so far, by name
+	Map<String, ProcedureNode> procedures;
 
 	public Parser(Lexer stream) {
 		this.stream = stream;
 		this.logger = new Logger(LogLevel.DEBUG);
+		this.procedures = new HashMap<>();
 	}
 
 	public ASTNode parseProgram() {
-		ASTNode program = parseBlock();
+		ASTNode program = parseProcedures();
 		if (this.logger.dump() != LogLevel.DEBUG) {
 			return null;
 		}
 		return program;
 	}
 
+	// parses the program, handing each statement to listener as soon as it is complete instead of
+	// building the tree. Only the statement being parsed is held in memory.
+	// Stops at the first syntax error; returns false if there was one.
+	public boolean streamProgram(StatementListener listener) {
+		if (nextIs(StaticToken.PROC)) {
+			logger.log(LogLevel.SEVERE, "Procedures are not supported when streaming a program, got proc at line " + stream.peek().getLexeme().line);
+			logger.dump();
+			return false;
+		}
+		boolean ok = streamBlock(listener);
+		return this.logger.dump() == LogLevel.DEBUG && ok;
+	}
+
 	// EVERY time the stream is read it must have hasNext() called and flag an error if it doesn't.
 	// This is encapsulated in checkHasNext() for "dumb" checks and expect() for StaticTokens
 
@@ -83,6 +99,97 @@ public class Parser {
 		return true;
 	}
 
+	// peeks without logging anything at the end of the file
+	private boolean nextIs(StaticToken token) {
+		return stream.hasNext() && stream.peek() instanceof StaticTokenImpl t && t.token == token;
+	}
+
+	private LocatedString expectLabel(String what) {
+		if (!checkHasNext()) return null;
+		Token token = stream.next();
+		if (token instanceof LabelToken l) {
+			return l.getLexeme();
+		}
+		LocatedString lexeme = token.getLexeme();
+		logger.log(LogLevel.SEVERE, "Expected " + what + ", got " + lexeme.s + " at line " + lexeme.line + ", column " + lexeme.col);
+		return null;
+	}
+
+	// the procedures, then the main block
+	private ASTNode parseProcedures() {
+		List<ProcedureNode> procedures = new ArrayList<>();
+		while (nextIs(StaticToken.PROC)) {
+			ProcedureNode procedure = parseProcedure();
+			if (procedure == null) return null;
+			procedures.add(procedure);
+		}
+		ASTNode block = parseBlock();
+		if (block == null) return null;
+		ProgramNode program = new ProgramNode(block.lexeme, procedures);
+		program.children = ((BlockNode) block).children;
+		return program;
+	}
+
+	// proc name(p1, p2) returns(r) requires(cond) ensures(cond) { body }
+	// with requires and ensures optional. A procedure can only call procedures declared before it.
+	private ProcedureNode parseProcedure() {
+		Token token = stream.peek();
+		if (!expect(StaticToken.PROC)) return null;
+		LocatedString name = expectLabel("procedure name");
+		if (name == null) return null;
+		if (!expect(StaticToken.LEFT_PAREN)) return null;
+		List<LocatedString> params = new ArrayList<>();
+		Set<String> names = new HashSet<>();
+		if (!nextIs(StaticToken.RIGHT_PAREN)) {
+			do {
+				LocatedString param = expectLabel("parameter");
+				if (param == null) return null;
+				if (!names.add(param.s)) {
+					logger.log(LogLevel.SEVERE, "Parameter " + param.s + " declared twice at line " + param.line + ", column " + param.col);
+					return null;
+				}
+				params.add(param);
+			} while (nextIs(StaticToken.COMMA) && expect(StaticToken.COMMA));
+		}
+		if (!expect(StaticToken.RIGHT_PAREN)) return null;
+		if (!expect(StaticToken.RETURNS)) return null;
+		if (!expect(StaticToken.LEFT_PAREN)) return null;
+		LocatedString result = expectLabel("result");
+		if (result == null) return null;
+		if (!expect(StaticToken.RIGHT_PAREN)) return null;
+		if (names.contains(result.s)) {
+			logger.log(LogLevel.SEVERE, "Result " + result.s + " is also a parameter at line " + result.line + ", column " + result.col);
+			return null;
+		}
+		ASTNode requires = null;
+		if (nextIs(StaticToken.REQUIRES)) {
+			requires = parseContract(StaticToken.REQUIRES);
+			if (requires == null) return null;
+		}
+		ASTNode ensures = null;
+		if (nextIs(StaticToken.ENSURES)) {
+			ensures = parseContract(StaticToken.ENSURES);
+			if (ensures == null) return null;
+		}
+		ASTNode body = parseBlock();
+		if (body == null) return null;
+		if (this.procedures.containsKey(name.s)) {
+			logger.log(LogLevel.SEVERE, "Procedure " + name.s + " declared twice at line " + name.line + ", column " + name.col);
+			return null;
+		}
+		ProcedureNode procedure = new ProcedureNode(token.getLexeme(), name, params, result, requires, ensures, (BlockNode) body);
+		this.procedures.put(name.s, procedure);
+		return procedure;
+	}
+
+	private ASTNode parseContract(StaticToken keyword) {
+		if (!expect(keyword)) return null;
+		if (!expect(StaticToken.LEFT_PAREN)) return null;
+		ASTNode expr = parseBoolExpr();
+		if (!expect(StaticToken.RIGHT_PAREN)) return null;
+		return expr;
+	}
+
 	private ASTNode parseBlock() {
 		Token blockToken = this.stream.peek();
 		if (!expect(StaticToken.LEFT_BRACE)) return null;
@@ -97,11 +204,44 @@ public class Parser {
 		return block;
 	}
 
+	private boolean streamBlock(StatementListener listener) {
+		if (!expect(StaticToken.LEFT_BRACE)) return false;
+		while (startsStatement()) {
+			if (!streamStatement(listener)) return false;
+		}
+		return expect(StaticToken.RIGHT_BRACE);
+	}
+
+	private boolean streamStatement(StatementListener listener) {
+		Token next = stream.peek();
+		if (next instanceof StaticTokenImpl st && st.token == StaticToken.IF) {
+			if (!expect(StaticToken.IF)) return false;
+			ASTNode cond = parseBoolExpr();
+			if (cond == null) return false;
+			listener.enterIf(next.getLexeme(), cond);
+			if (!streamBlock(listener)) return false;
+			if (!expect(StaticToken.ELSE)) return false;
+			listener.enterElse();
+			if (!streamBlock(listener)) return false;
+			listener.exitIf();
+			return true;
+		}
+		if (next instanceof StaticTokenImpl st && st.token == StaticToken.WHILE) {
+			LocatedString lexeme = next.getLexeme();
+			logger.log(LogLevel.SEVERE, "While loops are not supported when streaming a program, got while at line " + lexeme.line + ", column " + lexeme.col);
+			return false;
+		}
+		ASTNode statement = parseStatement();
+		if (statement == null) return false;
+		listener.statement(statement);
+		return true;
+	}
+
 	private boolean startsStatement() {
 		if (!checkHasNext()) return false;
 		Token next = stream.peek();
 		if (next instanceof StaticTokenImpl st) {
-			return st.token == StaticToken.IF || st.token == StaticToken.CHECK || st.token == StaticToken.PRINT;
+			return st.token == StaticToken.IF || st.token == StaticToken.WHILE || st.token == StaticToken.CHECK || st.token == StaticToken.PRINT;
 		}
 		else if (next instanceof LabelToken) {
 			return true;
@@ -118,6 +258,9 @@ public class Parser {
 				case IF -> {
 					return parseIfStatement();
 				}
+				case WHILE -> {
+					return parseWhileStatement();
+				}
 				case CHECK -> {
 					return parseCheckStatement();
 				}
@@ -150,6 +293,20 @@ public class Parser {
 		return node;
 	}
 
+	// while cond invariant(inv) { body }, where cond usually has parentheses like any condition
+	private ASTNode parseWhileStatement() {
+		if (!checkHasNext()) return null;
+		Token token = stream.peek();
+		if (!expect(StaticToken.WHILE)) return null;
+		ASTNode cond = parseBoolExpr();
+		if (cond == null) return null;
+		ASTNode invariant = parseContract(StaticToken.INVARIANT);
+		if (invariant == null) return null;
+		ASTNode body = parseBlock();
+		if (body == null) return null;
+		return new WhileNode(token.getLexeme(), cond, invariant, (BlockNode) body);
+	}
+
 	private ASTNode parseCheckStatement() {
 		if (!checkHasNext()) return null;
 		Token token = stream.peek();
@@ -184,6 +341,9 @@ public class Parser {
 			if (!checkHasNext()) return null;
 			Token assign = stream.peek();
 			if (!expect(StaticToken.ASSIGN)) return null;
+			if (nextIs(StaticToken.CALL)) {
+				return parseCall(assign.getLexeme(), l.getLexeme());
+			}
 			ASTNode expr = parseIntExpr();
 			return new AssignmentNode(assign.getLexeme(), l.getLexeme(), expr);
 		}
@@ -192,6 +352,33 @@ public class Parser {
 		}
 	}
 
+	// x := call name(arg1, arg2)
+	private ASTNode parseCall(LocatedString lexeme, LocatedString lhs) {
+		if (!expect(StaticToken.CALL)) return null;
+		LocatedString name = expectLabel("procedure name");
+		if (name == null) return null;
+		if (!expect(StaticToken.LEFT_PAREN)) return null;
+		List<ASTNode> args = new ArrayList<>();
+		if (!nextIs(StaticToken.RIGHT_PAREN)) {
+			do {
+				ASTNode arg = parseIntExpr();
+				if (arg == null) return null;
+				args.add(arg);
+			} while (nextIs(StaticToken.COMMA) && expect(StaticToken.COMMA));
+		}
+		if (!expect(StaticToken.RIGHT_PAREN)) return null;
+		ProcedureNode procedure = this.procedures.get(name.s);
+		if (procedure == null) {
+			logger.log(LogLevel.SEVERE, "Unknown procedure " + name.s + " at line " + name.line + ", column " + name.col);
+			return null;
+		}
+		if (procedure.params.size() != args.size()) {
+			logger.log(LogLevel.SEVERE, "Procedure " + name.s + " expects " + procedure.params.size() + " arguments, got " + args.size() + " at line " + name.line + ", column " + name.col);
+			return null;
+		}
+		return new CallNode(lexeme, lhs, name, args, procedure);
+	}
+
 	private ASTNode parseIntExpr() {
 		return parseIntAddExpr();
 	}
@@ -113,6 +113,64 @@ public class PrintVisitor extends ASTVisitor.Default {
 		this.removeIndent();
 	}
 
+	@Override
+	public void visitEnter(WhileNode node) {
+		this.clearIndent();
+		this.println("while");
+		this.addIndent(3);
+	}
+
+	@Override
+	public void visitExit(WhileNode node) {
+		this.removeIndent();
+	}
+
+	@Override
+	public void visitEnter(ProcedureNode node) {
+		this.clearIndent();
+		StringBuilder header = new StringBuilder("PROC: ").append(node.name.s).append('(');
+		for (int i = 0; i < node.params.size(); i += 1) {
+			if (i > 0) {
+				header.append(", ");
+			}
+			header.append(node.params.get(i).s);
+		}
+		header.append(") returns ").append(node.result.s);
+		this.println(header.toString());
+		this.addIndent(1 + (node.requires == null ? 0 : 1) + (node.ensures == null ? 0 : 1));
+		if (node.requires != null) {
+			this.printContract("requires", node.requires);
+		}
+		if (node.ensures != null) {
+			this.printContract("ensures", node.ensures);
+		}
+	}
+
+	private void printContract(String keyword, ASTNode expr) {
+		this.clearIndent();
+		this.println(keyword);
+		this.addIndent(1);
+		expr.acceptVisitor(this);
+		this.removeIndent();
+	}
+
+	@Override
+	public void visitExit(ProcedureNode node) {
+		this.removeIndent();
+	}
+
+	@Override
+	public void visitEnter(CallNode node) {
+		this.clearIndent();
+		this.println("CALL: " + node.lhs.s + " := " + node.name.s);
+		this.addIndent(node.args.size());
+	}
+
+	@Override
+	public void visitExit(CallNode node) {
+		this.removeIndent();
+	}
+
 	@Override
 	public void visitEnter(IntOperatorNode node) {
 		this.clearIndent();
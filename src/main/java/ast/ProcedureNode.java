@@ -0,0 +1,35 @@
+package ast;
+
+import lexer.LocatedString;
+
+import java.util.List;
+
+public class ProcedureNode extends ASTNode {
+	public LocatedString name;
+	public List<LocatedString> params;
+	public LocatedString result;
+	// over the parameters; true if not given
+	public ASTNode requires;
+	// over the parameters and the result; true if not given
+	public ASTNode ensures;
+	public BlockNode body;
+
+	ProcedureNode(LocatedString lexeme, LocatedString name, List<LocatedString> params, LocatedString result, ASTNode requires, ASTNode ensures, BlockNode body) {
+		super(lexeme);
+		this.name = name;
+		this.params = params;
+		this.result = result;
+		this.requires = requires;
+		this.ensures = ensures;
+		this.body = body;
+	}
+
+	// only the body is traversed; the contract is in a different scope at each end of the body,
+	// so visitors that need it visit requires and ensures themselves
+	@Override
+	public void acceptVisitor(ASTVisitor visitor) {
+		visitor.visitEnter(this);
+		body.acceptVisitor(visitor);
+		visitor.visitExit(this);
+	}
+}
@@ -0,0 +1,23 @@
+package ast;
+
+import lexer.LocatedString;
+
+import java.util.List;
+
+// the main block of a program, together with the procedures declared before it
+public class ProgramNode extends BlockNode {
+	public List<ProcedureNode> procedures;
+
+	ProgramNode(LocatedString lexeme, List<ProcedureNode> procedures) {
+		super(lexeme);
+		this.procedures = procedures;
+	}
+
+	@Override
+	public void acceptVisitor(ASTVisitor visitor) {
+		for (ProcedureNode procedure : procedures) {
+			procedure.acceptVisitor(visitor);
+		}
+		super.acceptVisitor(visitor);
+	}
+}
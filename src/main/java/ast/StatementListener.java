@@ -0,0 +1,15 @@
+package ast;
+
+import lexer.LocatedString;
+
+// Receives a program's statements in source order from Parser.streamProgram, without the tree
+// being built. Statements other than if statements arrive whole; if statements arrive as their
+// condition, followed by the then branch, enterElse(), the else branch and exitIf().
+public interface StatementListener {
+	// an assignment, check or print statement
+	void statement(ASTNode statement);
+
+	void enterIf(LocatedString lexeme, ASTNode cond);
+	void enterElse();
+	void exitIf();
+}
@@ -0,0 +1,26 @@
+package ast;
+
+import lexer.LocatedString;
+
+public class WhileNode extends ASTNode {
+	public ASTNode cond;
+	// holds before the loop and after every iteration; only checked by the verifier
+	public ASTNode invariant;
+	public BlockNode body;
+
+	WhileNode(LocatedString lexeme, ASTNode cond, ASTNode invariant, BlockNode body) {
+		super(lexeme);
+		this.cond = cond;
+		this.invariant = invariant;
+		this.body = body;
+	}
+
+	@Override
+	public void acceptVisitor(ASTVisitor visitor) {
+		visitor.visitEnter(this);
+		cond.acceptVisitor(visitor);
+		invariant.acceptVisitor(visitor);
+		body.acceptVisitor(visitor);
+		visitor.visitExit(this);
+	}
+}
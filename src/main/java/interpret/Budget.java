@@ -0,0 +1,35 @@
+package interpret;
+
+/**
+ * Limits on one run of {@link Interpreter}, so that a program that loops for too long or builds
+ * enormous numbers is stopped with a {@link BudgetExceededException} instead of holding its thread.
+ * A limit of 0 is no limit.
+ */
+public final class Budget {
+
+    public static final Budget UNLIMITED = new Budget(0, 0, 0);
+
+    // statements executed, where every iteration of a loop also counts as one
+    public final long maxStatements;
+    // bit length of any value, including the intermediate results of an expression. Values that
+    // fit in a long are never checked, so a limit is at least 64.
+    public final int maxBits;
+    // wall-clock time from the start of the run
+    public final long timeoutMillis;
+
+    public Budget(long maxStatements, int maxBits, long timeoutMillis) {
+        if (maxStatements < 0 || maxBits < 0 || timeoutMillis < 0) {
+            throw new IllegalArgumentException("Budget limits must not be negative");
+        }
+        if (maxBits > 0 && maxBits < Long.SIZE) {
+            throw new IllegalArgumentException("Bit length limit must be at least " + Long.SIZE + ", got " + maxBits);
+        }
+        this.maxStatements = maxStatements;
+        this.maxBits = maxBits;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    boolean isUnlimited() {
+        return maxStatements == 0 && maxBits == 0 && timeoutMillis == 0;
+    }
+}
@@ -0,0 +1,24 @@
+package interpret;
+
+/**
+ * Thrown when a run of {@link Interpreter} is stopped by its {@link Budget} or its
+ * {@link CancellationToken}, as opposed to an error in the program itself.
+ */
+public final class BudgetExceededException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Reason {
+        STATEMENTS,
+        BITS,
+        TIME,
+        CANCELLED,
+    }
+
+    public final Reason reason;
+
+    BudgetExceededException(Reason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+}
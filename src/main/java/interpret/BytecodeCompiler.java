@@ -0,0 +1,474 @@
+package interpret;
+
+import ast.*;
+import lexer.LocatedString;
+
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles a program into a JVM class, defined as a hidden class so it can be unloaded with the
+ * program. The main block becomes {@code run()} and every procedure an instance method; a
+ * variable is a pair of locals as described in {@link BytecodeSupport}.
+ * Every operation leaves its value in a pair of temporary locals, and as in {@link Interpreter}
+ * works on longs when its operands are longs and the result fits, and on BigIntegers otherwise:
+ * an overflow only moves that one operation to BigIntegers, and no exception is thrown for it.
+ * The output is the same as that of {@link Interpreter}.
+ * Programs too large for the limits of a class file are rejected with an IllegalArgumentException.
+ */
+public final class BytecodeCompiler {
+
+    private static final String NAME = "interpret/GeneratedProgram";
+    private static final String BIG = "java/math/BigInteger";
+    private static final String BIG_TYPE = "Ljava/math/BigInteger;";
+    private static final String PRINT_STREAM_TYPE = "Ljava/io/PrintStream;";
+    private static final String SUPPORT = "interpret/BytecodeSupport";
+
+    private final ClassFile file = new ClassFile(NAME, "java/lang/Object", "java/lang/Runnable");
+    // constants too large for a long, loaded from an array handed to the constructor
+    private final List<BigInteger> constants = new ArrayList<>();
+    private final Map<ProcedureNode, String> methods = new IdentityHashMap<>();
+    private final List<ProcedureNode> pending = new ArrayList<>();
+    private final SlotResolver slots;
+    private final RangeAnalysis ranges;
+    private ClassFile.Code code;
+    // first local after the variables of the method being compiled, used for call arguments
+    private int temps;
+    // first local not in use by the expression being compiled
+    private int next;
+
+    private BytecodeCompiler(SlotResolver slots, RangeAnalysis ranges) {
+        this.slots = slots;
+        this.ranges = ranges;
+    }
+
+    public static BytecodeProgram compile(ASTNode root) {
+        if (!(root instanceof BlockNode)) {
+            throw new IllegalArgumentException("Program root must be a BlockNode");
+        }
+        SlotResolver slots = SlotResolver.resolve(root);
+        BytecodeCompiler compiler = new BytecodeCompiler(slots, RangeAnalysis.analyze(root, slots));
+        byte[] bytes = compiler.compileClass((BlockNode) root, slots.frameSize());
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            MethodHandle constructor = lookup.findConstructor(lookup.lookupClass(),
+                MethodType.methodType(void.class, BigInteger[].class, PrintStream.class));
+            return new BytecodeProgram(constructor, compiler.constants.toArray(new BigInteger[0]));
+        } catch (IllegalAccessException | NoSuchMethodException e) {
+            throw new IllegalStateException("Could not load compiled program", e);
+        }
+    }
+
+    private byte[] compileClass(BlockNode root, int frameSize) {
+        file.field(ClassFile.ACC_PRIVATE, "result", BIG_TYPE);
+        file.field(ClassFile.ACC_PRIVATE | ClassFile.ACC_FINAL, "constants", "[" + BIG_TYPE);
+        file.field(ClassFile.ACC_PRIVATE | ClassFile.ACC_FINAL, "out", PRINT_STREAM_TYPE);
+
+        code = file.method(ClassFile.ACC_PUBLIC, "<init>", "([" + BIG_TYPE + PRINT_STREAM_TYPE + ")V");
+        code.aload(0);
+        code.invokespecial("java/lang/Object", "<init>", "()V");
+        code.aload(0);
+        code.aload(1);
+        code.putfield(NAME, "constants", "[" + BIG_TYPE);
+        code.aload(0);
+        code.aload(2);
+        code.putfield(NAME, "out", PRINT_STREAM_TYPE);
+        code.op(ClassFile.Code.RETURN);
+        code.finish();
+
+        code = file.method(ClassFile.ACC_PUBLIC, "run", "()V");
+        compileBody(root.children, frameSize, 0);
+        code.op(ClassFile.Code.RETURN);
+        code.finish();
+
+        // procedures are compiled when first called, and may call others in turn
+        for (int i = 0; i < pending.size(); i++) {
+            compileProcedure(pending.get(i));
+        }
+        return file.toBytes();
+    }
+
+    private String method(ProcedureNode procedure) {
+        String name = methods.get(procedure);
+        if (name == null) {
+            name = "p" + methods.size();
+            methods.put(procedure, name);
+            pending.add(procedure);
+        }
+        return name;
+    }
+
+    private static String descriptor(ProcedureNode procedure) {
+        return "(" + ("J" + BIG_TYPE).repeat(procedure.params.size()) + ")J";
+    }
+
+    private void compileProcedure(ProcedureNode procedure) {
+        code = file.method(ClassFile.ACC_PRIVATE, method(procedure), descriptor(procedure));
+        compileBody(procedure.body.children, slots.frameSize(procedure), procedure.params.size());
+        LocatedString loc = procedure.result;
+        int result = slots.resultSlot(procedure);
+        code.aload(big(result));
+        code.pushString("Result \"" + loc.s + "\" of procedure " + procedure.name.s + " not assigned at line "
+            + loc.line + ", column " + loc.col);
+        code.invokestatic(SUPPORT, "checkAssigned", "(" + BIG_TYPE + "Ljava/lang/String;)V");
+        code.aload(0);
+        code.aload(big(result));
+        code.putfield(NAME, "result", BIG_TYPE);
+        code.lload(small(result));
+        code.op(ClassFile.Code.LRETURN);
+        code.finish();
+    }
+
+    // the variables after the parameters start out unassigned, and so do the argument temporaries,
+    // so that every local has a type on every path
+    private void compileBody(List<ASTNode> statements, int frameSize, int params) {
+        temps = frameSize;
+        int locals = frameSize + maxArgs(statements);
+        next = locals;
+        for (int slot = params; slot < locals; slot++) {
+            code.op(ClassFile.Code.LCONST_0);
+            code.lstore(small(slot));
+            code.getstatic(SUPPORT, "UNASSIGNED", BIG_TYPE);
+            code.astore(big(slot));
+        }
+        block(statements);
+    }
+
+    private static int maxArgs(List<ASTNode> statements) {
+        int max = 0;
+        for (ASTNode stmt : statements) {
+            if (stmt instanceof CallNode) {
+                max = Math.max(max, ((CallNode) stmt).args.size());
+            }
+            else if (stmt instanceof IfNode) {
+                IfNode node = (IfNode) stmt;
+                max = Math.max(max, Math.max(maxArgs(node.branchThen.children), maxArgs(node.branchElse.children)));
+            }
+            else if (stmt instanceof WhileNode) {
+                max = Math.max(max, maxArgs(((WhileNode) stmt).body.children));
+            }
+        }
+        return max;
+    }
+
+    // locals of a variable; local 0 is this
+    private static int small(int slot) {
+        return 1 + 3 * slot;
+    }
+
+    private static int big(int slot) {
+        return 3 + 3 * slot;
+    }
+
+    // =========================
+    //   STATEMENTS
+    // =========================
+
+    private void block(List<ASTNode> statements) {
+        for (ASTNode stmt : statements) {
+            statement(stmt);
+        }
+    }
+
+    private void statement(ASTNode stmt) {
+        if (stmt instanceof AssignmentNode) {
+            AssignmentNode node = (AssignmentNode) stmt;
+            eval(node.rhs, slots.slot(node));
+        }
+        else if (stmt instanceof IfNode) {
+            IfNode node = (IfNode) stmt;
+            ClassFile.Label branchElse = new ClassFile.Label();
+            ClassFile.Label end = new ClassFile.Label();
+            jump(node.cond, false, branchElse);
+            block(node.branchThen.children);
+            code.jump(ClassFile.Code.GOTO, end);
+            code.place(branchElse);
+            block(node.branchElse.children);
+            code.place(end);
+        }
+        else if (stmt instanceof WhileNode) {
+            WhileNode node = (WhileNode) stmt;
+            ClassFile.Label top = new ClassFile.Label();
+            ClassFile.Label exit = new ClassFile.Label();
+            code.place(top);
+            jump(node.cond, false, exit);
+            block(node.body.children);
+            code.jump(ClassFile.Code.GOTO, top);
+            code.place(exit);
+        }
+        else if (stmt instanceof PrintNode) {
+            PrintNode node = (PrintNode) stmt;
+            LocatedString loc = node.lexeme;
+            code.aload(0);
+            code.getfield(NAME, "out", PRINT_STREAM_TYPE);
+            code.pushString(node.variable.s);
+            code.lload(small(slots.slot(node)));
+            code.aload(big(slots.slot(node)));
+            code.pushString(unassigned(node.variable.s, loc));
+            code.invokestatic(SUPPORT, "print", "(" + PRINT_STREAM_TYPE + "Ljava/lang/String;J" + BIG_TYPE + "Ljava/lang/String;)V");
+        }
+        else if (stmt instanceof CallNode) {
+            call((CallNode) stmt);
+        }
+        else if (!(stmt instanceof CheckNode)) {
+            throw new IllegalStateException("Unexpected statement node type: " + stmt.getClass());
+        }
+    }
+
+    // arguments are evaluated into temporaries first, since each is a pair of locals
+    private void call(CallNode node) {
+        for (int i = 0; i < node.args.size(); i++) {
+            eval(node.args.get(i), temps + i);
+        }
+        code.aload(0);
+        for (int i = 0; i < node.args.size(); i++) {
+            code.lload(small(temps + i));
+            code.aload(big(temps + i));
+        }
+        code.invokevirtual(NAME, method(node.procedure), descriptor(node.procedure));
+        code.lstore(small(slots.slot(node)));
+        code.aload(0);
+        code.getfield(NAME, "result", BIG_TYPE);
+        code.astore(big(slots.slot(node)));
+    }
+
+    private void storeLong(int slot) {
+        code.lstore(small(slot));
+        code.op(ClassFile.Code.ACONST_NULL);
+        code.astore(big(slot));
+    }
+
+    // stores the BigInteger on the stack; a value back in range is a long again, so later
+    // operations stay on longs
+    private void storeBig(int slot) {
+        ClassFile.Label large = new ClassFile.Label();
+        ClassFile.Label done = new ClassFile.Label();
+        code.op(ClassFile.Code.DUP);
+        code.invokevirtual(BIG, "bitLength", "()I");
+        code.pushInt(Long.SIZE);
+        code.jump(ClassFile.Code.IF_ICMPGE, large);
+        code.invokevirtual(BIG, "longValue", "()J");
+        storeLong(slot);
+        code.jump(ClassFile.Code.GOTO, done);
+        code.place(large);
+        code.setStack(1);
+        code.op(ClassFile.Code.LCONST_0);
+        code.lstore(small(slot));
+        code.astore(big(slot));
+        code.place(done);
+    }
+
+    // pushes the value of an assigned slot as a BigInteger
+    private void loadBig(int slot) {
+        code.lload(small(slot));
+        code.aload(big(slot));
+        code.invokestatic(SUPPORT, "big", "(J" + BIG_TYPE + ")" + BIG_TYPE);
+    }
+
+    // =========================
+    //   EXPRESSIONS – INT
+    // =========================
+
+    // evaluates node into the locals of slot
+    private void eval(ASTNode node, int slot) {
+        if (node instanceof IntConstantNode) {
+            BigInteger value = ((IntConstantNode) node).value;
+            if (value.bitLength() < Long.SIZE) {
+                code.pushLong(value.longValue());
+                storeLong(slot);
+            }
+            else {
+                code.op(ClassFile.Code.LCONST_0);
+                code.lstore(small(slot));
+                code.aload(0);
+                code.getfield(NAME, "constants", "[" + BIG_TYPE);
+                code.pushInt(constants.size());
+                code.op(ClassFile.Code.AALOAD);
+                code.astore(big(slot));
+                constants.add(value);
+            }
+        }
+        else if (node instanceof LabelNode) {
+            int variable = variable((LabelNode) node);
+            if (variable != slot) {
+                code.lload(small(variable));
+                code.lstore(small(slot));
+                code.aload(big(variable));
+                code.astore(big(slot));
+            }
+        }
+        else if (node instanceof IntOperatorNode) {
+            IntOperatorNode op = (IntOperatorNode) node;
+            int mark = next;
+            int left = operand(op.left);
+            if (op.op == IntOperatorNode.Operator.NEGATE) {
+                negate(left, slot, ranges.fitsLong(op));
+            }
+            else {
+                binary(op.op, left, operand(op.right), slot, ranges.fitsLong(op));
+            }
+            next = mark;
+        }
+        else {
+            throw new IllegalStateException("Expected integer expression, got " + node.getClass());
+        }
+    }
+
+    // the slot holding the value of node: the variable itself, or a temporary
+    private int operand(ASTNode node) {
+        if (node instanceof LabelNode) {
+            return variable((LabelNode) node);
+        }
+        int temp = next++;
+        eval(node, temp);
+        return temp;
+    }
+
+    private int variable(LabelNode node) {
+        int slot = slots.slot(node);
+        code.aload(big(slot));
+        code.pushString(unassigned(node.label.s, node.label));
+        code.invokestatic(SUPPORT, "checkAssigned", "(" + BIG_TYPE + "Ljava/lang/String;)V");
+        return slot;
+    }
+
+    // operates on longs if both operands are longs and, unless RangeAnalysis proved that it
+    // always does, the result fits; otherwise on BigIntegers
+    private void binary(IntOperatorNode.Operator op, int left, int right, int slot, boolean proved) {
+        ClassFile.Label slow = new ClassFile.Label();
+        ClassFile.Label done = new ClassFile.Label();
+        code.aload(big(left));
+        code.jump(ClassFile.Code.IFNONNULL, slow);
+        code.aload(big(right));
+        code.jump(ClassFile.Code.IFNONNULL, slow);
+        if (!proved) {
+            code.lload(small(left));
+            code.lload(small(right));
+            code.invokestatic(SUPPORT, switch (op) {
+                case ADD -> "addFits";
+                case SUB -> "subtractFits";
+                case MUL -> "multiplyFits";
+                case NEGATE -> throw new IllegalArgumentException("Negation is not binary");
+            }, "(JJ)Z");
+            code.jump(ClassFile.Code.IFEQ, slow);
+        }
+        code.lload(small(left));
+        code.lload(small(right));
+        code.op(switch (op) {
+            case ADD -> ClassFile.Code.LADD;
+            case SUB -> ClassFile.Code.LSUB;
+            case MUL -> ClassFile.Code.LMUL;
+            case NEGATE -> throw new IllegalArgumentException("Negation is not binary");
+        });
+        storeLong(slot);
+        code.jump(ClassFile.Code.GOTO, done);
+        code.place(slow);
+        loadBig(left);
+        loadBig(right);
+        code.invokevirtual(BIG, switch (op) {
+            case ADD -> "add";
+            case SUB -> "subtract";
+            case MUL -> "multiply";
+            case NEGATE -> throw new IllegalArgumentException("Negation is not binary");
+        }, "(" + BIG_TYPE + ")" + BIG_TYPE);
+        storeBig(slot);
+        code.place(done);
+    }
+
+    private void negate(int operand, int slot, boolean proved) {
+        ClassFile.Label slow = new ClassFile.Label();
+        ClassFile.Label done = new ClassFile.Label();
+        code.aload(big(operand));
+        code.jump(ClassFile.Code.IFNONNULL, slow);
+        if (!proved) {
+            // only the smallest long has no negation that fits
+            code.lload(small(operand));
+            code.pushLong(Long.MIN_VALUE);
+            code.op(ClassFile.Code.LCMP);
+            code.jump(ClassFile.Code.IFEQ, slow);
+        }
+        code.lload(small(operand));
+        code.op(ClassFile.Code.LNEG);
+        storeLong(slot);
+        code.jump(ClassFile.Code.GOTO, done);
+        code.place(slow);
+        loadBig(operand);
+        code.invokevirtual(BIG, "negate", "()" + BIG_TYPE);
+        storeBig(slot);
+        code.place(done);
+    }
+
+    private static String unassigned(String name, LocatedString loc) {
+        return Frame.unassigned(name, loc).getMessage();
+    }
+
+    // =========================
+    //   EXPRESSIONS – BOOL
+    // =========================
+
+    // jumps to target if the condition evaluates to when, and falls through otherwise
+    private void jump(ASTNode node, boolean when, ClassFile.Label target) {
+        if (node instanceof BoolCompareNode) {
+            BoolCompareNode cmp = (BoolCompareNode) node;
+            compare(cmp.left, cmp.right);
+            code.jump(switch (cmp.cmp) {
+                case LESSER -> when ? ClassFile.Code.IFLT : ClassFile.Code.IFGE;
+                case GREATER -> when ? ClassFile.Code.IFGT : ClassFile.Code.IFLE;
+                case EQUAL -> when ? ClassFile.Code.IFEQ : ClassFile.Code.IFNE;
+            }, target);
+        }
+        else if (node instanceof BoolOperatorNode) {
+            BoolOperatorNode op = (BoolOperatorNode) node;
+            switch (op.op) {
+                case NOT -> jump(op.left, !when, target);
+                case AND, OR -> {
+                    // with AND jumping on false, or OR jumping on true, either operand decides
+                    if ((op.op == BoolOperatorNode.Operator.AND) != when) {
+                        jump(op.left, when, target);
+                        jump(op.right, when, target);
+                    }
+                    else {
+                        ClassFile.Label skip = new ClassFile.Label();
+                        jump(op.left, !when, skip);
+                        jump(op.right, when, target);
+                        code.place(skip);
+                    }
+                }
+            }
+        }
+        else {
+            throw new IllegalStateException("Expected boolean expression, got " + node.getClass());
+        }
+    }
+
+    // leaves the sign of left - right on the stack as an int
+    private void compare(ASTNode left, ASTNode right) {
+        int mark = next;
+        int l = operand(left);
+        int r = operand(right);
+        next = mark;
+        ClassFile.Label slow = new ClassFile.Label();
+        ClassFile.Label done = new ClassFile.Label();
+        code.aload(big(l));
+        code.jump(ClassFile.Code.IFNONNULL, slow);
+        code.aload(big(r));
+        code.jump(ClassFile.Code.IFNONNULL, slow);
+        code.lload(small(l));
+        code.lload(small(r));
+        code.op(ClassFile.Code.LCMP);
+        code.jump(ClassFile.Code.GOTO, done);
+        code.place(slow);
+        code.setStack(0);
+        loadBig(l);
+        loadBig(r);
+        code.invokevirtual(BIG, "compareTo", "(" + BIG_TYPE + ")I");
+        code.place(done);
+    }
+}
@@ -0,0 +1,34 @@
+package interpret;
+
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.math.BigInteger;
+
+/**
+ * A program compiled to a JVM class by {@link BytecodeCompiler}, ready to run any number of times.
+ * Each run gets a fresh instance of the class.
+ */
+public final class BytecodeProgram implements Program {
+
+    // (BigInteger[], PrintStream) -> the generated class, as a Runnable
+    private final MethodHandle constructor;
+    private final BigInteger[] constants;
+
+    BytecodeProgram(MethodHandle constructor, BigInteger[] constants) {
+        this.constructor = constructor;
+        this.constants = constants;
+    }
+
+    @Override
+    public void run(PrintStream out) {
+        Runnable program;
+        try {
+            program = (Runnable) constructor.invoke(constants, out);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Could not instantiate compiled program", e);
+        }
+        program.run();
+    }
+}
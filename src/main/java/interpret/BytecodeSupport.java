@@ -0,0 +1,50 @@
+package interpret;
+
+import java.io.PrintStream;
+import java.math.BigInteger;
+
+/**
+ * Called from the classes generated by {@link BytecodeCompiler}. Small enough for the JIT to inline.
+ * A variable of a generated method is a pair of locals: a long, and a BigInteger that is null
+ * while the long is current, {@link #UNASSIGNED} before the first assignment, and the value
+ * itself when it does not fit in a long.
+ */
+public final class BytecodeSupport {
+
+    // compared by identity; never the value of a variable
+    public static final BigInteger UNASSIGNED = new BigInteger("0");
+
+    private BytecodeSupport() {}
+
+    // the value of an assigned variable
+    public static BigInteger big(long value, BigInteger big) {
+        return big == null ? BigInteger.valueOf(value) : big;
+    }
+
+    // overflow iff both operands have the sign the sum lacks
+    public static boolean addFits(long left, long right) {
+        long sum = left + right;
+        return ((left ^ sum) & (right ^ sum)) >= 0;
+    }
+
+    public static boolean subtractFits(long left, long right) {
+        long difference = left - right;
+        return ((left ^ right) & (left ^ difference)) >= 0;
+    }
+
+    // fits iff the high half only extends the sign of the low half
+    public static boolean multiplyFits(long left, long right) {
+        return Math.multiplyHigh(left, right) == (left * right) >> 63;
+    }
+
+    public static void checkAssigned(BigInteger big, String unassigned) {
+        if (big == UNASSIGNED) {
+            throw new RuntimeException(unassigned);
+        }
+    }
+
+    public static void print(PrintStream out, String name, long value, BigInteger big, String unassigned) {
+        checkAssigned(big, unassigned);
+        out.println(name + ": " + (big == null ? Long.toString(value) : big.toString()));
+    }
+}
@@ -0,0 +1,19 @@
+package interpret;
+
+/**
+ * Stops a run of {@link Interpreter} from another thread. The interpreter checks it before every
+ * statement and at the start of every block, and then throws a {@link BudgetExceededException};
+ * an arithmetic operation already under way is finished first.
+ */
+public final class CancellationToken {
+
+    private volatile boolean cancelled;
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
@@ -0,0 +1,468 @@
+package interpret;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the parts of a JVM class file that {@link BytecodeCompiler} needs: a constant pool,
+ * fields, and methods with code and exception tables.
+ * Class files are written as version 49, which the JVM verifies by type inference, so no stack
+ * map frames have to be computed.
+ */
+final class ClassFile {
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PRIVATE = 0x0002;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    private static final int VERSION = 49;
+
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+    // constants already in the pool, by kind and value
+    private final Map<String, Integer> poolIndex = new HashMap<>();
+    private int poolCount = 1;
+
+    private final int thisClass;
+    private final int superClass;
+    private final List<Integer> interfaces = new ArrayList<>();
+    private final List<byte[]> fields = new ArrayList<>();
+    private final List<byte[]> methods = new ArrayList<>();
+
+    ClassFile(String name, String superName, String... interfaceNames) {
+        thisClass = classRef(name);
+        superClass = classRef(superName);
+        for (String interfaceName : interfaceNames) {
+            interfaces.add(classRef(interfaceName));
+        }
+    }
+
+    // =========================
+    //   CONSTANT POOL
+    // =========================
+
+    private interface Entry {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    // adds an entry unless an equal one is in the pool already; longs take two indices
+    private int constant(String key, int size, Entry entry) {
+        Integer index = poolIndex.get(key);
+        if (index == null) {
+            index = poolCount;
+            try {
+                entry.write(poolOut);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            poolCount += size;
+            if (poolCount > 0xFFFF) {
+                throw new IllegalArgumentException("Program has too many constants for a class file");
+            }
+            poolIndex.put(key, index);
+        }
+        return index;
+    }
+
+    int utf8(String s) {
+        return constant("U" + s, 1, out -> {
+            out.writeByte(1);
+            out.writeUTF(s);
+        });
+    }
+
+    int classRef(String internalName) {
+        int name = utf8(internalName);
+        return constant("C" + internalName, 1, out -> {
+            out.writeByte(7);
+            out.writeShort(name);
+        });
+    }
+
+    int string(String s) {
+        int value = utf8(s);
+        return constant("S" + s, 1, out -> {
+            out.writeByte(8);
+            out.writeShort(value);
+        });
+    }
+
+    int longConstant(long value) {
+        return constant("J" + value, 2, out -> {
+            out.writeByte(5);
+            out.writeLong(value);
+        });
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        int n = utf8(name);
+        int d = utf8(descriptor);
+        return constant("N" + name + ":" + descriptor, 1, out -> {
+            out.writeByte(12);
+            out.writeShort(n);
+            out.writeShort(d);
+        });
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        int c = classRef(owner);
+        int nt = nameAndType(name, descriptor);
+        return constant(tag + owner + "." + name + ":" + descriptor, 1, out -> {
+            out.writeByte(tag);
+            out.writeShort(c);
+            out.writeShort(nt);
+        });
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+        return memberRef(9, owner, name, descriptor);
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return memberRef(10, owner, name, descriptor);
+    }
+
+    // =========================
+    //   MEMBERS
+    // =========================
+
+    void field(int access, String name, String descriptor) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        fields.add(bytes.toByteArray());
+    }
+
+    // the method is added when its code is finished
+    Code method(int access, String name, String descriptor) {
+        return new Code(access, name, descriptor);
+    }
+
+    byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(poolCount);
+            pool.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(interfaces.size());
+            for (int i : interfaces) {
+                out.writeShort(i);
+            }
+            out.writeShort(fields.size());
+            for (byte[] field : fields) {
+                out.write(field);
+            }
+            out.writeShort(methods.size());
+            for (byte[] method : methods) {
+                out.write(method);
+            }
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    // number of operand stack slots taken by the arguments and the result of a method descriptor
+    private static int[] slots(String descriptor) {
+        int args = 0;
+        int i = 1;
+        while (descriptor.charAt(i) != ')') {
+            char c = descriptor.charAt(i);
+            args += c == 'J' || c == 'D' ? 2 : 1;
+            while (descriptor.charAt(i) == '[') {
+                i++;
+            }
+            i = descriptor.charAt(i) == 'L' ? descriptor.indexOf(';', i) + 1 : i + 1;
+        }
+        char r = descriptor.charAt(i + 1);
+        return new int[]{args, r == 'V' ? 0 : r == 'J' || r == 'D' ? 2 : 1};
+    }
+
+    // =========================
+    //   CODE
+    // =========================
+
+    static final class Label {
+        private int position = -1;
+        // positions of the branch instructions that jump here, patched when the label is placed
+        private final List<Integer> jumps = new ArrayList<>();
+    }
+
+    /**
+     * Code of one method. Every emitting method keeps track of the operand stack depth; after an
+     * unconditional jump or a throw, the caller sets the depth of the code that follows.
+     */
+    final class Code {
+        static final int ACONST_NULL = 0x01;
+        static final int LCONST_0 = 0x09;
+        static final int LCONST_1 = 0x0a;
+        static final int AALOAD = 0x32;
+        static final int POP = 0x57;
+        static final int DUP = 0x59;
+        static final int LADD = 0x61;
+        static final int LSUB = 0x65;
+        static final int LMUL = 0x69;
+        static final int LNEG = 0x75;
+        static final int LCMP = 0x94;
+        static final int IFEQ = 0x99;
+        static final int IFNE = 0x9a;
+        static final int IFLT = 0x9b;
+        static final int IFGE = 0x9c;
+        static final int IFGT = 0x9d;
+        static final int IFLE = 0x9e;
+        static final int IF_ICMPGE = 0xa2;
+        static final int GOTO = 0xa7;
+        static final int IFNONNULL = 0xc7;
+        static final int LRETURN = 0xad;
+        static final int RETURN = 0xb1;
+        static final int ATHROW = 0xbf;
+
+        private final int access;
+        private final String name;
+        private final String descriptor;
+        private byte[] code = new byte[256];
+        private int length = 0;
+        private int stack = 0;
+        private int maxStack = 0;
+        private int maxLocals;
+        // start, end, handler and catch type of each exception table entry
+        private final List<int[]> handlers = new ArrayList<>();
+
+        private Code(int access, String name, String descriptor) {
+            this.access = access;
+            this.name = name;
+            this.descriptor = descriptor;
+            // this, and then the arguments
+            this.maxLocals = 1 + slots(descriptor)[0];
+        }
+
+        private void u1(int b) {
+            if (length == code.length) {
+                code = Arrays.copyOf(code, code.length * 2);
+            }
+            code[length++] = (byte) b;
+        }
+
+        private void u2(int s) {
+            u1(s >> 8);
+            u1(s);
+        }
+
+        private void adjust(int delta) {
+            stack += delta;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        void setStack(int depth) {
+            stack = depth;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        void useLocals(int count) {
+            maxLocals = Math.max(maxLocals, count);
+        }
+
+        // an instruction without operands
+        void op(int opcode) {
+            u1(opcode);
+            adjust(switch (opcode) {
+                case ACONST_NULL, DUP -> 1;
+                case LCONST_0, LCONST_1 -> 2;
+                case AALOAD, POP, ATHROW -> -1;
+                case LADD, LSUB, LMUL -> -2;
+                case LNEG -> 0;
+                case LCMP -> -3;
+                case LRETURN -> -2;
+                case RETURN -> 0;
+                default -> throw new IllegalArgumentException("Unknown stack effect of opcode " + opcode);
+            });
+        }
+
+        void pushInt(int value) {
+            if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                u1(0x10);
+                u1(value);
+            }
+            else {
+                u1(0x11);
+                u2(value);
+            }
+            adjust(1);
+        }
+
+        void pushLong(long value) {
+            if (value == 0 || value == 1) {
+                op(value == 0 ? LCONST_0 : LCONST_1);
+                return;
+            }
+            u1(0x14);
+            u2(longConstant(value));
+            adjust(2);
+        }
+
+        void pushString(String s) {
+            int index = string(s);
+            if (index < 256) {
+                u1(0x12);
+                u1(index);
+            }
+            else {
+                u1(0x13);
+                u2(index);
+            }
+            adjust(1);
+        }
+
+        private void local(int opcode, int index, int delta, int size) {
+            if (index < 256) {
+                u1(opcode);
+                u1(index);
+            }
+            else {
+                u1(0xc4);
+                u1(opcode);
+                u2(index);
+            }
+            adjust(delta);
+            useLocals(index + size);
+        }
+
+        void lload(int index) {
+            local(0x16, index, 2, 2);
+        }
+
+        void aload(int index) {
+            local(0x19, index, 1, 1);
+        }
+
+        void lstore(int index) {
+            local(0x37, index, -2, 2);
+        }
+
+        void astore(int index) {
+            local(0x3a, index, -1, 1);
+        }
+
+        void getstatic(String owner, String field, String type) {
+            u1(0xb2);
+            u2(fieldRef(owner, field, type));
+            adjust(type.equals("J") ? 2 : 1);
+        }
+
+        void getfield(String owner, String field, String type) {
+            u1(0xb4);
+            u2(fieldRef(owner, field, type));
+            adjust(type.equals("J") ? 1 : 0);
+        }
+
+        void putfield(String owner, String field, String type) {
+            u1(0xb5);
+            u2(fieldRef(owner, field, type));
+            adjust(type.equals("J") ? -3 : -2);
+        }
+
+        private void invoke(int opcode, String owner, String method, String descriptor, boolean hasReceiver) {
+            u1(opcode);
+            u2(methodRef(owner, method, descriptor));
+            int[] slots = slots(descriptor);
+            adjust(-slots[0] - (hasReceiver ? 1 : 0) + slots[1]);
+        }
+
+        void invokestatic(String owner, String method, String descriptor) {
+            invoke(0xb8, owner, method, descriptor, false);
+        }
+
+        void invokevirtual(String owner, String method, String descriptor) {
+            invoke(0xb6, owner, method, descriptor, true);
+        }
+
+        void invokespecial(String owner, String method, String descriptor) {
+            invoke(0xb7, owner, method, descriptor, true);
+        }
+
+        // conditional jumps pop their operands; GOTO leaves the stack depth to the caller
+        void jump(int opcode, Label target) {
+            int jump = length;
+            u1(opcode);
+            u2(0);
+            if (target.position >= 0) {
+                patch(jump, target.position - jump);
+            }
+            else {
+                target.jumps.add(jump);
+            }
+            adjust(opcode == IF_ICMPGE ? -2 : opcode == GOTO ? 0 : -1);
+        }
+
+        void place(Label label) {
+            label.position = length;
+            for (int jump : label.jumps) {
+                patch(jump, length - jump);
+            }
+        }
+
+        private void patch(int jump, int offset) {
+            if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                throw new IllegalArgumentException("Method " + name + " is too large for a class file");
+            }
+            code[jump + 1] = (byte) (offset >> 8);
+            code[jump + 2] = (byte) offset;
+        }
+
+        // start and end are placed labels; the handler is entered with the exception on the stack
+        void handler(Label start, Label end, Label handler, String exception) {
+            handlers.add(new int[]{start.position, end.position, handler.position, classRef(exception)});
+        }
+
+        void finish() {
+            if (length > 0xFFFF) {
+                throw new IllegalArgumentException("Method " + name + " is too large for a class file");
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            try {
+                out.writeShort(access);
+                out.writeShort(utf8(name));
+                out.writeShort(utf8(descriptor));
+                out.writeShort(1);
+                out.writeShort(utf8("Code"));
+                out.writeInt(12 + length + 8 * handlers.size());
+                out.writeShort(maxStack);
+                out.writeShort(maxLocals);
+                out.writeInt(length);
+                out.write(code, 0, length);
+                out.writeShort(handlers.size());
+                for (int[] handler : handlers) {
+                    for (int value : handler) {
+                        out.writeShort(value);
+                    }
+                }
+                out.writeShort(0);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            methods.add(bytes.toByteArray());
+        }
+    }
+}
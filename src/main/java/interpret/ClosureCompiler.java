@@ -0,0 +1,674 @@
+package interpret;
+
+import ast.*;
+import lexer.LocatedString;
+
+import java.math.BigInteger;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles a program once into a tree of executor objects, so running it does not dispatch on
+ * AST node types. Every kind of statement and operator is its own final class whose
+ * {@code execute} calls its children directly, so each call site sees few receiver classes and
+ * the JIT can inline the small trees that make up expressions.
+ * Evaluation is the same as in {@link Interpreter}: every operation works on longs while its
+ * operands and result fit, and only that operation moves to BigIntegers when they do not.
+ * Operations that {@link RangeAnalysis} proves always fit in a long skip the overflow check.
+ */
+public final class ClosureCompiler {
+
+    // compiled procedures, created before their bodies so calls can refer to them
+    private final Map<ProcedureNode, Procedure> procedures = new IdentityHashMap<>();
+    private final SlotResolver slots;
+    private final RangeAnalysis ranges;
+
+    private ClosureCompiler(SlotResolver slots, RangeAnalysis ranges) {
+        this.slots = slots;
+        this.ranges = ranges;
+    }
+
+    public static CompiledProgram compile(ASTNode root) {
+        if (!(root instanceof BlockNode)) {
+            throw new IllegalArgumentException("Program root must be a BlockNode");
+        }
+        SlotResolver slots = SlotResolver.resolve(root);
+        ClosureCompiler compiler = new ClosureCompiler(slots, RangeAnalysis.analyze(root, slots));
+        return new CompiledProgram(compiler.block(((BlockNode) root).children), slots.frameSize());
+    }
+
+    // =========================
+    //   COMPILATION
+    // =========================
+
+    private Stmt block(List<ASTNode> statements) {
+        Stmt[] compiled = statements.stream()
+            .filter(stmt -> !(stmt instanceof CheckNode))
+            .map(this::statement)
+            .toArray(Stmt[]::new);
+        if (compiled.length == 1) {
+            return compiled[0];
+        }
+        return new BlockExec(compiled);
+    }
+
+    private Stmt statement(ASTNode stmt) {
+        if (stmt instanceof AssignmentNode) {
+            AssignmentNode node = (AssignmentNode) stmt;
+            return new AssignExec(slots.slot(node), intExpr(node.rhs));
+        }
+        else if (stmt instanceof IfNode) {
+            IfNode node = (IfNode) stmt;
+            return new IfExec(boolExpr(node.cond), block(node.branchThen.children), block(node.branchElse.children));
+        }
+        else if (stmt instanceof WhileNode) {
+            WhileNode node = (WhileNode) stmt;
+            return new WhileExec(boolExpr(node.cond), block(node.body.children));
+        }
+        else if (stmt instanceof PrintNode) {
+            PrintNode node = (PrintNode) stmt;
+            return new PrintExec(slots.slot(node), node.variable.s, node.lexeme);
+        }
+        else if (stmt instanceof CallNode) {
+            CallNode node = (CallNode) stmt;
+            IntExpr[] args = node.args.stream().map(this::intExpr).toArray(IntExpr[]::new);
+            return new CallExec(procedure(node.procedure), args, slots.slot(node));
+        }
+        else {
+            throw new IllegalStateException("Unexpected statement node type: " + stmt.getClass());
+        }
+    }
+
+    private Procedure procedure(ProcedureNode node) {
+        Procedure procedure = procedures.get(node);
+        if (procedure == null) {
+            procedure = new Procedure(slots.frameSize(node), slots.resultSlot(node), node.name.s, node.result);
+            procedures.put(node, procedure);
+            procedure.body = block(node.body.children);
+        }
+        return procedure;
+    }
+
+    private IntExpr intExpr(ASTNode node) {
+        if (node instanceof IntConstantNode) {
+            return new ConstNode(((IntConstantNode) node).value);
+        }
+        else if (node instanceof LabelNode) {
+            LabelNode l = (LabelNode) node;
+            return new VarNode(slots.slot(l), l.label);
+        }
+        else if (node instanceof IntOperatorNode) {
+            IntOperatorNode op = (IntOperatorNode) node;
+            if (ranges.fitsLong(op)) {
+                return switch (op.op) {
+                    case ADD -> new UncheckedAddNode(intExpr(op.left), intExpr(op.right));
+                    case SUB -> new UncheckedSubNode(intExpr(op.left), intExpr(op.right));
+                    case MUL -> new UncheckedMulNode(intExpr(op.left), intExpr(op.right));
+                    case NEGATE -> new UncheckedNegNode(intExpr(op.left));
+                };
+            }
+            return switch (op.op) {
+                case ADD -> new AddNode(intExpr(op.left), intExpr(op.right));
+                case SUB -> new SubNode(intExpr(op.left), intExpr(op.right));
+                case MUL -> new MulNode(intExpr(op.left), intExpr(op.right));
+                case NEGATE -> new NegNode(intExpr(op.left));
+            };
+        }
+        else {
+            throw new IllegalStateException("Expected integer expression, got " + node.getClass());
+        }
+    }
+
+    private BoolExpr boolExpr(ASTNode node) {
+        if (node instanceof BoolCompareNode) {
+            BoolCompareNode cmp = (BoolCompareNode) node;
+            IntExpr left = intExpr(cmp.left);
+            IntExpr right = intExpr(cmp.right);
+            return switch (cmp.cmp) {
+                case LESSER -> new LessNode(left, right);
+                case GREATER -> new GreaterNode(left, right);
+                case EQUAL -> new EqualNode(left, right);
+            };
+        }
+        else if (node instanceof BoolOperatorNode) {
+            BoolOperatorNode op = (BoolOperatorNode) node;
+            return switch (op.op) {
+                case AND -> new AndNode(boolExpr(op.left), boolExpr(op.right));
+                case OR -> new OrNode(boolExpr(op.left), boolExpr(op.right));
+                case NOT -> new NotNode(boolExpr(op.left));
+            };
+        }
+        else {
+            throw new IllegalStateException("Expected boolean expression, got " + node.getClass());
+        }
+    }
+
+    // =========================
+    //   STATEMENTS
+    // =========================
+
+    abstract static class Stmt {
+        abstract void execute(Frame frame);
+    }
+
+    // evaluates expr in one frame and stores its value in another, which may be the same
+    static void store(IntExpr expr, Frame from, Frame to, int slot) {
+        Value value = new Value();
+        long small = expr.execute(from, value);
+        if (value.big == null) {
+            to.setLong(slot, small);
+        }
+        else {
+            to.setBig(slot, value.big);
+        }
+    }
+
+    static final class BlockExec extends Stmt {
+        private final Stmt[] statements;
+
+        BlockExec(Stmt[] statements) {
+            this.statements = statements;
+        }
+
+        @Override
+        void execute(Frame frame) {
+            for (Stmt statement : statements) {
+                statement.execute(frame);
+            }
+        }
+    }
+
+    static final class AssignExec extends Stmt {
+        private final int slot;
+        private final IntExpr value;
+
+        AssignExec(int slot, IntExpr value) {
+            this.slot = slot;
+            this.value = value;
+        }
+
+        @Override
+        void execute(Frame frame) {
+            store(value, frame, frame, slot);
+        }
+    }
+
+    static final class IfExec extends Stmt {
+        private final BoolExpr cond;
+        private final Stmt branchThen;
+        private final Stmt branchElse;
+
+        IfExec(BoolExpr cond, Stmt branchThen, Stmt branchElse) {
+            this.cond = cond;
+            this.branchThen = branchThen;
+            this.branchElse = branchElse;
+        }
+
+        @Override
+        void execute(Frame frame) {
+            if (cond.execute(frame)) {
+                branchThen.execute(frame);
+            }
+            else {
+                branchElse.execute(frame);
+            }
+        }
+    }
+
+    static final class WhileExec extends Stmt {
+        private final BoolExpr cond;
+        private final Stmt body;
+
+        WhileExec(BoolExpr cond, Stmt body) {
+            this.cond = cond;
+            this.body = body;
+        }
+
+        @Override
+        void execute(Frame frame) {
+            while (cond.execute(frame)) {
+                body.execute(frame);
+            }
+        }
+    }
+
+    static final class PrintExec extends Stmt {
+        private final int slot;
+        private final String name;
+        private final LocatedString loc;
+
+        PrintExec(int slot, String name, LocatedString loc) {
+            this.slot = slot;
+            this.name = name;
+            this.loc = loc;
+        }
+
+        @Override
+        void execute(Frame frame) {
+            if (!frame.isAssigned(slot)) {
+                throw Frame.unassigned(name, loc);
+            }
+            frame.out.println(name + ": " + frame.toString(slot));
+        }
+    }
+
+    static final class Procedure {
+        private final int frameSize;
+        private final int resultSlot;
+        private final String name;
+        private final LocatedString result;
+        // set once, right after the procedure is registered, so recursive calls can refer to it
+        private Stmt body;
+
+        Procedure(int frameSize, int resultSlot, String name, LocatedString result) {
+            this.frameSize = frameSize;
+            this.resultSlot = resultSlot;
+            this.name = name;
+            this.result = result;
+        }
+    }
+
+    static final class CallExec extends Stmt {
+        private final Procedure procedure;
+        private final IntExpr[] args;
+        private final int slot;
+
+        CallExec(Procedure procedure, IntExpr[] args, int slot) {
+            this.procedure = procedure;
+            this.args = args;
+            this.slot = slot;
+        }
+
+        @Override
+        void execute(Frame frame) {
+            // arguments are evaluated in the caller; the body only sees its parameters
+            Frame callee = new Frame(procedure.frameSize, frame.out);
+            for (int i = 0; i < args.length; i++) {
+                store(args[i], frame, callee, i);
+            }
+            procedure.body.execute(callee);
+            if (!callee.isAssigned(procedure.resultSlot)) {
+                LocatedString loc = procedure.result;
+                throw new RuntimeException(
+                    "Result \"" + loc.s + "\" of procedure " + procedure.name + " not assigned at line "
+                    + loc.line + ", column " + loc.col
+                );
+            }
+            frame.copy(slot, callee, procedure.resultSlot);
+        }
+    }
+
+    // =========================
+    //   EXPRESSIONS – INT
+    // =========================
+
+    // where execute leaves a value that does not fit in a long. Each evaluation has its own, since
+    // one program may run on several threads at the same time.
+    static final class Value {
+        // null when the value is the long that execute returned
+        BigInteger big;
+    }
+
+    abstract static class IntExpr {
+        // returns the value if it fits in a long and sets value.big to null; otherwise sets
+        // value.big to the value
+        abstract long execute(Frame frame, Value value);
+    }
+
+    static BigInteger big(long small, BigInteger big) {
+        return big == null ? BigInteger.valueOf(small) : big;
+    }
+
+    // the result of an operation on BigIntegers, back as a long if it fits
+    static long big(BigInteger result, Value value) {
+        if (result.bitLength() < Long.SIZE) {
+            value.big = null;
+            return result.longValue();
+        }
+        value.big = result;
+        return 0;
+    }
+
+    static final class ConstNode extends IntExpr {
+        private final BigInteger big;
+        private final long value;
+        private final boolean fits;
+
+        ConstNode(BigInteger big) {
+            this.big = big;
+            this.value = big.longValue();
+            this.fits = big.bitLength() < Long.SIZE;
+        }
+
+        @Override
+        long execute(Frame frame, Value value) {
+            if (fits) {
+                value.big = null;
+                return this.value;
+            }
+            value.big = big;
+            return 0;
+        }
+    }
+
+    static final class VarNode extends IntExpr {
+        private final int slot;
+        private final LocatedString loc;
+
+        VarNode(int slot, LocatedString loc) {
+            this.slot = slot;
+            this.loc = loc;
+        }
+
+        @Override
+        long execute(Frame frame, Value value) {
+            BigInteger big = frame.bigs[slot];
+            if (big == Frame.LONG) {
+                value.big = null;
+                return frame.longs[slot];
+            }
+            if (big == null) {
+                throw Frame.unassigned(loc.s, loc);
+            }
+            value.big = big;
+            return 0;
+        }
+    }
+
+    static final class AddNode extends IntExpr {
+        private final IntExpr left;
+        private final IntExpr right;
+
+        AddNode(IntExpr left, IntExpr right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        long execute(Frame frame, Value value) {
+            long l = left.execute(frame, value);
+            BigInteger lBig = value.big;
+            long r = right.execute(frame, value);
+            BigInteger rBig = value.big;
+            long sum = l + r;
+            // overflow iff both operands have the sign the sum lacks
+            if (lBig == null && rBig == null && ((l ^ sum) & (r ^ sum)) >= 0) {
+                return sum;
+            }
+            return big(big(l, lBig).add(big(r, rBig)), value);
+        }
+    }
+
+    static final class SubNode extends IntExpr {
+        private final IntExpr left;
+        private final IntExpr right;
+
+        SubNode(IntExpr left, IntExpr right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        long execute(Frame frame, Value value) {
+            long l = left.execute(frame, value);
+            BigInteger lBig = value.big;
+            long r = right.execute(frame, value);
+            BigInteger rBig = value.big;
+            long difference = l - r;
+            if (lBig == null && rBig == null && ((l ^ r) & (l ^ difference)) >= 0) {
+                return difference;
+            }
+            return big(big(l, lBig).subtract(big(r, rBig)), value);
+        }
+    }
+
+    static final class MulNode extends IntExpr {
+        private final IntExpr left;
+        private final IntExpr right;
+
+        MulNode(IntExpr left, IntExpr right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        long execute(Frame frame, Value value) {
+            long l = left.execute(frame, value);
+            BigInteger lBig = value.big;
+            long r = right.execute(frame, value);
+            BigInteger rBig = value.big;
+            if (lBig == null && rBig == null) {
+                long product = l * r;
+                // fits iff the high half only extends the sign of the low half
+                if (Math.multiplyHigh(l, r) == product >> 63) {
+                    return product;
+                }
+            }
+            return big(big(l, lBig).multiply(big(r, rBig)), value);
+        }
+    }
+
+    static final class NegNode extends IntExpr {
+        private final IntExpr operand;
+
+        NegNode(IntExpr operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        long execute(Frame frame, Value value) {
+            long v = operand.execute(frame, value);
+            if (value.big == null && v != Long.MIN_VALUE) {
+                return -v;
+            }
+            return big(big(v, value.big).negate(), value);
+        }
+    }
+
+    // the operations below never overflow: RangeAnalysis proved their result fits in a long.
+    // An operand may still be a BigInteger, and then the operation is done on BigIntegers.
+
+    static final class UncheckedAddNode extends IntExpr {
+        private final IntExpr left;
+        private final IntExpr right;
+
+        UncheckedAddNode(IntExpr left, IntExpr right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        long execute(Frame frame, Value value) {
+            long l = left.execute(frame, value);
+            BigInteger lBig = value.big;
+            long r = right.execute(frame, value);
+            BigInteger rBig = value.big;
+            if (lBig == null && rBig == null) {
+                return l + r;
+            }
+            return big(big(l, lBig).add(big(r, rBig)), value);
+        }
+    }
+
+    static final class UncheckedSubNode extends IntExpr {
+        private final IntExpr left;
+        private final IntExpr right;
+
+        UncheckedSubNode(IntExpr left, IntExpr right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        long execute(Frame frame, Value value) {
+            long l = left.execute(frame, value);
+            BigInteger lBig = value.big;
+            long r = right.execute(frame, value);
+            BigInteger rBig = value.big;
+            if (lBig == null && rBig == null) {
+                return l - r;
+            }
+            return big(big(l, lBig).subtract(big(r, rBig)), value);
+        }
+    }
+
+    static final class UncheckedMulNode extends IntExpr {
+        private final IntExpr left;
+        private final IntExpr right;
+
+        UncheckedMulNode(IntExpr left, IntExpr right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        long execute(Frame frame, Value value) {
+            long l = left.execute(frame, value);
+            BigInteger lBig = value.big;
+            long r = right.execute(frame, value);
+            BigInteger rBig = value.big;
+            if (lBig == null && rBig == null) {
+                return l * r;
+            }
+            return big(big(l, lBig).multiply(big(r, rBig)), value);
+        }
+    }
+
+    static final class UncheckedNegNode extends IntExpr {
+        private final IntExpr operand;
+
+        UncheckedNegNode(IntExpr operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        long execute(Frame frame, Value value) {
+            long v = operand.execute(frame, value);
+            if (value.big == null) {
+                return -v;
+            }
+            return big(value.big.negate(), value);
+        }
+    }
+
+    // =========================
+    //   EXPRESSIONS – BOOL
+    // =========================
+
+    abstract static class BoolExpr {
+        abstract boolean execute(Frame frame);
+    }
+
+    static final class LessNode extends BoolExpr {
+        private final IntExpr left;
+        private final IntExpr right;
+
+        LessNode(IntExpr left, IntExpr right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean execute(Frame frame) {
+            Value value = new Value();
+            long l = left.execute(frame, value);
+            BigInteger lBig = value.big;
+            long r = right.execute(frame, value);
+            BigInteger rBig = value.big;
+            if (lBig == null && rBig == null) {
+                return l < r;
+            }
+            return big(l, lBig).compareTo(big(r, rBig)) < 0;
+        }
+    }
+
+    static final class GreaterNode extends BoolExpr {
+        private final IntExpr left;
+        private final IntExpr right;
+
+        GreaterNode(IntExpr left, IntExpr right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean execute(Frame frame) {
+            Value value = new Value();
+            long l = left.execute(frame, value);
+            BigInteger lBig = value.big;
+            long r = right.execute(frame, value);
+            BigInteger rBig = value.big;
+            if (lBig == null && rBig == null) {
+                return l > r;
+            }
+            return big(l, lBig).compareTo(big(r, rBig)) > 0;
+        }
+    }
+
+    static final class EqualNode extends BoolExpr {
+        private final IntExpr left;
+        private final IntExpr right;
+
+        EqualNode(IntExpr left, IntExpr right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean execute(Frame frame) {
+            Value value = new Value();
+            long l = left.execute(frame, value);
+            BigInteger lBig = value.big;
+            long r = right.execute(frame, value);
+            BigInteger rBig = value.big;
+            if (lBig == null && rBig == null) {
+                return l == r;
+            }
+            return big(l, lBig).equals(big(r, rBig));
+        }
+    }
+
+    static final class AndNode extends BoolExpr {
+        private final BoolExpr left;
+        private final BoolExpr right;
+
+        AndNode(BoolExpr left, BoolExpr right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean execute(Frame frame) {
+            return left.execute(frame) && right.execute(frame);
+        }
+    }
+
+    static final class OrNode extends BoolExpr {
+        private final BoolExpr left;
+        private final BoolExpr right;
+
+        OrNode(BoolExpr left, BoolExpr right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean execute(Frame frame) {
+            return left.execute(frame) || right.execute(frame);
+        }
+    }
+
+    static final class NotNode extends BoolExpr {
+        private final BoolExpr operand;
+
+        NotNode(BoolExpr operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        boolean execute(Frame frame) {
+            return !operand.execute(frame);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package interpret;
+
+import java.io.PrintStream;
+
+/**
+ * A program compiled by {@link ClosureCompiler}, ready to run any number of times.
+ */
+public final class CompiledProgram implements Program {
+
+    private final ClosureCompiler.Stmt body;
+    private final int frameSize;
+
+    CompiledProgram(ClosureCompiler.Stmt body, int frameSize) {
+        this.body = body;
+        this.frameSize = frameSize;
+    }
+
+    @Override
+    public void run(PrintStream out) {
+        body.execute(new Frame(frameSize, out));
+    }
+}
@@ -0,0 +1,123 @@
+package interpret;
+
+import ast.*;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The def-use dependencies within a run of consecutive assignments in one block, so that
+ * {@link Interpreter} can run assignments that do not depend on each other at the same time.
+ * An assignment depends on an earlier one if it reads the variable that one assigns, assigns a
+ * variable that one reads, or assigns the same variable; any order that respects these edges
+ * computes the same values as running the assignments one after another.
+ * <p>
+ * Only assignments are grouped: they have no effect other than their variable and always
+ * terminate. Prints, calls, checks, ifs and loops stay where they are and separate the groups, so
+ * output is printed in program order. Variables are compared by the slots of a {@link SlotResolver}.
+ */
+final class DependencyGraph {
+
+    // a group only runs in parallel while it reads a value at least this large; below it, forking
+    // costs more than the arithmetic it spreads across threads
+    static final int PARALLEL_BITS = 1 << 15;
+
+    final AssignmentNode[] statements;
+    // for each statement, the earlier statements of the group it must wait for
+    final int[][] deps;
+    // every variable the group reads
+    private final int[] reads;
+
+    private DependencyGraph(List<AssignmentNode> statements, SlotResolver slots) {
+        int n = statements.size();
+        this.statements = statements.toArray(new AssignmentNode[0]);
+        this.deps = new int[n][];
+        Set<Integer> allReads = new HashSet<>();
+        List<Set<Integer>> readsOf = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            AssignmentNode node = this.statements[i];
+            Set<Integer> reads = reads(node.rhs, slots);
+            readsOf.add(reads);
+            allReads.addAll(reads);
+            List<Integer> edges = new ArrayList<>();
+            for (int j = 0; j < i; j++) {
+                AssignmentNode earlier = this.statements[j];
+                int earlierSlot = slots.slot(earlier);
+                int slot = slots.slot(node);
+                if (reads.contains(earlierSlot) || readsOf.get(j).contains(slot) || earlierSlot == slot) {
+                    edges.add(j);
+                }
+            }
+            deps[i] = edges.stream().mapToInt(Integer::intValue).toArray();
+        }
+        this.reads = allReads.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * For each statement of the block, the group starting there, or null where the statement runs
+     * on its own. Runs of assignments that form a chain, each depending on the one before, are not
+     * grouped, since nothing in them could run at the same time.
+     */
+    static DependencyGraph[] of(BlockNode block, SlotResolver slots) {
+        List<ASTNode> children = block.children;
+        DependencyGraph[] groups = new DependencyGraph[children.size()];
+        int i = 0;
+        while (i < children.size()) {
+            int end = i;
+            List<AssignmentNode> run = new ArrayList<>();
+            while (end < children.size() && children.get(end) instanceof AssignmentNode) {
+                run.add((AssignmentNode) children.get(end));
+                end++;
+            }
+            if (run.size() > 1) {
+                DependencyGraph group = new DependencyGraph(run, slots);
+                if (group.hasIndependent()) {
+                    groups[i] = group;
+                }
+            }
+            i = Math.max(end, i + 1);
+        }
+        return groups;
+    }
+
+    int size() {
+        return statements.length;
+    }
+
+    // whether some statement does not wait for the one just before it; edges only go backwards,
+    // so otherwise every statement waits for all earlier ones
+    private boolean hasIndependent() {
+        for (int i = 1; i < deps.length; i++) {
+            int[] edges = deps[i];
+            if (edges.length == 0 || edges[edges.length - 1] != i - 1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // whether the group reads a value large enough to be worth running in parallel
+    boolean isHeavy(Frame frame) {
+        for (int slot : reads) {
+            BigInteger big = frame.bigs[slot];
+            if (big != null && big != Frame.LONG && big.bitLength() >= PARALLEL_BITS) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Set<Integer> reads(ASTNode expr, SlotResolver slots) {
+        Set<Integer> reads = new HashSet<>();
+        expr.acceptVisitor(new ASTVisitor.Default() {
+            @Override
+            public void visit(LabelNode node) {
+                reads.add(slots.slot(node));
+            }
+        });
+        return reads;
+    }
+}
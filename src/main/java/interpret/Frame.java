@@ -0,0 +1,66 @@
+package interpret;
+
+import lexer.LocatedString;
+
+import java.io.PrintStream;
+import java.math.BigInteger;
+
+/**
+ * Variables of one running procedure (or the main block), indexed by the slots of {@link SlotResolver}.
+ * As in the tree-walking interpreter, a variable is a long while its value fits, and a BigInteger
+ * otherwise: {@code bigs[slot]} is null while it is unassigned, {@link #LONG} while
+ * {@code longs[slot]} is current, and the value itself when it does not fit.
+ * The frames of one run share the stream that print writes to.
+ */
+final class Frame {
+
+    // compared by identity; never the value of a variable
+    static final BigInteger LONG = new BigInteger("0");
+
+    final long[] longs;
+    final BigInteger[] bigs;
+    final PrintStream out;
+
+    Frame(int size, PrintStream out) {
+        longs = new long[size];
+        bigs = new BigInteger[size];
+        this.out = out;
+    }
+
+    boolean isAssigned(int slot) {
+        return bigs[slot] != null;
+    }
+
+    void setLong(int slot, long value) {
+        longs[slot] = value;
+        bigs[slot] = LONG;
+    }
+
+    // a value back in range is a long again, so later expressions stay on the fast path
+    void setBig(int slot, BigInteger value) {
+        if (value.bitLength() < Long.SIZE) {
+            setLong(slot, value.longValue());
+        }
+        else {
+            bigs[slot] = value;
+        }
+    }
+
+    void copy(int slot, Frame from, int fromSlot) {
+        longs[slot] = from.longs[fromSlot];
+        bigs[slot] = from.bigs[fromSlot];
+    }
+
+    // the decimal digits of an assigned variable
+    String toString(int slot) {
+        BigInteger big = bigs[slot];
+        return big == LONG ? Long.toString(longs[slot]) : big.toString();
+    }
+
+    static RuntimeException unassigned(String name, LocatedString loc) {
+        return new RuntimeException(
+            "Variable \"" + name + "\" used before assigned at line "
+            + loc.line + ", column " + loc.col
+        );
+    }
+}
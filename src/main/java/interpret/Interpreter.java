@@ -4,15 +4,59 @@ import ast.*;
 import lexer.LocatedString;
 
 import java.math.BigInteger;
-import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
 
+// Values are longs while they fit in 64 bits and BigIntegers only once they do not, so nearly all
+// arithmetic runs on longs. Each operation checks its own operands: it works on longs while both
+// are longs and its result does not overflow, and on BigIntegers otherwise, so one large operand
+// only moves the operations above it off longs. Results that fit again are longs again.
+// Both representations print the same decimal digits.
+// Variables are resolved to slots before running and live in a Frame.
+// Given a pool, independent assignments that work on large BigIntegers run at the same time, as
+// scheduled by a DependencyGraph per block; everything else runs in program order.
+// A Budget and a CancellationToken are checked at the start of every block and before every
+// statement; the bit length of values is checked after every operation, and before a
+// multiplication whose result is sure to be too long.
 public class Interpreter {
 
-    // Single environment mapping variable name -> integer value
-    private final Map<String, BigInteger> env = new HashMap<>();
+    // slots of the program being run
+    private SlotResolver slots;
+    // frame of the running procedure (or the main block)
+    private Frame frame;
+    // null to run every statement on the calling thread
+    private final ForkJoinPool pool;
+    // per block, the groups of assignments that may run in parallel
+    private final Map<BlockNode, DependencyGraph[]> groups = new IdentityHashMap<>();
+    private final Budget budget;
+    // null if the run cannot be cancelled
+    private final CancellationToken cancellation;
+    // false skips every budget and cancellation check
+    private final boolean limited;
+    private long executed;
+    // System.nanoTime() by which the run must finish
+    private long deadline;
+
+    public Interpreter() {
+        this(null);
+    }
+
+    public Interpreter(ForkJoinPool pool) {
+        this(pool, Budget.UNLIMITED, null);
+    }
+
+    public Interpreter(ForkJoinPool pool, Budget budget, CancellationToken cancellation) {
+        this.pool = pool;
+        this.budget = budget;
+        this.cancellation = cancellation;
+        this.limited = !budget.isUnlimited() || cancellation != null;
+    }
 
     /**
      * Entry point: interpret the entire program.
@@ -21,9 +65,50 @@ public class Interpreter {
         if (!(root instanceof BlockNode)) {
             throw new IllegalArgumentException("Program root must be a BlockNode");
         }
+        slots = SlotResolver.resolve(root);
+        frame = new Frame(slots.frameSize(), System.out);
+        executed = 0;
+        deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budget.timeoutMillis);
         executeBlock((BlockNode) root);
     }
 
+    // =========================
+    //   BUDGET
+    // =========================
+
+    private void checkStop() {
+        if (cancellation != null && cancellation.isCancelled()) {
+            throw new BudgetExceededException(BudgetExceededException.Reason.CANCELLED, "Run cancelled");
+        }
+        if (budget.timeoutMillis > 0 && System.nanoTime() - deadline > 0) {
+            throw new BudgetExceededException(BudgetExceededException.Reason.TIME,
+                "Run exceeded its time limit of " + budget.timeoutMillis + "ms");
+        }
+    }
+
+    // counts statements about to be executed
+    private void step(int statements) {
+        executed += statements;
+        if (budget.maxStatements > 0 && executed > budget.maxStatements) {
+            throw new BudgetExceededException(BudgetExceededException.Reason.STATEMENTS,
+                "Run exceeded its limit of " + budget.maxStatements + " statements");
+        }
+        checkStop();
+    }
+
+    private BigInteger checkBits(BigInteger value, ASTNode node) {
+        if (budget.maxBits > 0 && value.bitLength() > budget.maxBits) {
+            throw tooLong(node);
+        }
+        return value;
+    }
+
+    private BudgetExceededException tooLong(ASTNode node) {
+        return new BudgetExceededException(BudgetExceededException.Reason.BITS,
+            "Value at line " + node.lexeme.line + ", column " + node.lexeme.col
+            + " exceeds the limit of " + budget.maxBits + " bits");
+    }
+
     // =========================
     //   STATEMENTS
     // =========================
@@ -31,21 +116,100 @@ public class Interpreter {
     private void executeBlock(BlockNode block) {
         List<ASTNode> statements = block.children;
         if (statements == null) return;
-        for (ASTNode stmt : statements) {
-            executeStatement(stmt);
+        if (limited) {
+            checkStop();
+        }
+        if (pool == null) {
+            for (ASTNode stmt : statements) {
+                executeStatement(stmt);
+            }
+            return;
+        }
+        DependencyGraph[] blockGroups = groups.computeIfAbsent(block, b -> DependencyGraph.of(b, slots));
+        int i = 0;
+        while (i < statements.size()) {
+            DependencyGraph group = blockGroups[i];
+            if (group != null && group.isHeavy(frame)) {
+                if (limited) {
+                    step(group.size());
+                }
+                executeGroup(group);
+                i += group.size();
+            }
+            else {
+                executeStatement(statements.get(i));
+                i++;
+            }
+        }
+    }
+
+    // Each assignment starts once the ones it depends on are done. The running frame does not
+    // change until the group is, and the assignments of a group that may run at the same time
+    // read and write different slots. If assignments fail, the first in program order is
+    // reported, which is the one that would have failed running them in order: the assignments
+    // before it succeeded, so it saw the same values. Assignments waiting for a failed one do not run.
+    private void executeGroup(DependencyGraph group) {
+        int n = group.size();
+        CompletableFuture<?>[] done = new CompletableFuture<?>[n];
+        RuntimeException[] errors = new RuntimeException[n];
+        for (int i = 0; i < n; i++) {
+            AssignmentNode node = group.statements[i];
+            int index = i;
+            Runnable task = () -> {
+                try {
+                    executeAssignment(node);
+                } catch (RuntimeException e) {
+                    errors[index] = e;
+                    throw e;
+                }
+            };
+            int[] deps = group.deps[i];
+            if (deps.length == 0) {
+                done[i] = CompletableFuture.runAsync(task, pool);
+            }
+            else {
+                CompletableFuture<?>[] waitFor = new CompletableFuture<?>[deps.length];
+                for (int j = 0; j < deps.length; j++) {
+                    waitFor[j] = done[deps[j]];
+                }
+                done[i] = CompletableFuture.allOf(waitFor).thenRunAsync(task, pool);
+            }
+        }
+        try {
+            CompletableFuture.allOf(done).join();
+        } catch (CompletionException e) {
+            for (RuntimeException error : errors) {
+                if (error != null) {
+                    throw error;
+                }
+            }
+            // an Error, such as running out of memory
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
         }
     }
 
     private void executeStatement(ASTNode stmt) {
+        if (limited) {
+            step(1);
+        }
         if (stmt instanceof AssignmentNode) {
             executeAssignment((AssignmentNode) stmt);
         }
         else if (stmt instanceof IfNode) {
             executeIf((IfNode) stmt);
         }
+        else if (stmt instanceof WhileNode) {
+            executeWhile((WhileNode) stmt);
+        }
         else if (stmt instanceof PrintNode) {
             executePrint((PrintNode) stmt);
         }
+        else if (stmt instanceof CallNode) {
+            executeCall((CallNode) stmt);
+        }
         else if (stmt instanceof CheckNode) {
             // do nothing; validated at compile time
         }
@@ -55,9 +219,7 @@ public class Interpreter {
     }
 
     private void executeAssignment(AssignmentNode node) {
-        String varName = node.lhs.s;
-        BigInteger value = evalInt(node.rhs);
-        env.put(varName, value);
+        store(node.rhs, frame, slots.slot(node));
     }
 
     private void executeIf(IfNode node) {
@@ -70,43 +232,100 @@ public class Interpreter {
         }
     }
 
-    private void executePrint(PrintNode node) {
-        String varName = node.variable.s;
-        BigInteger value = env.get(varName);
-        if (value == null) {
-            LocatedString loc = node.lexeme;
+    private void executeCall(CallNode node) {
+        ProcedureNode procedure = node.procedure;
+        // arguments are evaluated in the caller; the body only sees its parameters
+        Frame callee = new Frame(slots.frameSize(procedure), frame.out);
+        for (int i = 0; i < procedure.params.size(); i++) {
+            store(node.args.get(i), callee, i);
+        }
+        Frame caller = frame;
+        frame = callee;
+        try {
+            executeBlock(procedure.body);
+        } finally {
+            frame = caller;
+        }
+        int resultSlot = slots.resultSlot(procedure);
+        if (!callee.isAssigned(resultSlot)) {
+            LocatedString loc = procedure.result;
             throw new RuntimeException(
-                "Variable \"" + varName + "\" used before assigned at line "
+                "Result \"" + loc.s + "\" of procedure " + procedure.name.s + " not assigned at line "
                 + loc.line + ", column " + loc.col
             );
         }
-        System.out.println(varName + ": " + value);
+        frame.copy(slots.slot(node), callee, resultSlot);
+    }
+
+    private void executeWhile(WhileNode node) {
+        // the invariant is not evaluated; like checks, it was proven by the verifier
+        while (evalBool(node.cond)) {
+            if (limited) {
+                step(1);
+            }
+            executeBlock(node.body);
+        }
+    }
+
+    private void executePrint(PrintNode node) {
+        String varName = node.variable.s;
+        int slot = slots.slot(node);
+        if (!frame.isAssigned(slot)) {
+            throw Frame.unassigned(varName, node.lexeme);
+        }
+        frame.out.println(varName + ": " + frame.toString(slot));
     }
 
     // =========================
     //   EXPRESSIONS – INT
     // =========================
 
-    private BigInteger evalInt(ASTNode node) {
+    // evaluates expr in the running frame and stores its value in the given frame
+    private void store(ASTNode expr, Frame to, int slot) {
+        Value value = new Value();
+        long small = eval(expr, value);
+        if (value.big == null) {
+            to.setLong(slot, small);
+        }
+        else {
+            to.setBig(slot, value.big);
+        }
+    }
+
+    // where eval leaves a value that does not fit in a long. Each evaluation has its own, since
+    // independent assignments may be evaluated at the same time.
+    private static final class Value {
+        // null when the value is the long that eval returned
+        BigInteger big;
+    }
+
+    // returns the value of node if it fits in a long and sets value.big to null; otherwise sets
+    // value.big to the value
+    private long eval(ASTNode node, Value value) {
+        value.big = null;
         if (node instanceof IntConstantNode) {
-            IntConstantNode c = (IntConstantNode) node;
-            return new BigInteger(c.lexeme.s);
+            IntConstantNode constant = (IntConstantNode) node;
+            if (constant.fitsLong) {
+                return constant.longValue;
+            }
+            value.big = limited ? checkBits(constant.value, node) : constant.value;
+            return 0;
         }
         else if (node instanceof LabelNode) {
             LabelNode l = (LabelNode) node;
-            String name = l.label.s;
-            BigInteger value = env.get(name);
-            if (value == null) {
-                LocatedString loc = l.label;
-                throw new RuntimeException(
-                    "Variable \"" + name + "\" used before assigned at line "
-                    + loc.line + ", column " + loc.col
-                );
+            int slot = slots.slot(l);
+            BigInteger big = frame.bigs[slot];
+            if (big == Frame.LONG) {
+                return frame.longs[slot];
             }
-            return value;
+            if (big == null) {
+                throw Frame.unassigned(l.label.s, l.label);
+            }
+            value.big = big;
+            return 0;
         }
         else if (node instanceof IntOperatorNode) {
-            return evalIntOperator((IntOperatorNode) node);
+            return evalIntOperator((IntOperatorNode) node, value);
         }
         else {
             throw new IllegalStateException(
@@ -115,26 +334,52 @@ public class Interpreter {
         }
     }
 
-    private BigInteger evalIntOperator(IntOperatorNode node) {
+    private long evalIntOperator(IntOperatorNode node, Value value) {
+        long left = eval(node.left, value);
+        BigInteger leftBig = value.big;
+        if (node.op == IntOperatorNode.Operator.NEGATE) {
+            if (leftBig == null && left != Long.MIN_VALUE) {
+                return -left;
+            }
+            return big(big(left, leftBig).negate(), node, value);
+        }
+        long right = eval(node.right, value);
+        BigInteger rightBig = value.big;
+        value.big = null;
         switch (node.op) {
             case ADD -> {
-                BigInteger left = evalInt(node.left);
-                BigInteger right = evalInt(node.right);
-                return left.add(right);
+                long sum = left + right;
+                // overflow iff both operands have the sign the sum lacks
+                if (leftBig == null && rightBig == null && ((left ^ sum) & (right ^ sum)) >= 0) {
+                    return sum;
+                }
+                return big(big(left, leftBig).add(big(right, rightBig)), node, value);
             }
             case SUB -> {
-                BigInteger left = evalInt(node.left);
-                BigInteger right = evalInt(node.right);
-                return left.subtract(right);
+                long difference = left - right;
+                if (leftBig == null && rightBig == null && ((left ^ right) & (left ^ difference)) >= 0) {
+                    return difference;
+                }
+                return big(big(left, leftBig).subtract(big(right, rightBig)), node, value);
             }
             case MUL -> {
-                BigInteger left = evalInt(node.left);
-                BigInteger right = evalInt(node.right);
-                return left.multiply(right);
-            }
-            case NEGATE -> {
-                BigInteger v = evalInt(node.left);
-                return v.negate();
+                if (leftBig == null && rightBig == null) {
+                    long high = Math.multiplyHigh(left, right);
+                    long product = left * right;
+                    // fits iff the high half only extends the sign of the low half
+                    if (high == product >> 63) {
+                        return product;
+                    }
+                }
+                BigInteger l = big(left, leftBig);
+                BigInteger r = big(right, rightBig);
+                // a product of numbers of a and b bits has at least a + b - 2 bits; this stops
+                // the multiplication before it allocates a number far over the limit
+                if (limited && budget.maxBits > 0 && l.signum() != 0 && r.signum() != 0
+                        && l.bitLength() + r.bitLength() - 2 > budget.maxBits) {
+                    throw tooLong(node);
+                }
+                return big(l.multiply(r), node, value);
             }
             default -> {
                 throw new IllegalStateException("Unexpected int operator: " + node.op);
@@ -142,6 +387,20 @@ public class Interpreter {
         }
     }
 
+    private static BigInteger big(long small, BigInteger big) {
+        return big == null ? BigInteger.valueOf(small) : big;
+    }
+
+    // the result of an operation on BigIntegers, back as a long if it fits
+    private long big(BigInteger result, ASTNode node, Value value) {
+        if (result.bitLength() < Long.SIZE) {
+            value.big = null;
+            return result.longValue();
+        }
+        value.big = limited ? checkBits(result, node) : result;
+        return 0;
+    }
+
     // =========================
     //   EXPRESSIONS – BOOL
     // =========================
@@ -159,10 +418,14 @@ public class Interpreter {
     }
 
     private boolean evalBoolCompare(BoolCompareNode node) {
-        BigInteger left = evalInt(node.left);
-        BigInteger right = evalInt(node.right);
-
-        int cmp = left.compareTo(right);
+        Value value = new Value();
+        long left = eval(node.left, value);
+        BigInteger leftBig = value.big;
+        long right = eval(node.right, value);
+        BigInteger rightBig = value.big;
+        int cmp = leftBig == null && rightBig == null
+            ? Long.compare(left, right)
+            : big(left, leftBig).compareTo(big(right, rightBig));
 
         switch (node.cmp) {
             case GREATER:
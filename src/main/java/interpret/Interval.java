@@ -0,0 +1,137 @@
+package interpret;
+
+import java.math.BigInteger;
+import java.util.Objects;
+
+/**
+ * A range of integers for {@link RangeAnalysis}. Bounds are inclusive; a null bound is unbounded
+ * on that side. {@link #EMPTY} holds no value at all, e.g. a variable that is not assigned yet.
+ */
+final class Interval {
+
+    static final Interval TOP = new Interval(null, null, false);
+    static final Interval EMPTY = new Interval(null, null, true);
+
+    private static final BigInteger LONG_MIN = BigInteger.valueOf(Long.MIN_VALUE);
+    private static final BigInteger LONG_MAX = BigInteger.valueOf(Long.MAX_VALUE);
+
+    // null if unbounded
+    final BigInteger lo;
+    final BigInteger hi;
+    final boolean empty;
+
+    private Interval(BigInteger lo, BigInteger hi, boolean empty) {
+        this.lo = lo;
+        this.hi = hi;
+        this.empty = empty;
+    }
+
+    static Interval of(BigInteger lo, BigInteger hi) {
+        if (lo != null && hi != null && lo.compareTo(hi) > 0) {
+            return EMPTY;
+        }
+        return new Interval(lo, hi, false);
+    }
+
+    static Interval constant(BigInteger value) {
+        return new Interval(value, value, false);
+    }
+
+    // every value in it is a long; vacuously true for EMPTY
+    boolean fitsLong() {
+        return empty || lo != null && hi != null && lo.compareTo(LONG_MIN) >= 0 && hi.compareTo(LONG_MAX) <= 0;
+    }
+
+    Interval join(Interval other) {
+        if (empty) {
+            return other;
+        }
+        if (other.empty) {
+            return this;
+        }
+        return of(lo == null || other.lo == null ? null : lo.min(other.lo),
+            hi == null || other.hi == null ? null : hi.max(other.hi));
+    }
+
+    Interval meet(Interval other) {
+        if (empty || other.empty) {
+            return EMPTY;
+        }
+        return of(lo == null ? other.lo : other.lo == null ? lo : lo.max(other.lo),
+            hi == null ? other.hi : other.hi == null ? hi : hi.min(other.hi));
+    }
+
+    // a bound that moved since the last iteration goes to infinity, so loops reach a fixpoint
+    Interval widen(Interval next) {
+        if (empty) {
+            return next;
+        }
+        if (next.empty) {
+            return this;
+        }
+        return of(lo == null || next.lo == null || next.lo.compareTo(lo) < 0 ? null : lo,
+            hi == null || next.hi == null || next.hi.compareTo(hi) > 0 ? null : hi);
+    }
+
+    Interval add(Interval other) {
+        if (empty || other.empty) {
+            return EMPTY;
+        }
+        return of(lo == null || other.lo == null ? null : lo.add(other.lo),
+            hi == null || other.hi == null ? null : hi.add(other.hi));
+    }
+
+    Interval subtract(Interval other) {
+        return add(other.negate());
+    }
+
+    Interval negate() {
+        if (empty) {
+            return EMPTY;
+        }
+        return of(hi == null ? null : hi.negate(), lo == null ? null : lo.negate());
+    }
+
+    Interval multiply(Interval other) {
+        if (empty || other.empty) {
+            return EMPTY;
+        }
+        if (isZero() || other.isZero()) {
+            return constant(BigInteger.ZERO);
+        }
+        if (lo == null || hi == null || other.lo == null || other.hi == null) {
+            return TOP;
+        }
+        BigInteger a = lo.multiply(other.lo);
+        BigInteger b = lo.multiply(other.hi);
+        BigInteger c = hi.multiply(other.lo);
+        BigInteger d = hi.multiply(other.hi);
+        return of(a.min(b).min(c.min(d)), a.max(b).max(c.max(d)));
+    }
+
+    private boolean isZero() {
+        return lo != null && lo.signum() == 0 && hi != null && hi.signum() == 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Interval)) {
+            return false;
+        }
+        Interval other = (Interval) o;
+        return empty == other.empty && Objects.equals(lo, other.lo) && Objects.equals(hi, other.hi);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(lo, hi, empty);
+    }
+
+    @Override
+    public String toString() {
+        if (empty) {
+            return "[]";
+        }
+        return "[" + (lo == null ? "-inf" : lo) + ", " + (hi == null ? "+inf" : hi) + "]";
+    }
+}
@@ -0,0 +1,18 @@
+package interpret;
+
+import java.io.PrintStream;
+
+/**
+ * A program compiled once from its tree and then run any number of times, from any number of
+ * threads at once. Implementations are immutable: everything a run changes lives in state it
+ * allocates for itself, so runs share nothing but the compiled code and constants.
+ */
+public interface Program {
+
+    // print statements of this run write to out
+    void run(PrintStream out);
+
+    default void run() {
+        run(System.out);
+    }
+}
@@ -0,0 +1,93 @@
+package interpret;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs compiled {@link Program}s on a fixed pool of threads. A program is shared by all its runs
+ * without locking; each run gets its own frames and its own output buffer.
+ */
+public final class ProgramRunner implements AutoCloseable {
+
+    /**
+     * What one run printed, and the error that stopped it, if any.
+     */
+    public static final class Run {
+        public final String output;
+        // null if the run finished
+        public final RuntimeException error;
+
+        Run(String output, RuntimeException error) {
+            this.output = output;
+            this.error = error;
+        }
+    }
+
+    private final ExecutorService pool;
+
+    public ProgramRunner(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Runner needs at least one thread, got " + threads);
+        }
+        pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "program-runner");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public Future<Run> submit(Program program) {
+        return pool.submit(() -> run(program));
+    }
+
+    // runs the program the given number of times and waits for all of them; results are in
+    // the order the runs were submitted
+    public List<Run> runAll(Program program, int runs) {
+        List<Future<Run>> futures = new ArrayList<>(runs);
+        for (int i = 0; i < runs; i++) {
+            futures.add(submit(program));
+        }
+        List<Run> results = new ArrayList<>(runs);
+        try {
+            for (Future<Run> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(future -> future.cancel(true));
+            throw new IllegalStateException("Interrupted while waiting for runs", e);
+        } catch (ExecutionException e) {
+            // a run only fails this way with an Error, such as running out of stack
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException("Run failed", e.getCause());
+        }
+        return results;
+    }
+
+    static Run run(Program program) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, false, StandardCharsets.UTF_8);
+        RuntimeException error = null;
+        try {
+            program.run(out);
+        } catch (RuntimeException e) {
+            error = e;
+        }
+        out.flush();
+        return new Run(bytes.toString(StandardCharsets.UTF_8), error);
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+}
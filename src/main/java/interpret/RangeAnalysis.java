@@ -0,0 +1,286 @@
+package interpret;
+
+import ast.*;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Computes, by abstract interpretation over intervals, the range of values every arithmetic
+ * operation can take in any run of a program. The compilers use it to do
+ * operations that provably stay within a long without overflow checks, and keep the checked
+ * path and its BigInteger fallback for values that may grow without bound.
+ * <p>
+ * Conditions narrow the ranges of the variables they compare, so a loop counter bounded by its
+ * loop condition gets a finite range. Loops are iterated to a fixpoint, widening bounds that keep
+ * moving to infinity, and then narrowed again. Procedures are analyzed once, assuming nothing
+ * about their parameters, which holds for every call. Variables are numbered by the
+ * {@link SlotResolver} of the program.
+ */
+final class RangeAnalysis {
+
+    // a loop is iterated this many times with plain joins before its bounds are widened
+    private static final int WIDEN_AFTER = 2;
+    private static final int NARROWINGS = 2;
+
+    // over every evaluation of each arithmetic operation
+    private final Map<ASTNode, Interval> ranges = new IdentityHashMap<>();
+    private final SlotResolver slots;
+    // per procedure, the values it can return, for the calls to it
+    private final Map<ProcedureNode, Interval> results = new IdentityHashMap<>();
+    private final Set<ProcedureNode> inProgress = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    // false while a loop is iterated to its fixpoint, whose intermediate states are not final
+    private boolean recording = true;
+
+    private RangeAnalysis(SlotResolver slots) {
+        this.slots = slots;
+    }
+
+    static RangeAnalysis analyze(ASTNode root, SlotResolver slots) {
+        RangeAnalysis analysis = new RangeAnalysis(slots);
+        if (root instanceof ProgramNode) {
+            for (ProcedureNode procedure : ((ProgramNode) root).procedures) {
+                analysis.procedure(procedure);
+            }
+        }
+        analysis.block(((BlockNode) root).children, empty(slots.frameSize()));
+        return analysis;
+    }
+
+    // the values of an arithmetic operation; unbounded if nothing is known
+    Interval range(ASTNode expr) {
+        return ranges.getOrDefault(expr, Interval.TOP);
+    }
+
+    boolean fitsLong(ASTNode expr) {
+        return range(expr).fitsLong();
+    }
+
+    private static Interval[] empty(int size) {
+        Interval[] state = new Interval[size];
+        Arrays.fill(state, Interval.EMPTY);
+        return state;
+    }
+
+    private Interval procedure(ProcedureNode procedure) {
+        Interval result = results.get(procedure);
+        if (result != null) {
+            return result;
+        }
+        if (!inProgress.add(procedure)) {
+            // a recursive call, before the result is known
+            return Interval.TOP;
+        }
+        boolean outerRecording = recording;
+        recording = true;
+        Interval[] state = empty(slots.frameSize(procedure));
+        for (int i = 0; i < procedure.params.size(); i++) {
+            state[i] = Interval.TOP;
+        }
+        state = block(procedure.body.children, state);
+        result = state == null ? Interval.EMPTY : state[slots.resultSlot(procedure)];
+        results.put(procedure, result);
+        inProgress.remove(procedure);
+        recording = outerRecording;
+        return result;
+    }
+
+    // =========================
+    //   STATEMENTS
+    // =========================
+
+    // a null state is unreachable
+    private Interval[] block(List<ASTNode> statements, Interval[] state) {
+        for (ASTNode stmt : statements) {
+            if (state == null) {
+                return null;
+            }
+            state = statement(stmt, state);
+        }
+        return state;
+    }
+
+    private Interval[] statement(ASTNode stmt, Interval[] state) {
+        if (stmt instanceof AssignmentNode) {
+            AssignmentNode node = (AssignmentNode) stmt;
+            return assign(state, slots.slot(node), eval(node.rhs, state));
+        }
+        else if (stmt instanceof IfNode) {
+            IfNode node = (IfNode) stmt;
+            Interval[] then = block(node.branchThen.children, refine(state, node.cond, true));
+            Interval[] otherwise = block(node.branchElse.children, refine(state, node.cond, false));
+            return join(then, otherwise);
+        }
+        else if (stmt instanceof WhileNode) {
+            return loop((WhileNode) stmt, state);
+        }
+        else if (stmt instanceof CallNode) {
+            CallNode node = (CallNode) stmt;
+            for (ASTNode arg : node.args) {
+                eval(arg, state);
+            }
+            return assign(state, slots.slot(node), procedure(node.procedure));
+        }
+        // print and check change no variable
+        return state;
+    }
+
+    private Interval[] assign(Interval[] state, int slot, Interval value) {
+        Interval[] next = state.clone();
+        next[slot] = value;
+        return next;
+    }
+
+    private Interval[] loop(WhileNode node, Interval[] entry) {
+        boolean outerRecording = recording;
+        recording = false;
+        Interval[] head = entry;
+        for (int i = 0; ; i++) {
+            Interval[] next = join(entry, block(node.body.children, refine(head, node.cond, true)));
+            Interval[] widened = i < WIDEN_AFTER ? join(head, next) : widen(head, next);
+            if (Arrays.equals(widened, head)) {
+                break;
+            }
+            head = widened;
+        }
+        // head holds in every iteration now; evaluating the loop once more can only tighten it
+        for (int i = 0; i < NARROWINGS; i++) {
+            head = join(entry, block(node.body.children, refine(head, node.cond, true)));
+        }
+        recording = outerRecording;
+        block(node.body.children, refine(head, node.cond, true));
+        return refine(head, node.cond, false);
+    }
+
+    private static Interval[] join(Interval[] a, Interval[] b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        Interval[] joined = new Interval[a.length];
+        for (int i = 0; i < a.length; i++) {
+            joined[i] = a[i].join(b[i]);
+        }
+        return joined;
+    }
+
+    private static Interval[] widen(Interval[] a, Interval[] b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        Interval[] widened = new Interval[a.length];
+        for (int i = 0; i < a.length; i++) {
+            widened[i] = a[i].widen(b[i]);
+        }
+        return widened;
+    }
+
+    // =========================
+    //   EXPRESSIONS
+    // =========================
+
+    private Interval eval(ASTNode node, Interval[] state) {
+        if (node instanceof IntConstantNode) {
+            return Interval.constant(((IntConstantNode) node).value);
+        }
+        else if (node instanceof LabelNode) {
+            return state[slots.slot(node)];
+        }
+        else if (node instanceof IntOperatorNode) {
+            IntOperatorNode op = (IntOperatorNode) node;
+            Interval left = eval(op.left, state);
+            Interval value = switch (op.op) {
+                case ADD -> left.add(eval(op.right, state));
+                case SUB -> left.subtract(eval(op.right, state));
+                case MUL -> left.multiply(eval(op.right, state));
+                case NEGATE -> left.negate();
+            };
+            if (recording) {
+                ranges.merge(node, value, Interval::join);
+            }
+            return value;
+        }
+        throw new IllegalStateException("Expected integer expression, got " + node.getClass());
+    }
+
+    // the states in which the condition evaluates to when, narrowed by what that implies
+    private Interval[] refine(Interval[] state, ASTNode cond, boolean when) {
+        if (state == null) {
+            return null;
+        }
+        if (cond instanceof BoolCompareNode) {
+            BoolCompareNode cmp = (BoolCompareNode) cond;
+            Interval left = eval(cmp.left, state);
+            Interval right = eval(cmp.right, state);
+            Interval leftBound;
+            Interval rightBound;
+            switch (cmp.cmp) {
+                case LESSER -> {
+                    leftBound = when ? atMost(right, -1) : atLeast(right, 0);
+                    rightBound = when ? atLeast(left, 1) : atMost(left, 0);
+                }
+                case GREATER -> {
+                    leftBound = when ? atLeast(right, 1) : atMost(right, 0);
+                    rightBound = when ? atMost(left, -1) : atLeast(left, 0);
+                }
+                default -> {
+                    leftBound = when ? right : Interval.TOP;
+                    rightBound = when ? left : Interval.TOP;
+                }
+            }
+            state = narrow(state, cmp.left, left.meet(leftBound));
+            return narrow(state, cmp.right, right.meet(rightBound));
+        }
+        else if (cond instanceof BoolOperatorNode) {
+            BoolOperatorNode op = (BoolOperatorNode) cond;
+            if (op.op == BoolOperatorNode.Operator.NOT) {
+                return refine(state, op.left, !when);
+            }
+            // with AND true, or OR false, both operands evaluate to when
+            if ((op.op == BoolOperatorNode.Operator.AND) == when) {
+                return refine(refine(state, op.left, when), op.right, when);
+            }
+            return join(refine(state, op.left, when), refine(refine(state, op.left, !when), op.right, when));
+        }
+        throw new IllegalStateException("Expected boolean expression, got " + cond.getClass());
+    }
+
+    private Interval[] narrow(Interval[] state, ASTNode operand, Interval value) {
+        if (state == null || value.empty) {
+            return null;
+        }
+        if (!(operand instanceof LabelNode)) {
+            return state;
+        }
+        Interval[] next = state.clone();
+        next[slots.slot(operand)] = value;
+        return next;
+    }
+
+    // values at most the largest of other, plus offset
+    private static Interval atMost(Interval other, int offset) {
+        if (other.empty) {
+            return Interval.EMPTY;
+        }
+        return Interval.of(null, other.hi == null ? null : other.hi.add(BigInteger.valueOf(offset)));
+    }
+
+    // values at least the smallest of other, plus offset
+    private static Interval atLeast(Interval other, int offset) {
+        if (other.empty) {
+            return Interval.EMPTY;
+        }
+        return Interval.of(other.lo == null ? null : other.lo.add(BigInteger.valueOf(offset)), null);
+    }
+}
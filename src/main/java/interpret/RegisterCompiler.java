@@ -0,0 +1,309 @@
+package interpret;
+
+import ast.*;
+import lexer.LocatedString;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles a program into the register instruction set of {@link RegisterProgram}.
+ * Variables keep the slots of {@link SlotResolver}; the values of subexpressions go to
+ * temporaries after them, which are reused from one statement to the next. An expression that
+ * is assigned to a variable computes its last operation straight into that variable, and an
+ * operation with a constant right operand that fits in a long becomes a single superinstruction.
+ */
+public final class RegisterCompiler {
+
+    private final SlotResolver slots;
+    private final Map<ProcedureNode, Integer> indices = new IdentityHashMap<>();
+    private final List<ProcedureNode> procedures = new ArrayList<>();
+
+    // state of the function being compiled
+    private int[] code;
+    private int length;
+    private int[] reads;
+    private final List<Long> longs = new ArrayList<>();
+    private final List<BigInteger> bigs = new ArrayList<>();
+    private final List<String> strings = new ArrayList<>();
+    private final Map<String, Integer> stringIndex = new HashMap<>();
+    private int firstTemp;
+    private int nextTemp;
+    private int frameSize;
+
+    private RegisterCompiler(SlotResolver slots) {
+        this.slots = slots;
+    }
+
+    public static RegisterProgram compile(ASTNode root) {
+        if (!(root instanceof BlockNode)) {
+            throw new IllegalArgumentException("Program root must be a BlockNode");
+        }
+        SlotResolver slots = SlotResolver.resolve(root);
+        RegisterCompiler compiler = new RegisterCompiler(slots);
+        List<RegisterProgram.Function> functions = new ArrayList<>();
+        functions.add(compiler.function("main", ((BlockNode) root).children, slots.frameSize(), 0, -1, null));
+        // procedures are compiled when first called, and may call others in turn
+        for (int i = 0; i < compiler.procedures.size(); i++) {
+            ProcedureNode procedure = compiler.procedures.get(i);
+            LocatedString loc = procedure.result;
+            String unassigned = "Result \"" + loc.s + "\" of procedure " + procedure.name.s + " not assigned at line "
+                + loc.line + ", column " + loc.col;
+            functions.add(compiler.function(procedure.name.s, procedure.body.children, slots.frameSize(procedure),
+                procedure.params.size(), slots.resultSlot(procedure), unassigned));
+        }
+        return new RegisterProgram(functions.toArray(new RegisterProgram.Function[0]));
+    }
+
+    private RegisterProgram.Function function(String name, List<ASTNode> body, int variables, int params,
+                                              int resultSlot, String unassignedResult) {
+        code = new int[64];
+        reads = new int[32];
+        length = 0;
+        longs.clear();
+        bigs.clear();
+        strings.clear();
+        stringIndex.clear();
+        firstTemp = variables;
+        nextTemp = variables;
+        frameSize = variables;
+        block(body);
+        emit(RegisterProgram.RET, 0, 0, 0);
+        int unassigned = unassignedResult == null ? -1 : string(unassignedResult);
+        return new RegisterProgram.Function(name, frameSize, params, resultSlot,
+            Arrays.copyOf(code, length),
+            longs.stream().mapToLong(Long::longValue).toArray(),
+            bigs.toArray(new BigInteger[0]),
+            strings.toArray(new String[0]),
+            Arrays.copyOf(reads, length / 2),
+            unassigned);
+    }
+
+    // returns the position of the instruction
+    private int emit(int op, int a, int b, int c) {
+        if (length + RegisterProgram.WIDTH > code.length) {
+            code = Arrays.copyOf(code, code.length * 2);
+            reads = Arrays.copyOf(reads, reads.length * 2);
+        }
+        int pc = length;
+        code[pc] = op;
+        code[pc + 1] = a;
+        code[pc + 2] = b;
+        code[pc + 3] = c;
+        reads[pc / 2] = -1;
+        reads[pc / 2 + 1] = -1;
+        length += RegisterProgram.WIDTH;
+        return pc;
+    }
+
+    // records what to report if operand b (0) or c (1) of the instruction at pc reads an unassigned variable
+    private void read(int pc, int operand, ASTNode node) {
+        if (node instanceof LabelNode) {
+            LabelNode l = (LabelNode) node;
+            reads[pc / 2 + operand] = string(Frame.unassigned(l.label.s, l.label).getMessage());
+        }
+    }
+
+    private int string(String s) {
+        return stringIndex.computeIfAbsent(s, key -> {
+            strings.add(key);
+            return strings.size() - 1;
+        });
+    }
+
+    private int temp() {
+        int temp = nextTemp++;
+        frameSize = Math.max(frameSize, nextTemp);
+        return temp;
+    }
+
+    // =========================
+    //   STATEMENTS
+    // =========================
+
+    private void block(List<ASTNode> statements) {
+        for (ASTNode stmt : statements) {
+            statement(stmt);
+            nextTemp = firstTemp;
+        }
+    }
+
+    private void statement(ASTNode stmt) {
+        if (stmt instanceof AssignmentNode) {
+            AssignmentNode node = (AssignmentNode) stmt;
+            expr(node.rhs, slots.slot(node));
+        }
+        else if (stmt instanceof IfNode) {
+            IfNode node = (IfNode) stmt;
+            List<Integer> toElse = new ArrayList<>();
+            jump(node.cond, false, toElse);
+            block(node.branchThen.children);
+            int toEnd = emit(RegisterProgram.JMP, 0, 0, 0);
+            patch(toElse, length);
+            block(node.branchElse.children);
+            code[toEnd + 1] = length;
+        }
+        else if (stmt instanceof WhileNode) {
+            WhileNode node = (WhileNode) stmt;
+            int top = length;
+            List<Integer> toExit = new ArrayList<>();
+            jump(node.cond, false, toExit);
+            block(node.body.children);
+            emit(RegisterProgram.JMP, top, 0, 0);
+            patch(toExit, length);
+        }
+        else if (stmt instanceof PrintNode) {
+            PrintNode node = (PrintNode) stmt;
+            int pc = emit(RegisterProgram.PRINT, string(node.variable.s), slots.slot(node), 0);
+            reads[pc / 2] = string(Frame.unassigned(node.variable.s, node.lexeme).getMessage());
+        }
+        else if (stmt instanceof CallNode) {
+            CallNode node = (CallNode) stmt;
+            int first = nextTemp;
+            for (int i = 0; i < node.args.size(); i++) {
+                temp();
+            }
+            for (int i = 0; i < node.args.size(); i++) {
+                expr(node.args.get(i), first + i);
+            }
+            emit(RegisterProgram.CALL, slots.slot(node), procedure(node.procedure), first);
+        }
+        else if (!(stmt instanceof CheckNode)) {
+            throw new IllegalStateException("Unexpected statement node type: " + stmt.getClass());
+        }
+    }
+
+    private int procedure(ProcedureNode procedure) {
+        return indices.computeIfAbsent(procedure, p -> {
+            procedures.add(p);
+            // function 0 is the main block
+            return procedures.size();
+        });
+    }
+
+    private void patch(List<Integer> jumps, int target) {
+        for (int pc : jumps) {
+            code[pc + 1] = target;
+        }
+    }
+
+    // =========================
+    //   EXPRESSIONS – INT
+    // =========================
+
+    // a register holding the value of an expression: the variable itself, or a temporary
+    private int operand(ASTNode node) {
+        if (node instanceof LabelNode) {
+            return slots.slot(node);
+        }
+        int temp = temp();
+        expr(node, temp);
+        return temp;
+    }
+
+    // computes an expression into the given register
+    private void expr(ASTNode node, int dst) {
+        if (node instanceof IntConstantNode) {
+            BigInteger value = ((IntConstantNode) node).value;
+            if (value.bitLength() < Long.SIZE) {
+                emit(RegisterProgram.LCONST, dst, longConstant(value.longValue()), 0);
+            }
+            else {
+                bigs.add(value);
+                emit(RegisterProgram.BCONST, dst, bigs.size() - 1, 0);
+            }
+        }
+        else if (node instanceof LabelNode) {
+            int pc = emit(RegisterProgram.MOVE, dst, slots.slot(node), 0);
+            read(pc, 0, node);
+        }
+        else if (node instanceof IntOperatorNode) {
+            IntOperatorNode op = (IntOperatorNode) node;
+            int left = operand(op.left);
+            if (op.op == IntOperatorNode.Operator.NEGATE) {
+                int pc = emit(RegisterProgram.NEG, dst, left, 0);
+                read(pc, 0, op.left);
+                return;
+            }
+            if (op.right instanceof IntConstantNode && ((IntConstantNode) op.right).value.bitLength() < Long.SIZE) {
+                int k = longConstant(((IntConstantNode) op.right).value.longValue());
+                int pc = emit(switch (op.op) {
+                    case ADD -> RegisterProgram.ADDK;
+                    case SUB -> RegisterProgram.SUBK;
+                    default -> RegisterProgram.MULK;
+                }, dst, left, k);
+                read(pc, 0, op.left);
+                return;
+            }
+            int right = operand(op.right);
+            int pc = emit(switch (op.op) {
+                case ADD -> RegisterProgram.ADD;
+                case SUB -> RegisterProgram.SUB;
+                default -> RegisterProgram.MUL;
+            }, dst, left, right);
+            read(pc, 0, op.left);
+            read(pc, 1, op.right);
+        }
+        else {
+            throw new IllegalStateException("Expected integer expression, got " + node.getClass());
+        }
+    }
+
+    private int longConstant(long value) {
+        int index = longs.indexOf(value);
+        if (index < 0) {
+            longs.add(value);
+            index = longs.size() - 1;
+        }
+        return index;
+    }
+
+    // =========================
+    //   EXPRESSIONS – BOOL
+    // =========================
+
+    // jumps if the condition evaluates to when, and falls through otherwise; the positions of the
+    // jumps are added to jumps, to be patched with the target once it is known
+    private void jump(ASTNode node, boolean when, List<Integer> jumps) {
+        if (node instanceof BoolCompareNode) {
+            BoolCompareNode cmp = (BoolCompareNode) node;
+            int left = operand(cmp.left);
+            int right = operand(cmp.right);
+            int pc = emit(switch (cmp.cmp) {
+                case LESSER -> when ? RegisterProgram.JLT : RegisterProgram.JGE;
+                case GREATER -> when ? RegisterProgram.JGT : RegisterProgram.JLE;
+                case EQUAL -> when ? RegisterProgram.JEQ : RegisterProgram.JNE;
+            }, 0, left, right);
+            read(pc, 0, cmp.left);
+            read(pc, 1, cmp.right);
+            jumps.add(pc);
+        }
+        else if (node instanceof BoolOperatorNode) {
+            BoolOperatorNode op = (BoolOperatorNode) node;
+            switch (op.op) {
+                case NOT -> jump(op.left, !when, jumps);
+                case AND, OR -> {
+                    // with AND jumping on false, or OR jumping on true, either operand decides
+                    if ((op.op == BoolOperatorNode.Operator.AND) != when) {
+                        jump(op.left, when, jumps);
+                        jump(op.right, when, jumps);
+                    }
+                    else {
+                        List<Integer> skip = new ArrayList<>();
+                        jump(op.left, !when, skip);
+                        jump(op.right, when, jumps);
+                        patch(skip, length);
+                    }
+                }
+            }
+        }
+        else {
+            throw new IllegalStateException("Expected boolean expression, got " + node.getClass());
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package interpret;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.math.BigInteger;
+
+/**
+ * A program in the register instruction set run by {@link RegisterVM}, as compiled by
+ * {@link RegisterCompiler}. It can be written to a stream and read back, so a verified program
+ * can be run later without lexing, parsing or building its tree again.
+ * <p>
+ * Every instruction is four ints: an opcode and the operands a, b and c. Registers are the slots
+ * of a {@link Frame}: first the variables, then the temporaries of expressions. Jump targets are
+ * indices into the code array.
+ */
+public final class RegisterProgram implements Program {
+
+    //                           a        b          c
+    static final int RET = 0;
+    static final int LCONST = 1;    // dst      long index
+    static final int BCONST = 2;    // dst      big index
+    static final int MOVE = 3;      // dst      src
+    static final int ADD = 4;       // dst      left       right
+    static final int SUB = 5;       // dst      left       right
+    static final int MUL = 6;       // dst      left       right
+    static final int NEG = 7;       // dst      src
+    // superinstructions for x := y op constant
+    static final int ADDK = 8;      // dst      left       long index
+    static final int SUBK = 9;      // dst      left       long index
+    static final int MULK = 10;     // dst      left       long index
+    static final int JMP = 11;      // target
+    // compare-and-branch: jump if left op right
+    static final int JLT = 12;      // target   left       right
+    static final int JGE = 13;      // target   left       right
+    static final int JGT = 14;      // target   left       right
+    static final int JLE = 15;      // target   left       right
+    static final int JEQ = 16;      // target   left       right
+    static final int JNE = 17;      // target   left       right
+    static final int PRINT = 18;    // name     src
+    static final int CALL = 19;     // dst      function   first argument
+    static final int WIDTH = 4;
+
+    // "RBC" and a format version
+    private static final int MAGIC = 0x52424301;
+
+    /**
+     * The main block (function 0) or a procedure.
+     */
+    static final class Function {
+        final String name;
+        // registers, parameters first
+        final int frameSize;
+        final int params;
+        // -1 for the main block
+        final int resultSlot;
+        final int[] code;
+        final long[] longs;
+        final BigInteger[] bigs;
+        // names for print, and the messages for unassigned variables
+        final String[] strings;
+        // for the b and c operand of every instruction, the string to report if it reads an
+        // unassigned variable, or -1 if it cannot
+        final int[] reads;
+        // string to report if the procedure returns without assigning its result
+        final int unassignedResult;
+
+        Function(String name, int frameSize, int params, int resultSlot, int[] code, long[] longs,
+                 BigInteger[] bigs, String[] strings, int[] reads, int unassignedResult) {
+            this.name = name;
+            this.frameSize = frameSize;
+            this.params = params;
+            this.resultSlot = resultSlot;
+            this.code = code;
+            this.longs = longs;
+            this.bigs = bigs;
+            this.strings = strings;
+            this.reads = reads;
+            this.unassignedResult = unassignedResult;
+        }
+    }
+
+    final Function[] functions;
+
+    RegisterProgram(Function[] functions) {
+        this.functions = functions;
+    }
+
+    @Override
+    public void run(PrintStream out) {
+        RegisterVM.run(this, out);
+    }
+
+    public void write(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeInt(functions.length);
+        for (Function f : functions) {
+            out.writeUTF(f.name);
+            out.writeInt(f.frameSize);
+            out.writeInt(f.params);
+            out.writeInt(f.resultSlot);
+            out.writeInt(f.unassignedResult);
+            writeInts(out, f.code);
+            out.writeInt(f.longs.length);
+            for (long value : f.longs) {
+                out.writeLong(value);
+            }
+            out.writeInt(f.bigs.length);
+            for (BigInteger value : f.bigs) {
+                byte[] bytes = value.toByteArray();
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            out.writeInt(f.strings.length);
+            for (String s : f.strings) {
+                out.writeUTF(s);
+            }
+            writeInts(out, f.reads);
+        }
+        out.flush();
+    }
+
+    // throws IOException if the stream does not hold a program in this format. The stream is read
+    // to its end first, so that no length in it can make read allocate more than the stream holds.
+    public static RegisterProgram read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(stream.readAllBytes()));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a compiled program, or compiled by another version");
+        }
+        Function[] functions = new Function[length(in, 1)];
+        for (int i = 0; i < functions.length; i++) {
+            String name = in.readUTF();
+            int frameSize = in.readInt();
+            int params = in.readInt();
+            int resultSlot = in.readInt();
+            int unassignedResult = in.readInt();
+            int[] code = readInts(in);
+            long[] longs = new long[length(in, Long.BYTES)];
+            for (int j = 0; j < longs.length; j++) {
+                longs[j] = in.readLong();
+            }
+            BigInteger[] bigs = new BigInteger[length(in, Integer.BYTES + 1)];
+            for (int j = 0; j < bigs.length; j++) {
+                byte[] bytes = new byte[length(in, 1)];
+                if (bytes.length == 0) {
+                    throw new IOException("Malformed compiled program: empty constant in " + name);
+                }
+                in.readFully(bytes);
+                bigs[j] = new BigInteger(bytes);
+            }
+            // every string is at least its two byte length
+            String[] strings = new String[length(in, 2)];
+            for (int j = 0; j < strings.length; j++) {
+                strings[j] = in.readUTF();
+            }
+            int[] reads = readInts(in);
+            functions[i] = new Function(name, frameSize, params, resultSlot, code, longs, bigs, strings, reads, unassignedResult);
+        }
+        check(functions);
+        return new RegisterProgram(functions);
+    }
+
+    // the VM trusts its program, so a damaged file must not get past read
+    private static void check(Function[] functions) throws IOException {
+        if (functions.length == 0) {
+            throw new IOException("Compiled program has no main block");
+        }
+        for (Function f : functions) {
+            int[] code = f.code;
+            boolean valid = code.length > 0 && code.length % WIDTH == 0
+                && f.params >= 0 && f.params <= f.frameSize
+                && f.resultSlot < f.frameSize
+                && (f.resultSlot < 0 || inRange(f.unassignedResult, f.strings.length))
+                && f.reads.length == code.length / 2
+                && (code[code.length - WIDTH] == RET || code[code.length - WIDTH] == JMP);
+            for (int read : f.reads) {
+                valid &= read == -1 || inRange(read, f.strings.length);
+            }
+            for (int pc = 0; valid && pc < code.length; pc += WIDTH) {
+                int a = code[pc + 1];
+                int b = code[pc + 2];
+                int c = code[pc + 3];
+                valid = switch (code[pc]) {
+                    case RET -> true;
+                    case LCONST -> inRange(a, f.frameSize) && inRange(b, f.longs.length);
+                    case BCONST -> inRange(a, f.frameSize) && inRange(b, f.bigs.length);
+                    case MOVE, NEG -> inRange(a, f.frameSize) && inRange(b, f.frameSize);
+                    case ADD, SUB, MUL -> inRange(a, f.frameSize) && inRange(b, f.frameSize) && inRange(c, f.frameSize);
+                    case ADDK, SUBK, MULK -> inRange(a, f.frameSize) && inRange(b, f.frameSize) && inRange(c, f.longs.length);
+                    case JMP -> inRange(a, code.length) && a % WIDTH == 0;
+                    case JLT, JGE, JGT, JLE, JEQ, JNE -> inRange(a, code.length) && a % WIDTH == 0
+                        && inRange(b, f.frameSize) && inRange(c, f.frameSize);
+                    case PRINT -> inRange(a, f.strings.length) && inRange(b, f.frameSize);
+                    case CALL -> inRange(a, f.frameSize) && b > 0 && b < functions.length
+                        && functions[b].resultSlot >= 0
+                        && c >= 0 && c + functions[b].params <= f.frameSize;
+                    default -> false;
+                };
+            }
+            if (!valid) {
+                throw new IOException("Malformed compiled program in " + f.name);
+            }
+        }
+        checkCalls(functions);
+    }
+
+    // procedures cannot be recursive, and the VM would overflow its stack on a cycle of calls.
+    // Removes functions that nobody calls until none are left; any that remain call each other.
+    private static void checkCalls(Function[] functions) throws IOException {
+        int[] callers = new int[functions.length];
+        for (Function f : functions) {
+            for (int pc = 0; pc < f.code.length; pc += WIDTH) {
+                if (f.code[pc] == CALL) {
+                    callers[f.code[pc + 2]]++;
+                }
+            }
+        }
+        int[] uncalled = new int[functions.length];
+        int count = 0;
+        for (int i = 0; i < functions.length; i++) {
+            if (callers[i] == 0) {
+                uncalled[count++] = i;
+            }
+        }
+        for (int removed = 0; removed < count; removed++) {
+            Function f = functions[uncalled[removed]];
+            for (int pc = 0; pc < f.code.length; pc += WIDTH) {
+                if (f.code[pc] == CALL && --callers[f.code[pc + 2]] == 0) {
+                    uncalled[count++] = f.code[pc + 2];
+                }
+            }
+        }
+        if (count < functions.length) {
+            throw new IOException("Malformed compiled program: procedures call each other in a cycle");
+        }
+    }
+
+    private static boolean inRange(int index, int length) {
+        return index >= 0 && index < length;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    // the length of an array whose elements take at least elementBytes each in the stream
+    private static int length(DataInputStream in, int elementBytes) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || (long) length * elementBytes > in.available()) {
+            throw new IOException("Malformed compiled program");
+        }
+        return length;
+    }
+
+    private static int[] readInts(DataInputStream in) throws IOException {
+        int[] values = new int[length(in, Integer.BYTES)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+}
@@ -0,0 +1,219 @@
+package interpret;
+
+import java.io.PrintStream;
+import java.math.BigInteger;
+
+import static interpret.RegisterProgram.*;
+
+/**
+ * Runs a {@link RegisterProgram} with a single dispatch loop per call. Arithmetic and comparisons
+ * work on the longs of the {@link Frame} while both operands are longs and the result does not
+ * overflow; anything else, including the detection of unassigned variables, goes to the slow
+ * paths at the bottom, which use BigInteger.
+ */
+final class RegisterVM {
+
+    private RegisterVM() {}
+
+    static void run(RegisterProgram program, PrintStream out) {
+        RegisterProgram.Function main = program.functions[0];
+        execute(program, main, new Frame(main.frameSize, out));
+    }
+
+    private static void execute(RegisterProgram program, RegisterProgram.Function f, Frame frame) {
+        final int[] code = f.code;
+        final long[] k = f.longs;
+        final long[] longs = frame.longs;
+        final BigInteger[] bigs = frame.bigs;
+        final BigInteger LONG = Frame.LONG;
+        int pc = 0;
+        while (true) {
+            int a = code[pc + 1];
+            int b = code[pc + 2];
+            int c = code[pc + 3];
+            switch (code[pc]) {
+                case RET -> {
+                    if (f.resultSlot >= 0 && bigs[f.resultSlot] == null) {
+                        throw new RuntimeException(f.strings[f.unassignedResult]);
+                    }
+                    return;
+                }
+                case LCONST -> {
+                    longs[a] = k[b];
+                    bigs[a] = LONG;
+                }
+                case BCONST -> bigs[a] = f.bigs[b];
+                case MOVE -> {
+                    if (bigs[b] == null) {
+                        throw unassigned(f, pc, 0);
+                    }
+                    longs[a] = longs[b];
+                    bigs[a] = bigs[b];
+                }
+                case ADD -> {
+                    long x = longs[b];
+                    long y = longs[c];
+                    long r = x + y;
+                    if (bigs[b] == LONG && bigs[c] == LONG && ((x ^ r) & (y ^ r)) >= 0) {
+                        longs[a] = r;
+                        bigs[a] = LONG;
+                    }
+                    else {
+                        arithmetic(f, frame, pc);
+                    }
+                }
+                case SUB -> {
+                    long x = longs[b];
+                    long y = longs[c];
+                    long r = x - y;
+                    if (bigs[b] == LONG && bigs[c] == LONG && ((x ^ y) & (x ^ r)) >= 0) {
+                        longs[a] = r;
+                        bigs[a] = LONG;
+                    }
+                    else {
+                        arithmetic(f, frame, pc);
+                    }
+                }
+                case MUL -> {
+                    long x = longs[b];
+                    long y = longs[c];
+                    long r = x * y;
+                    if (bigs[b] == LONG && bigs[c] == LONG && Math.multiplyHigh(x, y) == (r >> 63)) {
+                        longs[a] = r;
+                        bigs[a] = LONG;
+                    }
+                    else {
+                        arithmetic(f, frame, pc);
+                    }
+                }
+                case NEG -> {
+                    long x = longs[b];
+                    if (bigs[b] == LONG && x != Long.MIN_VALUE) {
+                        longs[a] = -x;
+                        bigs[a] = LONG;
+                    }
+                    else {
+                        arithmetic(f, frame, pc);
+                    }
+                }
+                case ADDK -> {
+                    long x = longs[b];
+                    long y = k[c];
+                    long r = x + y;
+                    if (bigs[b] == LONG && ((x ^ r) & (y ^ r)) >= 0) {
+                        longs[a] = r;
+                        bigs[a] = LONG;
+                    }
+                    else {
+                        arithmetic(f, frame, pc);
+                    }
+                }
+                case SUBK -> {
+                    long x = longs[b];
+                    long y = k[c];
+                    long r = x - y;
+                    if (bigs[b] == LONG && ((x ^ y) & (x ^ r)) >= 0) {
+                        longs[a] = r;
+                        bigs[a] = LONG;
+                    }
+                    else {
+                        arithmetic(f, frame, pc);
+                    }
+                }
+                case MULK -> {
+                    long x = longs[b];
+                    long y = k[c];
+                    long r = x * y;
+                    if (bigs[b] == LONG && Math.multiplyHigh(x, y) == (r >> 63)) {
+                        longs[a] = r;
+                        bigs[a] = LONG;
+                    }
+                    else {
+                        arithmetic(f, frame, pc);
+                    }
+                }
+                case JMP -> {
+                    pc = a;
+                    continue;
+                }
+                case JLT, JGE, JGT, JLE, JEQ, JNE -> {
+                    int cmp = bigs[b] == LONG && bigs[c] == LONG
+                        ? Long.compare(longs[b], longs[c])
+                        : compare(f, frame, pc);
+                    boolean taken = switch (code[pc]) {
+                        case JLT -> cmp < 0;
+                        case JGE -> cmp >= 0;
+                        case JGT -> cmp > 0;
+                        case JLE -> cmp <= 0;
+                        case JEQ -> cmp == 0;
+                        default -> cmp != 0;
+                    };
+                    if (taken) {
+                        pc = a;
+                        continue;
+                    }
+                }
+                case PRINT -> {
+                    if (bigs[b] == null) {
+                        throw unassigned(f, pc, 0);
+                    }
+                    frame.out.println(f.strings[a] + ": " + frame.toString(b));
+                }
+                case CALL -> {
+                    // arguments were computed into consecutive registers, starting at c
+                    RegisterProgram.Function callee = program.functions[b];
+                    Frame calleeFrame = new Frame(callee.frameSize, frame.out);
+                    for (int i = 0; i < callee.params; i++) {
+                        calleeFrame.copy(i, frame, c + i);
+                    }
+                    execute(program, callee, calleeFrame);
+                    frame.copy(a, calleeFrame, callee.resultSlot);
+                }
+                default -> throw new IllegalStateException("Unknown opcode " + code[pc] + " at " + pc);
+            }
+            pc += WIDTH;
+        }
+    }
+
+    // =========================
+    //   SLOW PATHS
+    // =========================
+
+    private static void arithmetic(RegisterProgram.Function f, Frame frame, int pc) {
+        int op = f.code[pc];
+        BigInteger x = operand(f, frame, pc, 0);
+        BigInteger y = switch (op) {
+            case ADDK, SUBK, MULK -> BigInteger.valueOf(f.longs[f.code[pc + 3]]);
+            case NEG -> null;
+            default -> operand(f, frame, pc, 1);
+        };
+        frame.setBig(f.code[pc + 1], switch (op) {
+            case ADD, ADDK -> x.add(y);
+            case SUB, SUBK -> x.subtract(y);
+            case MUL, MULK -> x.multiply(y);
+            default -> x.negate();
+        });
+    }
+
+    private static int compare(RegisterProgram.Function f, Frame frame, int pc) {
+        return operand(f, frame, pc, 0).compareTo(operand(f, frame, pc, 1));
+    }
+
+    // operand b (0) or c (1) of the instruction at pc
+    private static BigInteger operand(RegisterProgram.Function f, Frame frame, int pc, int operand) {
+        int slot = f.code[pc + 2 + operand];
+        if (!frame.isAssigned(slot)) {
+            throw unassigned(f, pc, operand);
+        }
+        BigInteger big = frame.bigs[slot];
+        return big == Frame.LONG ? BigInteger.valueOf(frame.longs[slot]) : big;
+    }
+
+    private static RuntimeException unassigned(RegisterProgram.Function f, int pc, int operand) {
+        int message = f.reads[pc / 2 + operand];
+        if (message < 0) {
+            return new IllegalStateException("Register " + f.code[pc + 2 + operand] + " read before written at " + pc);
+        }
+        return new RuntimeException(f.strings[message]);
+    }
+}
@@ -0,0 +1,104 @@
+package interpret;
+
+import ast.*;
+import lexer.LocatedString;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Numbers the variables of the main block and of every procedure, so the interpreter can keep
+ * them in an array frame instead of looking them up by name.
+ * Each procedure has a frame of its own, starting with its parameters and then its result.
+ * Variables assigned in different branches share one slot per name, and slots are never reused.
+ * <p>
+ * The slots are kept here, by node identity, and not in the tree: every run and every compile
+ * resolves the program for itself, so concurrent ones can share one tree without writing to it.
+ */
+public final class SlotResolver extends ASTVisitor.Default {
+
+    // the slot of every assignment, call, variable read and print
+    private final Map<ASTNode, Integer> slots = new IdentityHashMap<>();
+    private final Map<ProcedureNode, Integer> frameSizes = new IdentityHashMap<>();
+    private final Map<ProcedureNode, Integer> resultSlots = new IdentityHashMap<>();
+    // slots by name in the scope being resolved; the main block's while outside of procedures
+    private Map<String, Integer> scope = new HashMap<>();
+    private final Map<String, Integer> mainScope = scope;
+
+    private SlotResolver() {}
+
+    /**
+     * Resolves a whole program.
+     */
+    public static SlotResolver resolve(ASTNode root) {
+        SlotResolver resolver = new SlotResolver();
+        root.acceptVisitor(resolver);
+        return resolver;
+    }
+
+    /**
+     * The slot of the variable an assignment or call assigns, or a variable read or print reads.
+     */
+    public int slot(ASTNode node) {
+        Integer slot = slots.get(node);
+        if (slot == null) {
+            throw new IllegalArgumentException("Node at " + node.lexeme + " was not resolved");
+        }
+        return slot;
+    }
+
+    /**
+     * The number of slots of the main block.
+     */
+    public int frameSize() {
+        return mainScope.size();
+    }
+
+    public int frameSize(ProcedureNode procedure) {
+        return frameSizes.get(procedure);
+    }
+
+    public int resultSlot(ProcedureNode procedure) {
+        return resultSlots.get(procedure);
+    }
+
+    private int slot(String name) {
+        return scope.computeIfAbsent(name, n -> scope.size());
+    }
+
+    @Override
+    public void visitEnter(ProcedureNode node) {
+        scope = new HashMap<>();
+        for (LocatedString param : node.params) {
+            slot(param.s);
+        }
+        resultSlots.put(node, slot(node.result.s));
+    }
+
+    @Override
+    public void visitExit(ProcedureNode node) {
+        frameSizes.put(node, scope.size());
+        scope = mainScope;
+    }
+
+    @Override
+    public void visitEnter(AssignmentNode node) {
+        slots.put(node, slot(node.lhs.s));
+    }
+
+    @Override
+    public void visitExit(CallNode node) {
+        slots.put(node, slot(node.lhs.s));
+    }
+
+    @Override
+    public void visit(LabelNode node) {
+        slots.put(node, slot(node.label.s));
+    }
+
+    @Override
+    public void visit(PrintNode node) {
+        slots.put(node, slot(node.variable.s));
+    }
+}
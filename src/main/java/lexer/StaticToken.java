@@ -17,10 +17,18 @@ public enum StaticToken {
 	EQUAL("=="),
 	LESSER("<"),
 	ASSIGN(":="),
+	COMMA(","),
 	IF("if"),
 	ELSE("else"),
+	WHILE("while"),
+	INVARIANT("invariant"),
 	CHECK("check"),
-	PRINT("print")
+	PRINT("print"),
+	PROC("proc"),
+	RETURNS("returns"),
+	REQUIRES("requires"),
+	ENSURES("ensures"),
+	CALL("call")
 	;
 
 	public final String lexeme;
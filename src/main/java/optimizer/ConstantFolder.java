@@ -0,0 +1,244 @@
+package optimizer;
+
+import ast.*;
+import lexer.LocatedString;
+
+import java.math.BigInteger;
+import java.util.Map;
+import java.util.Set;
+
+// Simplifies expressions bottom-up: variables with a known constant value are replaced by it,
+// operations on constants are folded with BigInteger arithmetic, so they mean the same as in the
+// interpreter and the integer encoding, and e + 0, e * 1, e * 0, e - e and - - e are simplified.
+// Rewritten expressions reuse the nodes they came from where they can.
+// Dropping an operand is only done when every variable it reads is definitely assigned, so no
+// "used before assigned" error goes missing. Literals are never negative, as the parser makes
+// them; a negative result is the negation of a literal.
+class ConstantFolder {
+	// variables with the same constant value on every path reaching the expression
+	Map<String, BigInteger> constants;
+	// variables assigned on every path reaching the expression
+	Set<String> assigned;
+	int propagated;
+	int folded;
+	int simplified;
+
+	ConstantFolder() {
+		this.propagated = 0;
+		this.folded = 0;
+		this.simplified = 0;
+	}
+
+	ASTNode simplify(ASTNode node) {
+		if (node instanceof IntConstantNode) {
+			return node;
+		}
+		if (node instanceof LabelNode label) {
+			BigInteger value = this.constants.get(label.label.s);
+			if (value == null) {
+				return node;
+			}
+			this.propagated += 1;
+			return constant(value, label.lexeme);
+		}
+		if (node instanceof IntOperatorNode op) {
+			return simplifyOperator(op);
+		}
+		throw new IllegalStateException("Expected integer expression, got " + node.getClass());
+	}
+
+	private ASTNode simplifyOperator(IntOperatorNode node) {
+		node.left = simplify(node.left);
+		if (node.right != null) {
+			node.right = simplify(node.right);
+		}
+		BigInteger left = valueOf(node.left);
+		BigInteger right = node.right == null ? null : valueOf(node.right);
+		if (node.op == IntOperatorNode.Operator.NEGATE) {
+			if (left != null) {
+				// already a negative literal, or the negation of one that folds to a literal
+				if (left.signum() > 0 && node.left instanceof IntConstantNode) {
+					return node;
+				}
+				this.folded += 1;
+				return constant(left.negate(), node.lexeme);
+			}
+			if (isNegation(node.left)) {
+				this.simplified += 1;
+				return ((IntOperatorNode) node.left).left;
+			}
+			return node;
+		}
+		if (left != null && right != null) {
+			this.folded += 1;
+			return constant(switch (node.op) {
+				case ADD -> left.add(right);
+				case SUB -> left.subtract(right);
+				default -> left.multiply(right);
+			}, node.lexeme);
+		}
+		switch (node.op) {
+			case ADD -> {
+				if (isValue(left, 0)) {
+					return simplified(node.right);
+				}
+				if (isValue(right, 0)) {
+					return simplified(node.left);
+				}
+			}
+			case SUB -> {
+				if (isValue(right, 0)) {
+					return simplified(node.left);
+				}
+				if (isValue(left, 0)) {
+					return simplified(negate(node.right, node.lexeme));
+				}
+				if (equal(node.left, node.right) && isSafe(node.left)) {
+					return simplified(constant(BigInteger.ZERO, node.lexeme));
+				}
+			}
+			default -> {
+				if (isValue(left, 1)) {
+					return simplified(node.right);
+				}
+				if (isValue(right, 1)) {
+					return simplified(node.left);
+				}
+				if (isValue(left, -1)) {
+					return simplified(negate(node.right, node.lexeme));
+				}
+				if (isValue(right, -1)) {
+					return simplified(negate(node.left, node.lexeme));
+				}
+				if (isValue(left, 0) && isSafe(node.right) || isValue(right, 0) && isSafe(node.left)) {
+					return simplified(constant(BigInteger.ZERO, node.lexeme));
+				}
+			}
+		}
+		return node;
+	}
+
+	private ASTNode simplified(ASTNode node) {
+		this.simplified += 1;
+		return node;
+	}
+
+	// simplifies both sides of every comparison; an AND or OR whose left operand is a known
+	// constant that does not decide it becomes its right operand
+	ASTNode simplifyBool(ASTNode node) {
+		if (node instanceof BoolCompareNode cmp) {
+			cmp.left = simplify(cmp.left);
+			cmp.right = simplify(cmp.right);
+			return node;
+		}
+		if (node instanceof BoolOperatorNode op) {
+			op.left = simplifyBool(op.left);
+			if (op.op == BoolOperatorNode.Operator.NOT) {
+				return node;
+			}
+			op.right = simplifyBool(op.right);
+			Boolean left = evaluate(op.left);
+			if (left != null && left == (op.op == BoolOperatorNode.Operator.AND)) {
+				this.simplified += 1;
+				return op.right;
+			}
+			return node;
+		}
+		throw new IllegalStateException("Expected boolean expression, got " + node.getClass());
+	}
+
+	// the value of a condition if it is known without running the program, or null.
+	// Follows the interpreter's short-circuit evaluation: a known left operand can decide
+	// AND and OR without looking at the right.
+	static Boolean evaluate(ASTNode node) {
+		if (node instanceof BoolCompareNode cmp) {
+			BigInteger left = valueOf(cmp.left);
+			BigInteger right = valueOf(cmp.right);
+			if (left == null || right == null) {
+				return null;
+			}
+			int c = left.compareTo(right);
+			return switch (cmp.cmp) {
+				case LESSER -> c < 0;
+				case GREATER -> c > 0;
+				case EQUAL -> c == 0;
+			};
+		}
+		if (node instanceof BoolOperatorNode op) {
+			Boolean left = evaluate(op.left);
+			if (op.op == BoolOperatorNode.Operator.NOT) {
+				return left == null ? null : !left;
+			}
+			boolean and = op.op == BoolOperatorNode.Operator.AND;
+			if (left == null) {
+				return null;
+			}
+			if (left != and) {
+				// false for AND, true for OR
+				return left;
+			}
+			return evaluate(op.right);
+		}
+		throw new IllegalStateException("Expected boolean expression, got " + node.getClass());
+	}
+
+	// the value of a literal or a negated literal, or null
+	static BigInteger valueOf(ASTNode node) {
+		if (node instanceof IntConstantNode constant) {
+			return constant.value;
+		}
+		if (isNegation(node) && ((IntOperatorNode) node).left instanceof IntConstantNode constant) {
+			return constant.value.negate();
+		}
+		return null;
+	}
+
+	private static boolean isNegation(ASTNode node) {
+		return node instanceof IntOperatorNode op && op.op == IntOperatorNode.Operator.NEGATE;
+	}
+
+	private static boolean isValue(BigInteger value, long expected) {
+		return value != null && value.equals(BigInteger.valueOf(expected));
+	}
+
+	static ASTNode constant(BigInteger value, LocatedString at) {
+		IntConstantNode literal = new IntConstantNode(new LocatedString(value.abs().toString(), at.line, at.col));
+		if (value.signum() >= 0) {
+			return literal;
+		}
+		return negate(literal, at);
+	}
+
+	private static ASTNode negate(ASTNode node, LocatedString at) {
+		if (isNegation(node)) {
+			return ((IntOperatorNode) node).left;
+		}
+		return new IntOperatorNode(new LocatedString("-", at.line, at.col), IntOperatorNode.Operator.NEGATE, node, null);
+	}
+
+	// whether evaluating the expression cannot fail because a variable is unassigned
+	boolean isSafe(ASTNode node) {
+		if (node instanceof LabelNode label) {
+			return this.assigned.contains(label.label.s);
+		}
+		if (node instanceof IntOperatorNode op) {
+			return isSafe(op.left) && (op.right == null || isSafe(op.right));
+		}
+		return true;
+	}
+
+	// structural equality of integer expressions
+	static boolean equal(ASTNode a, ASTNode b) {
+		if (a instanceof IntConstantNode x && b instanceof IntConstantNode y) {
+			return x.value.equals(y.value);
+		}
+		if (a instanceof LabelNode x && b instanceof LabelNode y) {
+			return x.label.s.equals(y.label.s);
+		}
+		if (a instanceof IntOperatorNode x && b instanceof IntOperatorNode y) {
+			return x.op == y.op && equal(x.left, y.left)
+				&& (x.right == null ? y.right == null : y.right != null && equal(x.right, y.right));
+		}
+		return false;
+	}
+}
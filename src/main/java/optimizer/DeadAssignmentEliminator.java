@@ -0,0 +1,99 @@
+package optimizer;
+
+import ast.*;
+
+import java.util.*;
+
+// Removes assignments whose value is never read: walking each block backwards, a variable is live
+// if a later print, check, condition, invariant, call argument or assignment may read it before it
+// is assigned again. The result of a procedure, its parameters and what its postcondition reads
+// are live at its end. Any variable read anywhere in a loop is live throughout the loop, since
+// the next iteration may read it.
+// Calls are always kept, since the procedure may print. An assignment is only removed if the
+// forward pass marked it safe, i.e. evaluating its right-hand side cannot fail.
+class DeadAssignmentEliminator {
+	private final Set<AssignmentNode> safe;
+	int removed;
+
+	DeadAssignmentEliminator(Set<AssignmentNode> safe) {
+		this.safe = safe;
+		this.removed = 0;
+	}
+
+	void eliminate(BlockNode block, Set<String> liveAfter) {
+		statements(block, new HashSet<>(liveAfter));
+	}
+
+	// returns the variables live before the block
+	private Set<String> statements(BlockNode block, Set<String> live) {
+		List<ASTNode> kept = new ArrayList<>();
+		ListIterator<ASTNode> it = block.children.listIterator(block.children.size());
+		while (it.hasPrevious()) {
+			ASTNode statement = it.previous();
+			if (statement instanceof AssignmentNode assignment) {
+				if (!live.contains(assignment.lhs.s) && this.safe.contains(assignment)) {
+					this.removed += 1;
+					continue;
+				}
+				live.remove(assignment.lhs.s);
+				reads(assignment.rhs, live);
+			}
+			else if (statement instanceof CallNode call) {
+				live.remove(call.lhs.s);
+				for (ASTNode arg : call.args) {
+					reads(arg, live);
+				}
+			}
+			else if (statement instanceof PrintNode print) {
+				live.add(print.variable.s);
+			}
+			else if (statement instanceof CheckNode check) {
+				reads(check.expr, live);
+			}
+			else if (statement instanceof IfNode node) {
+				Set<String> liveThen = statements(node.branchThen, new HashSet<>(live));
+				Set<String> liveElse = statements(node.branchElse, new HashSet<>(live));
+				live = liveThen;
+				live.addAll(liveElse);
+				reads(node.cond, live);
+			}
+			else if (statement instanceof WhileNode node) {
+				live.addAll(readsIn(node));
+				statements(node.body, new HashSet<>(live));
+			}
+			else {
+				throw new IllegalStateException("Unexpected statement node type: " + statement.getClass());
+			}
+			kept.add(statement);
+		}
+		Collections.reverse(kept);
+		block.children = kept;
+		return live;
+	}
+
+	// every variable read by the loop's condition, invariant or body
+	private static Set<String> readsIn(WhileNode loop) {
+		Set<String> reads = new HashSet<>();
+		loop.acceptVisitor(new ASTVisitor.Default() {
+			@Override
+			public void visit(LabelNode node) {
+				reads.add(node.label.s);
+			}
+
+			@Override
+			public void visit(PrintNode node) {
+				reads.add(node.variable.s);
+			}
+		});
+		return reads;
+	}
+
+	static void reads(ASTNode expr, Set<String> out) {
+		expr.acceptVisitor(new ASTVisitor.Default() {
+			@Override
+			public void visit(LabelNode node) {
+				out.add(node.label.s);
+			}
+		});
+	}
+}
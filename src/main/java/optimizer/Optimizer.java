@@ -0,0 +1,289 @@
+package optimizer;
+
+import ast.*;
+import lexer.LocatedString;
+
+import java.math.BigInteger;
+import java.util.*;
+
+// Rewrites a verified program so that running it does less work, without changing what it prints
+// or which errors it reports. The solver always checks the program as written; only the program
+// that is run is rewritten.
+// A forward pass over every block folds and simplifies expressions with ConstantFolder,
+// propagating the constants that hold on every path. An if statement whose condition is decided by
+// constants is replaced by the branch that is taken, and a check that constants prove is removed.
+// Loops are kept, since their invariant must still be checked on entry; variables a loop assigns
+// are not constant inside it or after it. An expression that appears more than once in one
+// assignment or call is computed once into a fresh variable just before it.
+// A backward pass with DeadAssignmentEliminator then removes assignments that are never read.
+// Procedures are optimized on their own, knowing nothing about their parameters; their contracts
+// are left as they are.
+// The rewriting is in the AST itself and uses unbounded integers, as every executor does, so it
+// must run after verification and before the program is compiled or run.
+public class Optimizer {
+	// fresh variables cannot collide with the program's, since identifiers are letters and digits
+	static final String TEMP_PREFIX = "$cse";
+
+	ConstantFolder folder;
+	// assignments whose right-hand side only reads definitely assigned variables
+	Set<AssignmentNode> safe;
+	int decidedIfs;
+	int removedChecks;
+	int sharedExpressions;
+	int temps;
+	DeadAssignmentEliminator eliminator;
+
+	public Optimizer() {
+		this.folder = new ConstantFolder();
+		this.safe = Collections.newSetFromMap(new IdentityHashMap<>());
+		this.eliminator = new DeadAssignmentEliminator(this.safe);
+		this.decidedIfs = 0;
+		this.removedChecks = 0;
+		this.sharedExpressions = 0;
+		this.temps = 0;
+	}
+
+	// variables replaced by their constant value
+	public int getPropagated() {
+		return this.folder.propagated;
+	}
+
+	// operations on constants replaced by their result
+	public int getFolded() {
+		return this.folder.folded;
+	}
+
+	// operations removed by algebraic identities
+	public int getSimplified() {
+		return this.folder.simplified;
+	}
+
+	public int getDecidedIfs() {
+		return this.decidedIfs;
+	}
+
+	public int getRemovedChecks() {
+		return this.removedChecks;
+	}
+
+	// repeated subexpressions computed once into a fresh variable
+	public int getSharedExpressions() {
+		return this.sharedExpressions;
+	}
+
+	public int getRemovedAssignments() {
+		return this.eliminator.removed;
+	}
+
+	// rewrites the program in place and returns it
+	public ASTNode optimize(ASTNode root) {
+		if (!(root instanceof BlockNode)) {
+			throw new IllegalArgumentException("Program root must be a BlockNode");
+		}
+		if (root instanceof ProgramNode program) {
+			for (ProcedureNode procedure : program.procedures) {
+				optimizeProcedure(procedure);
+			}
+		}
+		optimizeBody((BlockNode) root, new HashSet<>(), new HashSet<>());
+		return root;
+	}
+
+	private void optimizeProcedure(ProcedureNode procedure) {
+		Set<String> params = new HashSet<>();
+		for (LocatedString param : procedure.params) {
+			params.add(param.s);
+		}
+		// the postcondition reads the parameters and the result after the body
+		Set<String> liveAfter = new HashSet<>(params);
+		liveAfter.add(procedure.result.s);
+		if (procedure.ensures != null) {
+			DeadAssignmentEliminator.reads(procedure.ensures, liveAfter);
+		}
+		optimizeBody(procedure.body, params, liveAfter);
+	}
+
+	private void optimizeBody(BlockNode body, Set<String> assigned, Set<String> liveAfter) {
+		this.folder.constants = new HashMap<>();
+		this.folder.assigned = assigned;
+		body.children = statements(body.children);
+		this.eliminator.eliminate(body, liveAfter);
+	}
+
+	// =========================
+	//   FORWARD PASS
+	// =========================
+
+	private List<ASTNode> statements(List<ASTNode> statements) {
+		List<ASTNode> out = new ArrayList<>();
+		for (ASTNode statement : statements) {
+			statement(statement, out);
+		}
+		return out;
+	}
+
+	// appends the rewritten statement to out
+	private void statement(ASTNode statement, List<ASTNode> out) {
+		if (statement instanceof AssignmentNode assignment) {
+			assignment.rhs = share(List.of(this.folder.simplify(assignment.rhs)), assignment.lexeme, out).get(0);
+			if (this.folder.isSafe(assignment.rhs)) {
+				this.safe.add(assignment);
+			}
+			BigInteger value = ConstantFolder.valueOf(assignment.rhs);
+			if (value != null) {
+				this.folder.constants.put(assignment.lhs.s, value);
+			}
+			else {
+				this.folder.constants.remove(assignment.lhs.s);
+			}
+			this.folder.assigned.add(assignment.lhs.s);
+			out.add(assignment);
+		}
+		else if (statement instanceof CallNode call) {
+			List<ASTNode> args = new ArrayList<>();
+			for (ASTNode arg : call.args) {
+				args.add(this.folder.simplify(arg));
+			}
+			call.args = share(args, call.lexeme, out);
+			this.folder.constants.remove(call.lhs.s);
+			this.folder.assigned.add(call.lhs.s);
+			out.add(call);
+		}
+		else if (statement instanceof CheckNode check) {
+			check.expr = this.folder.simplifyBool(check.expr);
+			if (ConstantFolder.evaluate(check.expr) == Boolean.TRUE) {
+				this.removedChecks += 1;
+				return;
+			}
+			out.add(check);
+		}
+		else if (statement instanceof IfNode node) {
+			optimizeIf(node, out);
+		}
+		else if (statement instanceof WhileNode node) {
+			optimizeWhile(node, out);
+		}
+		else if (statement instanceof PrintNode) {
+			out.add(statement);
+		}
+		else {
+			throw new IllegalStateException("Unexpected statement node type: " + statement.getClass());
+		}
+	}
+
+	private void optimizeIf(IfNode node, List<ASTNode> out) {
+		node.cond = this.folder.simplifyBool(node.cond);
+		Boolean decided = ConstantFolder.evaluate(node.cond);
+		if (decided != null) {
+			this.decidedIfs += 1;
+			for (ASTNode statement : decided ? node.branchThen.children : node.branchElse.children) {
+				statement(statement, out);
+			}
+			return;
+		}
+		Map<String, BigInteger> constants = new HashMap<>(this.folder.constants);
+		Set<String> assigned = new HashSet<>(this.folder.assigned);
+		node.branchThen.children = statements(node.branchThen.children);
+		Map<String, BigInteger> constantsThen = this.folder.constants;
+		Set<String> assignedThen = this.folder.assigned;
+		this.folder.constants = constants;
+		this.folder.assigned = assigned;
+		node.branchElse.children = statements(node.branchElse.children);
+		// what holds after the if holds after both branches
+		this.folder.constants.entrySet().removeIf(e -> !e.getValue().equals(constantsThen.get(e.getKey())));
+		this.folder.assigned.retainAll(assignedThen);
+		out.add(node);
+	}
+
+	private void optimizeWhile(WhileNode node, List<ASTNode> out) {
+		Set<String> modified = new HashSet<>();
+		node.body.acceptVisitor(new ASTVisitor.Default() {
+			@Override
+			public void visitEnter(AssignmentNode assignment) {
+				modified.add(assignment.lhs.s);
+			}
+
+			@Override
+			public void visitEnter(CallNode call) {
+				modified.add(call.lhs.s);
+			}
+		});
+		this.folder.constants.keySet().removeAll(modified);
+		node.cond = this.folder.simplifyBool(node.cond);
+		node.invariant = this.folder.simplifyBool(node.invariant);
+		// the body may run any number of times, including none
+		Set<String> assigned = new HashSet<>(this.folder.assigned);
+		node.body.children = statements(node.body.children);
+		this.folder.constants.keySet().removeAll(modified);
+		this.folder.assigned = assigned;
+		out.add(node);
+	}
+
+	// =========================
+	//   COMMON SUBEXPRESSIONS
+	// =========================
+
+	// returns the expressions of one statement with every operation that appears in them more than
+	// once replaced by a fresh variable, assigned in out before the statement. Only operations whose
+	// evaluation cannot fail are moved, so the statement fails exactly as it would have.
+	private List<ASTNode> share(List<ASTNode> exprs, LocatedString at, List<ASTNode> out) {
+		Map<String, Integer> counts = new HashMap<>();
+		for (ASTNode expr : exprs) {
+			count(expr, counts);
+		}
+		Map<String, LocatedString> temps = new HashMap<>();
+		List<ASTNode> shared = new ArrayList<>();
+		for (ASTNode expr : exprs) {
+			shared.add(replace(expr, counts, temps, at, out));
+		}
+		return shared;
+	}
+
+	// keys every operation by its printed form
+	private static String count(ASTNode expr, Map<String, Integer> counts) {
+		if (expr instanceof IntConstantNode constant) {
+			return constant.value.toString();
+		}
+		if (expr instanceof LabelNode label) {
+			return label.label.s;
+		}
+		IntOperatorNode op = (IntOperatorNode) expr;
+		String key = op.right == null
+			? "(- " + count(op.left, counts) + ")"
+			: "(" + op.op + " " + count(op.left, counts) + " " + count(op.right, counts) + ")";
+		// negated literals are values, not operations
+		if (ConstantFolder.valueOf(op) == null) {
+			counts.merge(key, 1, Integer::sum);
+		}
+		return key;
+	}
+
+	private ASTNode replace(ASTNode expr, Map<String, Integer> counts, Map<String, LocatedString> temps,
+			LocatedString at, List<ASTNode> out) {
+		if (!(expr instanceof IntOperatorNode op)) {
+			return expr;
+		}
+		String key = count(op, new HashMap<>());
+		if (counts.getOrDefault(key, 0) > 1 && this.folder.isSafe(op)) {
+			LocatedString temp = temps.get(key);
+			if (temp == null) {
+				// the largest repeated operations are shared first, so this one's operands are left as they are
+				temp = new LocatedString(TEMP_PREFIX + ++this.temps, op.lexeme.line, op.lexeme.col);
+				AssignmentNode assignment = new AssignmentNode(at, temp, op);
+				this.safe.add(assignment);
+				this.folder.assigned.add(temp.s);
+				out.add(assignment);
+				temps.put(key, temp);
+			}
+			else {
+				this.sharedExpressions += 1;
+			}
+			return new LabelNode(temp);
+		}
+		op.left = replace(op.left, counts, temps, at, out);
+		if (op.right != null) {
+			op.right = replace(op.right, counts, temps, at, out);
+		}
+		return op;
+	}
+}
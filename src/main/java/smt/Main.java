@@ -1,50 +1,398 @@
 package smt;
 
 import ast.*;
+import interpret.Budget;
+import interpret.BudgetExceededException;
+import interpret.BytecodeCompiler;
+import interpret.ClosureCompiler;
 import interpret.Interpreter;
+import interpret.Program;
+import interpret.ProgramRunner;
+import interpret.RegisterCompiler;
+import interpret.RegisterProgram;
 import lexer.*;
+import optimizer.Optimizer;
 import usage.UsageVisitor;
+import verifier.CheckResult;
+import verifier.DeadCodeEliminator;
+import verifier.ForwardVerifier;
+import verifier.IncrementalVerifier;
+import verifier.SymbolicExecutor;
+import verifier.Verdict;
+import verifier.VerificationReport;
+import verifier.VerificationConfig;
 import verifier.VerificationVisitor;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
 public class Main {
 
     public static void main(String[] args) {
-        if (args.length < 1) {
-            System.out.println("Usage: verif-comp.jar <input file>");
+        VerificationConfig config = new VerificationConfig();
+        String filename = null;
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                try {
+                    if (!config.parseFlag(arg)) {
+                        System.out.println("Unknown option: " + arg);
+                        printUsage();
+                        return;
+                    }
+                } catch (IllegalArgumentException e) {
+                    System.out.println(e.getMessage());
+                    return;
+                }
+            }
+            else {
+                filename = arg;
+            }
+        }
+        if (filename == null) {
+            printUsage();
+            return;
+        }
+        try {
+            config.validate();
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+
+        if (filename.endsWith(".rbc")) {
+            runEmitted(filename);
             return;
         }
 
-        String filename = args[0];
+        if (config.watch) {
+            watch(filename, config);
+            return;
+        }
+
+        try {
+            run(filename, config);
+        } finally {
+            writeReport(config);
+        }
+    }
+
+    private static void run(String filename, VerificationConfig config) {
+        VerificationReport report = config.getReport();
+        long begin = System.nanoTime();
+        if (config.engine == VerificationConfig.Engine.SP) {
+            boolean verified = streamVerify(filename, config);
+            phase(report, "stream", begin);
+            if (!verified) {
+                return;
+            }
+        }
 
+        begin = System.nanoTime();
         Lexer lexer;
         try {
             lexer = Lexer.make(filename);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        phase(report, "lex", begin);
 
+        begin = System.nanoTime();
         Parser parser = new Parser(lexer);
         ASTNode root = parser.parseProgram();
+        phase(report, "parse", begin);
         if (!lexer.dumpLogs() || root == null) {
             return;
         }
 
+        begin = System.nanoTime();
         UsageVisitor usageVisitor = new UsageVisitor();
         root.acceptVisitor(usageVisitor);
+        phase(report, "usage", begin);
         if (!usageVisitor.isUsageOk()) {
             return;
         }
+        if (!checkSupported(root, config)) {
+            return;
+        }
 
-        VerificationVisitor verificationVisitor = new VerificationVisitor();
-        root.acceptVisitor(verificationVisitor);
-        if (!verificationVisitor.verifyCondition()) {
-            System.out.println("Could not verify program: " + filename);
+        if (config.engine == VerificationConfig.Engine.WP) {
+            Verdict verdict;
+            VerificationVisitor verificationVisitor = config.makeVisitor();
+            try (config) {
+                begin = System.nanoTime();
+                root.acceptVisitor(verificationVisitor);
+                phase(report, "vcgen", begin);
+                begin = System.nanoTime();
+                verdict = verificationVisitor.verify();
+                phase(report, "solve", begin);
+            }
+            if (verdict != Verdict.VALID) {
+                for (String term : verificationVisitor.getNonlinearTerms()) {
+                    System.out.println("Nonlinear term: " + term);
+                }
+            }
+            if (verdict == Verdict.UNKNOWN) {
+                System.out.println("Solver gave up verifying program: " + filename);
+                return;
+            }
+            if (verdict != Verdict.VALID) {
+                System.out.println("Could not verify program: " + filename);
+                return;
+            }
+        }
+
+        if (config.engine == VerificationConfig.Engine.SYMBOLIC) {
+            begin = System.nanoTime();
+            try (SymbolicExecutor executor = new SymbolicExecutor(config)) {
+                executor.run(root);
+                phase(report, "symbolic", begin);
+                if (!reportVerdict(filename, executor.verify(), executor.getResults())) {
+                    return;
+                }
+            }
+        }
+
+        if (config.prune) {
+            begin = System.nanoTime();
+            root = new DeadCodeEliminator(config).optimize(root);
+            phase(report, "prune", begin);
+        }
+
+        // only the program as written is verified; the rewritten one is only run
+        if (config.optimize) {
+            optimize(root, report);
+        }
+
+        if (config.emitPath != null) {
+            emit(root, config.emitPath);
+        }
+
+        begin = System.nanoTime();
+        if (config.hasBudget()) {
+            runWithBudget(root, config);
+            phase(report, "interpret", begin);
+            return;
+        }
+        if (config.runs > 1) {
+            runConcurrently(root, config);
+            phase(report, "interpret", begin);
+            return;
+        }
+        switch (config.executor) {
+            case TREE -> new Interpreter().run(root);
+            case PARALLEL -> new Interpreter(ForkJoinPool.commonPool()).run(root);
+            case CLOSURE -> ClosureCompiler.compile(root).run();
+            case BYTECODE -> compileBytecode(root).run();
+            case VM -> RegisterCompiler.compile(root).run();
+        }
+        phase(report, "interpret", begin);
+    }
+
+    // the tree walker keeps its variables in the interpreter, so it cannot share one program
+    // between runs; it is compiled to executor objects instead, also when parallel, since the
+    // runs already keep the threads busy
+    private static void runConcurrently(ASTNode root, VerificationConfig config) {
+        Program program = switch (config.executor) {
+            case TREE, PARALLEL, CLOSURE -> ClosureCompiler.compile(root);
+            case BYTECODE -> compileBytecode(root);
+            case VM -> RegisterCompiler.compile(root);
+        };
+        int threads = Math.min(config.runs, Runtime.getRuntime().availableProcessors());
+        long begin = System.nanoTime();
+        List<ProgramRunner.Run> runs;
+        try (ProgramRunner runner = new ProgramRunner(threads)) {
+            runs = runner.runAll(program, config.runs);
+        }
+        long ms = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+        // the program is deterministic, so every run printed the same
+        ProgramRunner.Run first = runs.get(0);
+        System.out.print(first.output);
+        if (first.error != null) {
+            throw first.error;
+        }
+        System.out.println("Ran " + config.runs + " times on " + threads + " threads in " + ms + "ms");
+    }
+
+    // only the tree walker checks a budget; a run that exceeds it is reported, not thrown
+    private static void runWithBudget(ASTNode root, VerificationConfig config) {
+        Budget budget = new Budget(config.maxStatements, config.maxBits, config.deadlineMs);
+        ForkJoinPool pool = config.executor == VerificationConfig.Executor.PARALLEL ? ForkJoinPool.commonPool() : null;
+        try {
+            new Interpreter(pool, budget, null).run(root);
+        } catch (BudgetExceededException e) {
+            System.out.println("Stopped: " + e.getMessage());
+        }
+    }
+
+    private static void optimize(ASTNode root, VerificationReport report) {
+        long begin = System.nanoTime();
+        new Optimizer().optimize(root);
+        phase(report, "optimize", begin);
+    }
+
+    private static void emit(ASTNode root, String path) {
+        try (OutputStream out = Files.newOutputStream(Path.of(path))) {
+            RegisterCompiler.compile(root).write(out);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // a program written by --emit was verified before it was compiled
+    private static void runEmitted(String filename) {
+        RegisterProgram program;
+        try (InputStream in = Files.newInputStream(Path.of(filename))) {
+            program = RegisterProgram.read(in);
+        } catch (IOException e) {
+            System.out.println("Could not load compiled program " + filename + ": " + e.getMessage());
+            return;
+        }
+        program.run();
+    }
+
+    // a program too large for a class file still runs, compiled to executor objects instead; the
+    // notice goes to stderr so it does not mix with the program's output
+    private static Program compileBytecode(ASTNode root) {
+        try {
+            return BytecodeCompiler.compile(root);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage() + "; running it with --executor=closure");
+            return ClosureCompiler.compile(root);
+        }
+    }
+
+    private static void phase(VerificationReport report, String name, long begin) {
+        if (report != null) {
+            report.phase(name, System.nanoTime() - begin);
+        }
+    }
+
+    // a report is written even if verification failed, since that is when it is most useful
+    private static void writeReport(VerificationConfig config) {
+        VerificationReport report = config.getReport();
+        if (report == null) {
+            return;
+        }
+        String text = config.reportPath.endsWith(".csv") ? report.toCsv() : report.toJson();
+        try {
+            Files.writeString(Path.of(config.reportPath), text);
+        } catch (IOException e) {
+            System.out.println("Could not write report: " + e.getMessage());
+        }
+    }
+
+    // verifies the program while it is being parsed, without building the tree
+    private static boolean streamVerify(String filename, VerificationConfig config) {
+        Lexer lexer;
+        try {
+            lexer = Lexer.make(filename);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        try (ForwardVerifier verifier = new ForwardVerifier(config)) {
+            boolean parsed = new Parser(lexer).streamProgram(verifier);
+            if (!lexer.dumpLogs() || !parsed) {
+                return false;
+            }
+            return reportVerdict(filename, verifier.verify(), verifier.getResults());
+        }
+    }
+
+    // re-verifies the program every time the file changes, until the process is stopped.
+    // The program is not run.
+    private static void watch(String filename, VerificationConfig config) {
+        Path path = Path.of(filename);
+        FileTime verified = null;
+        try (IncrementalVerifier verifier = new IncrementalVerifier(config)) {
+            while (true) {
+                FileTime modified = Files.getLastModifiedTime(path);
+                if (!modified.equals(verified)) {
+                    verified = modified;
+                    watchStep(filename, config, verifier);
+                    writeReport(config);
+                }
+                Thread.sleep(200);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void watchStep(String filename, VerificationConfig config, IncrementalVerifier verifier) throws IOException {
+        final long begin = System.nanoTime();
+        Lexer lexer = Lexer.make(filename);
+        ASTNode root = new Parser(lexer).parseProgram();
+        if (!lexer.dumpLogs() || root == null) {
+            return;
+        }
+        UsageVisitor usageVisitor = new UsageVisitor();
+        root.acceptVisitor(usageVisitor);
+        if (!usageVisitor.isUsageOk()) {
+            return;
+        }
+        if (!checkSupported(root, config)) {
             return;
         }
+        verifier.run(root);
+        if (reportVerdict(filename, verifier.verify(), verifier.getResults())) {
+            System.out.println("Verified program: " + filename);
+        }
+        System.out.println("Solved " + verifier.getSolved() + " checks, reused " + verifier.getReused()
+            + " in " + (System.nanoTime() - begin) / 1000000 + "ms");
+    }
+
+    // procedures and loops are verified through their contracts and invariants by the integer
+    // weakest precondition visitor only
+    private static boolean checkSupported(ASTNode root, VerificationConfig config) {
+        boolean[] loops = {false};
+        root.acceptVisitor(new ASTVisitor.Default() {
+            @Override
+            public void visitEnter(WhileNode node) {
+                loops[0] = true;
+            }
+        });
+        boolean procedures = root instanceof ProgramNode program && !program.procedures.isEmpty();
+        if (!procedures && !loops[0]) {
+            return true;
+        }
+        if (config.engine == VerificationConfig.Engine.WP && config.encoding == VerificationConfig.Encoding.INTEGER
+            && !config.textVC && !config.watch) {
+            return true;
+        }
+        System.out.println("Procedures and while loops are only supported with --engine=wp, --encoding=int and --vcgen=api, without --watch");
+        return false;
+    }
+
+    // prints the checks that did not verify; returns whether the program verified
+    private static boolean reportVerdict(String filename, Verdict verdict, List<CheckResult> results) {
+        if (verdict == Verdict.VALID) {
+            return true;
+        }
+        for (CheckResult result : results) {
+            if (result.verdict != Verdict.VALID) {
+                System.out.println(result);
+            }
+        }
+        if (verdict == Verdict.UNKNOWN) {
+            System.out.println("Solver gave up verifying program: " + filename);
+        }
+        else {
+            System.out.println("Could not verify program: " + filename);
+        }
+        return false;
+    }
 
-        Interpreter interpreter = new Interpreter();
-        interpreter.run(root);
+    private static void printUsage() {
+        System.out.println("Usage: verif-comp.jar [options] <input file>");
+        System.out.println(VerificationConfig.usage());
     }
 }
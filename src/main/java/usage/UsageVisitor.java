@@ -10,12 +10,15 @@ public class UsageVisitor extends ASTVisitor.Default {
 	List<Set<String>> declaredVariables;
 	Stack<Set<String>> branchVariables;
 	Set<LocatedString> invalidVariables;
+	// parameters of the procedure being visited; they cannot be assigned
+	Set<String> params;
 	Logger logger;
 
 	public UsageVisitor() {
 		this.declaredVariables = new ArrayList<>();
 		this.branchVariables = new Stack<>();
 		this.invalidVariables = new HashSet<>();
+		this.params = new HashSet<>();
 		this.logger = new Logger(LogLevel.DEBUG);
 	}
 
@@ -57,8 +60,56 @@ public class UsageVisitor extends ASTVisitor.Default {
 		this.declaredVariables.get(this.declaredVariables.size() - 1).addAll(scope1);
 	}
 
+	@Override
+	public void visitExit(WhileNode node) {
+		// the body may not run at all, so nothing it assigns is declared afterwards
+		this.branchVariables.pop();
+	}
+
+	@Override
+	public void visitEnter(ProcedureNode node) {
+		// a procedure only sees its parameters
+		Set<String> scope = new HashSet<>();
+		for (LocatedString param : node.params) {
+			scope.add(param.s);
+		}
+		this.params = new HashSet<>(scope);
+		this.declaredVariables.add(scope);
+		if (node.requires != null) {
+			node.requires.acceptVisitor(this);
+		}
+	}
+
+	@Override
+	public void visitExit(ProcedureNode node) {
+		this.declaredVariables.get(this.declaredVariables.size() - 1).addAll(this.branchVariables.pop());
+		if (!this.isDeclared(node.result)) {
+			logger.log(LogLevel.SEVERE, "Result " + node.result + " of procedure " + node.name.s + " is not assigned on every path.");
+			addDeclared(node.result);
+		}
+		if (node.ensures != null) {
+			node.ensures.acceptVisitor(this);
+		}
+		this.declaredVariables.remove(this.declaredVariables.size() - 1);
+		this.params = new HashSet<>();
+	}
+
+	private void checkAssignable(LocatedString var) {
+		if (this.params.contains(var.s)) {
+			logger.log(LogLevel.SEVERE, "Parameter " + var + " cannot be assigned.");
+			invalidVariables.add(var);
+		}
+	}
+
 	@Override
 	public void visitExit(AssignmentNode node) {
+		checkAssignable(node.lhs);
+		addDeclared(node.lhs);
+	}
+
+	@Override
+	public void visitExit(CallNode node) {
+		checkAssignable(node.lhs);
 		addDeclared(node.lhs);
 	}
 
@@ -0,0 +1,223 @@
+package verifier;
+
+import ast.*;
+import com.microsoft.z3.*;
+
+import java.math.BigInteger;
+import java.util.*;
+
+// Weakest precondition visitor that models every variable as a 64-bit two's complement bit-vector.
+// The interpreter computes with unbounded integers, so with overflow checks enabled every
+// evaluated arithmetic operation must also be proven not to wrap around. A program that verifies
+// then has the same values under both semantics.
+// The int-specific visits deliberately do not call into VerificationVisitor, which builds IntExprs.
+public class BitVectorVerificationVisitor extends VerificationVisitor {
+	public static final int WIDTH = 64;
+
+	Map<String, BitVecExpr> bvVars;
+	Stack<BitVecExpr> bvExprTree;
+	// overflow conditions of the expressions on bvExprTree and boolExprTree, kept in step with them
+	Stack<BoolExpr> intSafe;
+	Stack<BoolExpr> boolSafe;
+
+	public BitVectorVerificationVisitor(VerificationConfig config) {
+		super(config);
+		this.bvVars = new HashMap<>();
+		this.bvExprTree = new Stack<>();
+		this.intSafe = new Stack<>();
+		this.boolSafe = new Stack<>();
+	}
+
+	@Override
+	public Verdict verify() {
+		if (this.wp.size() != 1) {
+			throw new IllegalStateException("Verification visitor failed; number of weakest preconditions " + this.wp.size() + " not 1.");
+		}
+		// bit-blasting makes multiplication no harder than addition, so there is nothing to linearize
+		return solve(List.of(this.wp.pop()), "QF_BV");
+	}
+
+	// the ite conversion and block summaries build integer terms
+	@Override
+	boolean convertsIfs() {
+		return false;
+	}
+
+	@Override
+	boolean summarizesBlocks() {
+		return false;
+	}
+
+	private BoolExpr and(BoolExpr left, BoolExpr right) {
+		if (left.isTrue()) {
+			return right;
+		}
+		if (right.isTrue()) {
+			return left;
+		}
+		return this.ctx.mkAnd(left, right);
+	}
+
+	private BoolExpr safe() {
+		return this.ctx.mkBool(true);
+	}
+
+	@Override
+	public void visitExit(CheckNode node) {
+		if (this.boolSafe.isEmpty()) {
+			throw new IllegalStateException(node.lexeme.toString() + " does not have precisely one expression.");
+		}
+		BoolExpr safe = this.boolSafe.pop();
+		super.visitExit(node);
+		this.wp.push(and(safe, this.wp.pop()));
+	}
+
+	@Override
+	public void visitExit(IfNode node) {
+		if (this.boolSafe.isEmpty()) {
+			throw new IllegalStateException("If statement at " + node.lexeme + " must have a condition.");
+		}
+		BoolExpr safe = this.boolSafe.pop();
+		super.visitExit(node);
+		this.wp.push(and(safe, this.wp.pop()));
+	}
+
+	@Override
+	public void visitExit(AssignmentNode node) {
+		if (this.bvExprTree.size() != 1) {
+			throw new IllegalStateException("Assignment " + node.lexeme + " has invalid right hand side.");
+		}
+		if (this.wp.isEmpty()) {
+			throw new IllegalStateException("No weakest precondition at " + node.lexeme + ".");
+		}
+		BitVecExpr lhs = variable(node.lhs.s);
+		BitVecExpr rhs = this.bvExprTree.pop();
+		BoolExpr safe = this.intSafe.pop();
+		BoolExpr wp = this.wp.pop();
+		Expr sub = wp.substitute(lhs, rhs);
+		if (!sub.isBool()) {
+			throw new IllegalStateException("Substituted weakest precondition at " + node.lexeme + " is not of boolean sort.");
+		}
+		this.wp.push(and(safe, (BoolExpr) sub));
+	}
+
+	@Override
+	public void visitExit(IntOperatorNode node) {
+		BitVecExpr expr;
+		BoolExpr safe;
+		boolean checked = this.config.overflowChecks;
+		switch (node.op) {
+			case ADD, SUB, MUL -> {
+				if (this.bvExprTree.size() < 2) {
+					throw new IllegalStateException("Operator at " + node.lexeme + " does not have two subexpressions.");
+				}
+				BitVecExpr exprR = this.bvExprTree.pop();
+				BitVecExpr exprL = this.bvExprTree.pop();
+				BoolExpr safeR = this.intSafe.pop();
+				BoolExpr safeL = this.intSafe.pop();
+				safe = and(safeL, safeR);
+				if (node.op == IntOperatorNode.Operator.ADD) {
+					expr = this.ctx.mkBVAdd(exprL, exprR);
+					if (checked) {
+						safe = and(safe, this.ctx.mkAnd(this.ctx.mkBVAddNoOverflow(exprL, exprR, true), this.ctx.mkBVAddNoUnderflow(exprL, exprR)));
+					}
+				}
+				else if (node.op == IntOperatorNode.Operator.SUB) {
+					expr = this.ctx.mkBVSub(exprL, exprR);
+					if (checked) {
+						safe = and(safe, this.ctx.mkAnd(this.ctx.mkBVSubNoOverflow(exprL, exprR), this.ctx.mkBVSubNoUnderflow(exprL, exprR, true)));
+					}
+				}
+				else {
+					expr = this.ctx.mkBVMul(exprL, exprR);
+					if (checked) {
+						safe = and(safe, this.ctx.mkAnd(this.ctx.mkBVMulNoOverflow(exprL, exprR, true), this.ctx.mkBVMulNoUnderflow(exprL, exprR)));
+					}
+				}
+			}
+			case NEGATE -> {
+				if (this.bvExprTree.size() < 1) {
+					throw new IllegalStateException("Operator at " + node.lexeme + " does not have a subexpression.");
+				}
+				BitVecExpr ex = this.bvExprTree.pop();
+				safe = this.intSafe.pop();
+				expr = this.ctx.mkBVNeg(ex);
+				if (checked) {
+					safe = and(safe, this.ctx.mkBVNegNoOverflow(ex));
+				}
+			}
+			default -> {
+				throw new IllegalStateException("Invalid operator at " + node.lexeme + ".");
+			}
+		}
+		this.bvExprTree.push(expr);
+		this.intSafe.push(safe);
+	}
+
+	@Override
+	public void visitExit(BoolOperatorNode node) {
+		super.visitExit(node);
+		// overflow is checked on both operands, even where the interpreter short-circuits
+		BoolExpr safe = this.boolSafe.pop();
+		if (node.op != BoolOperatorNode.Operator.NOT) {
+			safe = and(this.boolSafe.pop(), safe);
+		}
+		this.boolSafe.push(safe);
+	}
+
+	@Override
+	public void visitExit(BoolCompareNode node) {
+		if (this.bvExprTree.size() != 2) {
+			throw new IllegalStateException("Comparison at " + node.lexeme + " does not have precisely two subexpressions.");
+		}
+		BitVecExpr exprR = this.bvExprTree.pop();
+		BitVecExpr exprL = this.bvExprTree.pop();
+		BoolExpr safeR = this.intSafe.pop();
+		BoolExpr safeL = this.intSafe.pop();
+		BoolExpr cmp;
+		switch (node.cmp) {
+			case EQUAL -> {
+				cmp = this.ctx.mkEq(exprL, exprR);
+			}
+			case LESSER -> {
+				cmp = this.ctx.mkBVSLT(exprL, exprR);
+			}
+			case GREATER -> {
+				cmp = this.ctx.mkBVSGT(exprL, exprR);
+			}
+			default -> {
+				throw new IllegalStateException("Invalid comparison at " + node.lexeme + ".");
+			}
+		}
+		this.boolExprTree.push(cmp);
+		this.boolSafe.push(and(safeL, safeR));
+	}
+
+	@Override
+	public void visit(LabelNode node) {
+		this.bvExprTree.push(variable(node.label.s));
+		this.intSafe.push(safe());
+	}
+
+	@Override
+	public void visit(IntConstantNode node) {
+		BigInteger value = node.value;
+		this.bvExprTree.push(this.ctx.mkBV(node.lexeme.s, WIDTH));
+		// literals are never negative, so anything past the sign bit does not fit
+		if (this.config.overflowChecks && value.bitLength() >= WIDTH) {
+			this.intSafe.push(this.ctx.mkBool(false));
+		}
+		else {
+			this.intSafe.push(safe());
+		}
+	}
+
+	private BitVecExpr variable(String name) {
+		BitVecExpr var = this.bvVars.get(name);
+		if (var == null) {
+			var = this.ctx.mkBVConst(name, WIDTH);
+			this.bvVars.put(name, var);
+		}
+		return var;
+	}
+}
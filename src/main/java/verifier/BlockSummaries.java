@@ -0,0 +1,323 @@
+package verifier;
+
+import ast.*;
+import com.microsoft.z3.*;
+
+import java.util.*;
+
+// Memoized weakest precondition transformers for blocks.
+// For any block B, wp(B, Q) = checks(B) && Q[effects(B)], where effects maps every variable to its
+// value after B and checks is the conjunction of B's checks, both over the values before B.
+// Branches inside B join their effects with ite and guard their checks with the branch condition.
+// Summaries are keyed by the block's structure with variables numbered by first occurrence, so a
+// block that repeats, possibly with other variable names, is summarized once and then renamed.
+// That structure is interned bottom-up: a node's shape is a number standing for its kind, the
+// shapes of its children and where each child's variables fall among its own, so it is computed
+// once per node from its children's, however deeply blocks are nested.
+public class BlockSummaries {
+	Context ctx;
+	// by shape number
+	Map<Integer, Summary> cache;
+	// the shape of every node seen so far
+	Map<ASTNode, Shape> shapes;
+	// shape descriptions and their numbers; equal numbers are equal structures up to renaming
+	Map<List<Object>, Integer> shapeNumbers;
+	int hits;
+	int misses;
+
+	private static class Shape {
+		int number;
+		// variables of the node in order of first occurrence
+		List<String> vars;
+	}
+
+	private static class Summary {
+		// variables of the block in order of first occurrence
+		List<String> vars;
+		BoolExpr checks;
+		Map<String, ArithExpr> effects;
+	}
+
+	// a summary for a block's own variables
+	public static class Instance {
+		public BoolExpr checks;
+		public Map<String, ArithExpr> effects;
+
+		Instance(BoolExpr checks, Map<String, ArithExpr> effects) {
+			this.checks = checks;
+			this.effects = effects;
+		}
+	}
+
+	public BlockSummaries(Context ctx) {
+		this.ctx = ctx;
+		this.cache = new HashMap<>();
+		this.shapes = new IdentityHashMap<>();
+		this.shapeNumbers = new HashMap<>();
+		this.hits = 0;
+		this.misses = 0;
+	}
+
+	public int getHits() {
+		return this.hits;
+	}
+
+	public int getMisses() {
+		return this.misses;
+	}
+
+	// summaries cover assignments, checks, prints and if statements, but not calls or loops
+	public static boolean canSummarize(List<ASTNode> statements) {
+		for (ASTNode statement : statements) {
+			if (statement instanceof IfNode ifNode) {
+				if (!canSummarize(ifNode.branchThen.children) || !canSummarize(ifNode.branchElse.children)) {
+					return false;
+				}
+			}
+			else if (statement instanceof CallNode || statement instanceof WhileNode) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public Instance summarize(BlockNode block) {
+		Shape shape = shape(block);
+		List<String> vars = shape.vars;
+		Summary summary = this.cache.get(shape.number);
+		if (summary == null) {
+			this.misses += 1;
+			summary = compute(block, vars);
+			this.cache.put(shape.number, summary);
+		}
+		else {
+			this.hits += 1;
+		}
+		if (summary.vars.equals(vars)) {
+			return new Instance(summary.checks, summary.effects);
+		}
+		return rename(summary, vars);
+	}
+
+	private Instance rename(Summary summary, List<String> vars) {
+		Expr[] from = new Expr[vars.size()];
+		Expr[] to = new Expr[vars.size()];
+		Map<String, String> names = new HashMap<>();
+		for (int i = 0; i < vars.size(); i += 1) {
+			from[i] = this.ctx.mkIntConst(summary.vars.get(i));
+			to[i] = this.ctx.mkIntConst(vars.get(i));
+			names.put(summary.vars.get(i), vars.get(i));
+		}
+		Map<String, ArithExpr> effects = new HashMap<>();
+		for (Map.Entry<String, ArithExpr> entry : summary.effects.entrySet()) {
+			effects.put(names.get(entry.getKey()), (ArithExpr) entry.getValue().substitute(from, to));
+		}
+		return new Instance((BoolExpr) summary.checks.substitute(from, to), effects);
+	}
+
+	private Summary compute(BlockNode block, List<String> vars) {
+		SymbolicEvaluator evaluator = new SymbolicEvaluator(this.ctx);
+		List<BoolExpr> checks = new ArrayList<>();
+		for (ASTNode statement : block.children) {
+			if (statement instanceof AssignmentNode assignment) {
+				evaluator.assign(assignment);
+			}
+			else if (statement instanceof CheckNode check) {
+				checks.add(evaluator.evalBool(check.expr));
+			}
+			else if (statement instanceof IfNode ifNode) {
+				BoolExpr cond = evaluator.evalBool(ifNode.cond);
+				Instance branchThen = after(evaluator.state, summarize(ifNode.branchThen));
+				Instance branchElse = after(evaluator.state, summarize(ifNode.branchElse));
+				checks.add(this.ctx.mkImplies(cond, branchThen.checks));
+				checks.add(this.ctx.mkImplies(this.ctx.mkNot(cond), branchElse.checks));
+				Map<String, ArithExpr> stateThen = new HashMap<>(evaluator.state);
+				stateThen.putAll(branchThen.effects);
+				Map<String, ArithExpr> stateElse = new HashMap<>(evaluator.state);
+				stateElse.putAll(branchElse.effects);
+				evaluator.state = evaluator.join(cond, stateThen, stateElse);
+			}
+			else if (!(statement instanceof PrintNode)) {
+				throw new IllegalStateException("Unexpected statement node type: " + statement.getClass());
+			}
+		}
+		Summary summary = new Summary();
+		summary.vars = vars;
+		summary.checks = checks.isEmpty() ? this.ctx.mkBool(true) : this.ctx.mkAnd(checks.toArray(new BoolExpr[0]));
+		summary.effects = evaluator.state;
+		return summary;
+	}
+
+	// rewrites a summary over the values before a block into one over the given earlier state
+	private Instance after(Map<String, ArithExpr> state, Instance instance) {
+		List<Expr> from = new ArrayList<>();
+		List<Expr> to = new ArrayList<>();
+		for (Map.Entry<String, ArithExpr> entry : state.entrySet()) {
+			IntExpr var = this.ctx.mkIntConst(entry.getKey());
+			if (!entry.getValue().equals(var)) {
+				from.add(var);
+				to.add(entry.getValue());
+			}
+		}
+		if (from.isEmpty()) {
+			return instance;
+		}
+		Expr[] fromArray = from.toArray(new Expr[0]);
+		Expr[] toArray = to.toArray(new Expr[0]);
+		Map<String, ArithExpr> effects = new HashMap<>();
+		for (Map.Entry<String, ArithExpr> entry : instance.effects.entrySet()) {
+			effects.put(entry.getKey(), (ArithExpr) entry.getValue().substitute(fromArray, toArray));
+		}
+		return new Instance((BoolExpr) instance.checks.substitute(fromArray, toArray), effects);
+	}
+
+	// the structure of a node with its variable names, equal for equal statements
+	static String key(ASTNode node) {
+		StringBuilder key = new StringBuilder();
+		structure(node, key);
+		return key.toString();
+	}
+
+	private static void structure(ASTNode node, StringBuilder key) {
+		if (node instanceof BlockNode block) {
+			key.append('{');
+			for (ASTNode child : block.children) {
+				structure(child, key);
+				key.append(';');
+			}
+			key.append('}');
+		}
+		else if (node instanceof AssignmentNode assignment) {
+			key.append(assignment.lhs.s).append(":=");
+			structure(assignment.rhs, key);
+		}
+		else if (node instanceof CheckNode check) {
+			key.append("check ");
+			structure(check.expr, key);
+		}
+		else if (node instanceof PrintNode print) {
+			key.append("print ").append(print.variable.s);
+		}
+		else if (node instanceof IfNode ifNode) {
+			key.append("if ");
+			structure(ifNode.cond, key);
+			structure(ifNode.branchThen, key);
+			structure(ifNode.branchElse, key);
+		}
+		else if (node instanceof IntOperatorNode op) {
+			operator(op.op, op.left, op.right, key);
+		}
+		else if (node instanceof BoolOperatorNode op) {
+			operator(op.op, op.left, op.right, key);
+		}
+		else if (node instanceof BoolCompareNode cmp) {
+			operator(cmp.cmp, cmp.left, cmp.right, key);
+		}
+		else if (node instanceof LabelNode label) {
+			key.append(label.label.s);
+		}
+		else if (node instanceof IntConstantNode) {
+			key.append(node.lexeme.s);
+		}
+		else {
+			throw new IllegalStateException("Unexpected node type: " + node.getClass());
+		}
+	}
+
+	private static void operator(Enum<?> op, ASTNode left, ASTNode right, StringBuilder key) {
+		key.append('(').append(op.name()).append(' ');
+		structure(left, key);
+		if (right != null) {
+			key.append(' ');
+			structure(right, key);
+		}
+		key.append(')');
+	}
+
+	// the shape of a node, from the shapes of its children. Its description lists the node's kind,
+	// then for each variable the node names itself its negative first-occurrence number minus one,
+	// and for each child the child's shape number followed by the numbers its variables have in
+	// the node. A shape number determines how many variables follow it, so equal descriptions
+	// mean equal structures.
+	private Shape shape(ASTNode node) {
+		Shape shape = this.shapes.get(node);
+		if (shape != null) {
+			return shape;
+		}
+		List<Object> description = new ArrayList<>();
+		Map<String, Integer> numbers = new HashMap<>();
+		List<String> vars = new ArrayList<>();
+		description.add(node.getClass());
+		if (node instanceof BlockNode block) {
+			for (ASTNode child : block.children) {
+				child(child, description, numbers, vars);
+			}
+		}
+		else if (node instanceof AssignmentNode assignment) {
+			description.add(-1 - variable(assignment.lhs.s, numbers, vars));
+			child(assignment.rhs, description, numbers, vars);
+		}
+		else if (node instanceof CheckNode check) {
+			child(check.expr, description, numbers, vars);
+		}
+		else if (node instanceof PrintNode print) {
+			description.add(-1 - variable(print.variable.s, numbers, vars));
+		}
+		else if (node instanceof IfNode ifNode) {
+			child(ifNode.cond, description, numbers, vars);
+			child(ifNode.branchThen, description, numbers, vars);
+			child(ifNode.branchElse, description, numbers, vars);
+		}
+		else if (node instanceof IntOperatorNode op) {
+			description.add(op.op);
+			operands(op.left, op.right, description, numbers, vars);
+		}
+		else if (node instanceof BoolOperatorNode op) {
+			description.add(op.op);
+			operands(op.left, op.right, description, numbers, vars);
+		}
+		else if (node instanceof BoolCompareNode cmp) {
+			description.add(cmp.cmp);
+			operands(cmp.left, cmp.right, description, numbers, vars);
+		}
+		else if (node instanceof LabelNode label) {
+			description.add(-1 - variable(label.label.s, numbers, vars));
+		}
+		else if (node instanceof IntConstantNode) {
+			description.add(node.lexeme.s);
+		}
+		else {
+			throw new IllegalStateException("Unexpected node type: " + node.getClass());
+		}
+		shape = new Shape();
+		shape.number = this.shapeNumbers.computeIfAbsent(description, d -> this.shapeNumbers.size());
+		shape.vars = vars;
+		this.shapes.put(node, shape);
+		return shape;
+	}
+
+	private void operands(ASTNode left, ASTNode right, List<Object> description, Map<String, Integer> numbers, List<String> vars) {
+		child(left, description, numbers, vars);
+		if (right != null) {
+			child(right, description, numbers, vars);
+		}
+	}
+
+	private void child(ASTNode child, List<Object> description, Map<String, Integer> numbers, List<String> vars) {
+		Shape shape = shape(child);
+		description.add(shape.number);
+		for (String var : shape.vars) {
+			description.add(variable(var, numbers, vars));
+		}
+	}
+
+	private static int variable(String name, Map<String, Integer> numbers, List<String> vars) {
+		Integer number = numbers.get(name);
+		if (number == null) {
+			number = vars.size();
+			numbers.put(name, number);
+			vars.add(name);
+		}
+		return number;
+	}
+}
@@ -0,0 +1,19 @@
+package verifier;
+
+import lexer.LocatedString;
+
+// the verdict for a single check statement
+public class CheckResult {
+	public LocatedString location;
+	public Verdict verdict;
+
+	public CheckResult(LocatedString location, Verdict verdict) {
+		this.location = location;
+		this.verdict = verdict;
+	}
+
+	@Override
+	public String toString() {
+		return "check at line " + this.location.line + ", column " + this.location.col + ": " + this.verdict;
+	}
+}
@@ -0,0 +1,172 @@
+package verifier;
+
+import ast.*;
+import com.microsoft.z3.*;
+
+import java.util.*;
+
+// Rewrites a verified program so executing it does less work.
+// Walking forwards with the symbolic state and path condition of ForwardVerifier, every if
+// condition that the solver proves always true or always false on the paths reaching it is
+// replaced by the branch that is taken, and every check is removed. If statements left with
+// two empty branches are removed too; the usage check guarantees their conditions can be
+// evaluated, and conditions have no side effects.
+// Loops are kept, with the invariant standing in for what their iterations did.
+// A call's result is only known through the callee's postcondition; procedure bodies are left as they are.
+// Only call this on a program that verified, since it drops the checks without looking at them.
+public class DeadCodeEliminator {
+	VerificationConfig config;
+	Context ctx;
+	SymbolicEvaluator evaluator;
+	// holds the path condition of the current statement, one push per enclosing branch
+	Solver solver;
+	int decidedIfs;
+	int removedIfs;
+	int removedChecks;
+	int removedLoops;
+
+	public DeadCodeEliminator(VerificationConfig config) {
+		this.config = config;
+		this.ctx = config.makeContext();
+		this.evaluator = new SymbolicEvaluator(this.ctx);
+		this.solver = config.makeSolver(this.ctx);
+		this.decidedIfs = 0;
+		this.removedIfs = 0;
+		this.removedChecks = 0;
+		this.removedLoops = 0;
+	}
+
+	// if statements replaced by one of their branches
+	public int getDecidedIfs() {
+		return this.decidedIfs;
+	}
+
+	// if statements removed because neither branch had anything left to do
+	public int getRemovedIfs() {
+		return this.removedIfs;
+	}
+
+	// loops removed because their condition is false on entry
+	public int getRemovedLoops() {
+		return this.removedLoops;
+	}
+
+	public int getRemovedChecks() {
+		return this.removedChecks;
+	}
+
+	// rewrites the program in place and returns it
+	public ASTNode optimize(ASTNode root) {
+		if (!(root instanceof BlockNode)) {
+			throw new IllegalArgumentException("Program root must be a BlockNode");
+		}
+		try {
+			optimizeBlock((BlockNode) root);
+		} finally {
+			this.ctx.close();
+		}
+		return root;
+	}
+
+	private void optimizeBlock(BlockNode block) {
+		List<ASTNode> statements = new ArrayList<>();
+		optimizeStatements(block.children, statements);
+		block.children = statements;
+	}
+
+	// appends the rewritten statements to out
+	private void optimizeStatements(List<ASTNode> statements, List<ASTNode> out) {
+		for (ASTNode statement : statements) {
+			if (statement instanceof AssignmentNode assignment) {
+				this.evaluator.assign(assignment);
+				out.add(statement);
+			}
+			else if (statement instanceof CheckNode) {
+				this.removedChecks += 1;
+			}
+			else if (statement instanceof IfNode ifNode) {
+				optimizeIf(ifNode, out);
+			}
+			else if (statement instanceof WhileNode loop) {
+				optimizeWhile(loop, out);
+			}
+			else if (statement instanceof CallNode call) {
+				// what the contract says about the result holds on the rest of the path
+				this.solver.add(this.evaluator.call(call));
+				out.add(statement);
+			}
+			else if (statement instanceof PrintNode) {
+				out.add(statement);
+			}
+			else {
+				throw new IllegalStateException("Unexpected statement node type: " + statement.getClass());
+			}
+		}
+	}
+
+	private void optimizeIf(IfNode node, List<ASTNode> out) {
+		BoolExpr cond = this.evaluator.evalBool(node.cond);
+		if (isUnsatisfiable(this.ctx.mkNot(cond))) {
+			this.decidedIfs += 1;
+			optimizeBranch(cond, node.branchThen.children, out);
+			return;
+		}
+		if (isUnsatisfiable(cond)) {
+			this.decidedIfs += 1;
+			optimizeBranch(this.ctx.mkNot(cond), node.branchElse.children, out);
+			return;
+		}
+		Map<String, ArithExpr> before = new HashMap<>(this.evaluator.state);
+		List<ASTNode> statementsThen = new ArrayList<>();
+		optimizeBranch(cond, node.branchThen.children, statementsThen);
+		Map<String, ArithExpr> stateThen = this.evaluator.state;
+		this.evaluator.state = before;
+		List<ASTNode> statementsElse = new ArrayList<>();
+		optimizeBranch(this.ctx.mkNot(cond), node.branchElse.children, statementsElse);
+		this.evaluator.state = this.evaluator.join(cond, stateThen, this.evaluator.state);
+		if (statementsThen.isEmpty() && statementsElse.isEmpty()) {
+			this.removedIfs += 1;
+			return;
+		}
+		node.branchThen.children = statementsThen;
+		node.branchElse.children = statementsElse;
+		out.add(node);
+	}
+
+	// the body runs in a state where only the invariant and the condition are known, and after the
+	// loop the invariant holds and the condition does not. A loop that is never entered is removed.
+	private void optimizeWhile(WhileNode node, List<ASTNode> out) {
+		if (isUnsatisfiable(this.evaluator.evalBool(node.cond))) {
+			this.removedLoops += 1;
+			return;
+		}
+		Set<String> modified = new HashSet<>();
+		SymbolicEvaluator.assigned(node.body.children, modified);
+		this.evaluator.havoc(modified);
+		Map<String, ArithExpr> state = new HashMap<>(this.evaluator.state);
+		BoolExpr invariant = this.evaluator.evalBool(node.invariant);
+		BoolExpr cond = this.evaluator.evalBool(node.cond);
+		List<ASTNode> body = new ArrayList<>();
+		optimizeBranch(this.ctx.mkAnd(invariant, cond), node.body.children, body);
+		this.evaluator.state = state;
+		this.solver.add(invariant, this.ctx.mkNot(cond));
+		node.body.children = body;
+		out.add(node);
+	}
+
+	private void optimizeBranch(BoolExpr cond, List<ASTNode> statements, List<ASTNode> out) {
+		this.solver.push();
+		this.solver.add(cond);
+		optimizeStatements(statements, out);
+		this.solver.pop();
+	}
+
+	// an UNKNOWN answer keeps the branch, so a timeout only costs the optimization
+	private boolean isUnsatisfiable(BoolExpr expr) {
+		this.solver.push();
+		this.solver.add(expr);
+		Status status = this.solver.check();
+		this.solver.pop();
+		return status == Status.UNSATISFIABLE;
+	}
+}
@@ -0,0 +1,149 @@
+package verifier;
+
+import ast.*;
+import com.microsoft.z3.*;
+import lexer.LocatedString;
+
+import java.util.*;
+
+// Strongest postcondition verifier that consumes statements in source order, e.g. straight from
+// Parser.streamProgram, so verification can start before the program is fully parsed.
+// The symbolic state maps each variable to its value as a term over the initial values, and the
+// path condition says which branches lead to the current statement. Each check is discharged as
+// soon as it is reached: it holds if the path condition and its negation are unsatisfiable.
+// The verifier owns its Z3 context, which close() frees.
+public class ForwardVerifier implements StatementListener, AutoCloseable {
+	VerificationConfig config;
+	Context ctx;
+	SymbolicEvaluator evaluator;
+	// one incremental solver; each check is asked inside its own push/pop
+	Solver solver;
+	BoolExpr pathCondition;
+	Stack<Branch> branches;
+	List<CheckResult> results;
+
+	private static class Branch {
+		BoolExpr cond;
+		BoolExpr outerPathCondition;
+		Map<String, ArithExpr> stateBefore;
+		Map<String, ArithExpr> stateThen;
+	}
+
+	public ForwardVerifier(VerificationConfig config) {
+		this.config = config;
+		this.ctx = config.makeContext();
+		this.evaluator = new SymbolicEvaluator(this.ctx);
+		this.solver = config.makeSolver(this.ctx);
+		this.pathCondition = this.ctx.mkBool(true);
+		this.branches = new Stack<>();
+		this.results = new ArrayList<>();
+	}
+
+	public List<CheckResult> getResults() {
+		return this.results;
+	}
+
+	// INVALID if any check fails, otherwise UNKNOWN if any check was undecided
+	public Verdict verify() {
+		if (!this.branches.isEmpty()) {
+			throw new IllegalStateException("Forward verifier failed; " + this.branches.size() + " if statements not closed.");
+		}
+		Verdict verdict = Verdict.VALID;
+		for (CheckResult result : this.results) {
+			if (result.verdict == Verdict.INVALID) {
+				return Verdict.INVALID;
+			}
+			if (result.verdict == Verdict.UNKNOWN) {
+				verdict = Verdict.UNKNOWN;
+			}
+		}
+		return verdict;
+	}
+
+	public boolean verifyCondition() {
+		return verify() == Verdict.VALID;
+	}
+
+	@Override
+	public void statement(ASTNode statement) {
+		if (statement instanceof AssignmentNode assignment) {
+			this.evaluator.assign(assignment);
+		}
+		else if (statement instanceof CheckNode check) {
+			discharge(check.lexeme, this.evaluator.evalBool(check.expr));
+		}
+		else if (!(statement instanceof PrintNode)) {
+			throw new IllegalStateException("Unexpected statement node type: " + statement.getClass());
+		}
+	}
+
+	private void discharge(LocatedString location, BoolExpr check) {
+		VerificationReport report = this.config.getReport();
+		// the solver's statistics add up over all checks
+		Statistics before = report == null ? null : this.solver.getStatistics();
+		final long begin = System.nanoTime();
+		BoolExpr negated = this.ctx.mkAnd(this.pathCondition, this.ctx.mkNot(check));
+		this.solver.push();
+		this.solver.add(negated);
+		Verdict verdict = Verdict.fromStatus(this.solver.check());
+		final long solveNs = System.nanoTime() - begin;
+		if (report != null) {
+			report.add(location, this.config.logic, negated, solveNs, verdict, before, this.solver.getStatistics());
+		}
+		this.results.add(new CheckResult(location, verdict));
+		this.solver.pop();
+	}
+
+	@Override
+	public void enterIf(LocatedString lexeme, ASTNode cond) {
+		Branch branch = new Branch();
+		branch.cond = this.evaluator.evalBool(cond);
+		branch.outerPathCondition = this.pathCondition;
+		branch.stateBefore = new HashMap<>(this.evaluator.state);
+		this.branches.push(branch);
+		this.pathCondition = this.ctx.mkAnd(this.pathCondition, branch.cond);
+	}
+
+	@Override
+	public void enterElse() {
+		Branch branch = this.branches.peek();
+		branch.stateThen = this.evaluator.state;
+		this.evaluator.state = new HashMap<>(branch.stateBefore);
+		this.pathCondition = this.ctx.mkAnd(branch.outerPathCondition, this.ctx.mkNot(branch.cond));
+	}
+
+	@Override
+	public void exitIf() {
+		Branch branch = this.branches.pop();
+		this.evaluator.state = this.evaluator.join(branch.cond, branch.stateThen, this.evaluator.state);
+		this.pathCondition = branch.outerPathCondition;
+	}
+
+	@Override
+	public void close() {
+		this.ctx.close();
+	}
+
+	// feeds an already parsed program through the verifier, for callers that have the tree anyway
+	public void run(ASTNode root) {
+		if (!(root instanceof BlockNode)) {
+			throw new IllegalArgumentException("Program root must be a BlockNode");
+		}
+		runBlock((BlockNode) root);
+	}
+
+	private void runBlock(BlockNode block) {
+		for (ASTNode statement : block.children) {
+			if (statement instanceof IfNode ifNode) {
+				enterIf(ifNode.lexeme, ifNode.cond);
+				runBlock(ifNode.branchThen);
+				enterElse();
+				runBlock(ifNode.branchElse);
+				exitIf();
+			}
+			else {
+				statement(statement);
+			}
+		}
+	}
+}
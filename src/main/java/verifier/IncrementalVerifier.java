@@ -0,0 +1,249 @@
+package verifier;
+
+import ast.*;
+import com.microsoft.z3.*;
+import lexer.LocatedString;
+
+import java.util.*;
+
+// Verifies successive versions of a program, re-solving only the checks an edit can affect.
+// Every check is its own obligation: its path condition and negated condition over the symbolic
+// state, as in ForwardVerifier. The state maps variables to terms over the initial values, so an
+// obligation only mentions the assignments and branches in the check's cone of influence. Z3
+// shares equal terms within a context, so a check the edit does not reach produces the very same
+// obligation as before and its verdict is looked up instead of solved.
+// Top-level statements are also compared by structure, and the state after the unchanged prefix
+// of the program is taken from the last run instead of being evaluated again: the state at the
+// end is kept with, for each statement, the values it overwrote, and undoing the changed suffix
+// gives the state before it.
+// Only the verdicts of the last program's obligations are kept, and the context is recreated
+// every CONTEXT_RUNS runs, so watching a program does not pile up terms of its old versions.
+public class IncrementalVerifier implements AutoCloseable {
+	// runs that share one context before it is recreated and everything is solved again
+	static final int CONTEXT_RUNS = 32;
+
+	VerificationConfig config;
+	Context ctx;
+	// a fresh incremental solver for every run; each obligation is asked inside its own push/pop
+	Solver solver;
+	SymbolicEvaluator evaluator;
+	// verdict of every obligation of the last program, keyed by the negated obligation
+	Map<BoolExpr, Verdict> verdicts;
+	// the structure of each top-level statement of the last program
+	List<String> keys;
+	// the state at the end of the last program
+	Map<String, ArithExpr> state;
+	// for each top-level statement of the last program, the values before it of the variables it
+	// may assign, null where the variable had none
+	List<Map<String, ArithExpr>> undo;
+	// the negated obligations of the last program, in program order
+	List<BoolExpr> obligations;
+	List<CheckResult> results;
+	// what the last run did
+	int solved;
+	int reused;
+	int replayedStatements;
+	// runs since the context was created
+	int runs;
+
+	public IncrementalVerifier(VerificationConfig config) {
+		this.config = config;
+		this.results = new ArrayList<>();
+		reset();
+	}
+
+	// starts over in a new context, forgetting every earlier program
+	private void reset() {
+		this.ctx = this.config.makeContext();
+		this.evaluator = new SymbolicEvaluator(this.ctx);
+		this.verdicts = new HashMap<>();
+		this.keys = new ArrayList<>();
+		this.state = new HashMap<>();
+		this.undo = new ArrayList<>();
+		this.obligations = new ArrayList<>();
+		this.runs = 0;
+	}
+
+	public List<CheckResult> getResults() {
+		return this.results;
+	}
+
+	// number of obligations the last run sent to the solver
+	public int getSolved() {
+		return this.solved;
+	}
+
+	// number of obligations the last run answered from earlier verdicts
+	public int getReused() {
+		return this.reused;
+	}
+
+	// number of leading top-level statements the last run did not evaluate again
+	public int getReplayedStatements() {
+		return this.replayedStatements;
+	}
+
+	// INVALID if any check fails, otherwise UNKNOWN if any check was undecided
+	public Verdict verify() {
+		Verdict verdict = Verdict.VALID;
+		for (CheckResult result : this.results) {
+			if (result.verdict == Verdict.INVALID) {
+				return Verdict.INVALID;
+			}
+			if (result.verdict == Verdict.UNKNOWN) {
+				verdict = Verdict.UNKNOWN;
+			}
+		}
+		return verdict;
+	}
+
+	public boolean verifyCondition() {
+		return verify() == Verdict.VALID;
+	}
+
+	// verifies a new version of the program, reusing whatever the last version left behind
+	public void run(ASTNode root) {
+		if (!(root instanceof BlockNode)) {
+			throw new IllegalArgumentException("Program root must be a BlockNode");
+		}
+		List<ASTNode> statements = ((BlockNode) root).children;
+		if (this.runs == CONTEXT_RUNS) {
+			this.ctx.close();
+			reset();
+		}
+		this.runs += 1;
+		this.solver = this.config.makeSolver(this.ctx);
+		List<String> keys = new ArrayList<>();
+		for (ASTNode statement : statements) {
+			keys.add(BlockSummaries.key(statement));
+		}
+		int prefix = 0;
+		while (prefix < keys.size() && prefix < this.keys.size() && keys.get(prefix).equals(this.keys.get(prefix))) {
+			prefix += 1;
+		}
+		this.solved = 0;
+		this.reused = 0;
+		this.replayedStatements = prefix;
+
+		// the unchanged prefix keeps its obligations; only the locations of its checks may have moved
+		List<LocatedString> locations = new ArrayList<>();
+		for (int i = 0; i < prefix; i += 1) {
+			checkLocations(statements.get(i), locations);
+		}
+		List<BoolExpr> obligations = new ArrayList<>(this.obligations.subList(0, locations.size()));
+		this.results = new ArrayList<>();
+		for (int i = 0; i < locations.size(); i += 1) {
+			this.reused += 1;
+			this.results.add(new CheckResult(locations.get(i), this.verdicts.get(obligations.get(i))));
+		}
+		this.keys = keys;
+		this.obligations = obligations;
+
+		// back to the state before the first changed statement
+		for (int i = this.undo.size() - 1; i >= prefix; i -= 1) {
+			for (Map.Entry<String, ArithExpr> entry : this.undo.get(i).entrySet()) {
+				if (entry.getValue() == null) {
+					this.state.remove(entry.getKey());
+				}
+				else {
+					this.state.put(entry.getKey(), entry.getValue());
+				}
+			}
+		}
+		this.undo = new ArrayList<>(this.undo.subList(0, prefix));
+
+		this.evaluator.state = this.state;
+		BoolExpr path = this.ctx.mkBool(true);
+		for (int i = prefix; i < statements.size(); i += 1) {
+			ASTNode statement = statements.get(i);
+			Set<String> assigned = new HashSet<>();
+			SymbolicEvaluator.assigned(List.of(statement), assigned);
+			Map<String, ArithExpr> before = new HashMap<>();
+			for (String var : assigned) {
+				before.put(var, this.evaluator.state.get(var));
+			}
+			this.undo.add(before);
+			runStatement(statement, path);
+		}
+		this.state = this.evaluator.state;
+
+		// forget the verdicts of obligations the program no longer has
+		Map<BoolExpr, Verdict> verdicts = new HashMap<>();
+		for (BoolExpr obligation : this.obligations) {
+			verdicts.put(obligation, this.verdicts.get(obligation));
+		}
+		this.verdicts = verdicts;
+	}
+
+	private void runStatement(ASTNode statement, BoolExpr path) {
+		if (statement instanceof AssignmentNode assignment) {
+			this.evaluator.assign(assignment);
+		}
+		else if (statement instanceof CheckNode check) {
+			discharge(check.lexeme, this.ctx.mkAnd(path, this.ctx.mkNot(this.evaluator.evalBool(check.expr))));
+		}
+		else if (statement instanceof IfNode ifNode) {
+			BoolExpr cond = this.evaluator.evalBool(ifNode.cond);
+			Map<String, ArithExpr> before = new HashMap<>(this.evaluator.state);
+			BoolExpr pathThen = this.ctx.mkAnd(path, cond);
+			for (ASTNode child : ifNode.branchThen.children) {
+				runStatement(child, pathThen);
+			}
+			Map<String, ArithExpr> stateThen = this.evaluator.state;
+			this.evaluator.state = before;
+			BoolExpr pathElse = this.ctx.mkAnd(path, this.ctx.mkNot(cond));
+			for (ASTNode child : ifNode.branchElse.children) {
+				runStatement(child, pathElse);
+			}
+			this.evaluator.state = this.evaluator.join(cond, stateThen, this.evaluator.state);
+		}
+		else if (!(statement instanceof PrintNode)) {
+			throw new IllegalStateException("Unexpected statement node type: " + statement.getClass());
+		}
+	}
+
+	private void discharge(LocatedString location, BoolExpr negated) {
+		Verdict verdict = this.verdicts.get(negated);
+		if (verdict == null) {
+			this.solved += 1;
+			VerificationReport report = this.config.getReport();
+			// the solver's statistics add up over the run
+			Statistics before = report == null ? null : this.solver.getStatistics();
+			final long begin = System.nanoTime();
+			this.solver.push();
+			this.solver.add(negated);
+			verdict = Verdict.fromStatus(this.solver.check());
+			final long solveNs = System.nanoTime() - begin;
+			if (report != null) {
+				report.add(location, this.config.logic, negated, solveNs, verdict, before, this.solver.getStatistics());
+			}
+			this.solver.pop();
+			this.verdicts.put(negated, verdict);
+		}
+		else {
+			this.reused += 1;
+		}
+		this.obligations.add(negated);
+		this.results.add(new CheckResult(location, verdict));
+	}
+
+	// collects the checks of a statement in the order runStatement reaches them
+	private static void checkLocations(ASTNode statement, List<LocatedString> locations) {
+		if (statement instanceof CheckNode check) {
+			locations.add(check.lexeme);
+		}
+		else if (statement instanceof IfNode ifNode) {
+			for (ASTNode child : ifNode.branchThen.children) {
+				checkLocations(child, locations);
+			}
+			for (ASTNode child : ifNode.branchElse.children) {
+				checkLocations(child, locations);
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		this.ctx.close();
+	}
+}
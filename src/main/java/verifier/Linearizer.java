@@ -0,0 +1,152 @@
+package verifier;
+
+import com.microsoft.z3.*;
+
+import java.math.BigInteger;
+import java.util.*;
+
+// Rewrites a verification condition so that constant arithmetic is folded and multiplication by
+// constants becomes linear. Variables fixed by assignments are already numerals after weakest
+// precondition substitution, so folding here also covers constant-propagated products.
+public class Linearizer {
+	Context ctx;
+	// the VC is a DAG with heavily shared subterms; each term is only rewritten once
+	Map<Expr, Expr> rewritten;
+	// whether a rewritten term still contains a multiplication of two non-constant terms
+	Map<Expr, Boolean> nonlinear;
+	// the multiplications that remain nonlinear after rewriting
+	Set<Expr> nonlinearTerms;
+
+	public Linearizer(Context ctx) {
+		this.ctx = ctx;
+		this.rewritten = new HashMap<>();
+		this.nonlinear = new HashMap<>();
+		this.nonlinearTerms = new LinkedHashSet<>();
+	}
+
+	public BoolExpr linearize(BoolExpr expr) {
+		return (BoolExpr) rewrite(expr);
+	}
+
+	// splits a rewritten VC into its top-level conjuncts, each of which can be solved on its own
+	public List<BoolExpr> obligations(BoolExpr expr) {
+		List<BoolExpr> result = new ArrayList<>();
+		Stack<BoolExpr> pending = new Stack<>();
+		pending.push(expr);
+		while (!pending.isEmpty()) {
+			BoolExpr next = pending.pop();
+			if (next.isAnd()) {
+				for (Expr arg : next.getArgs()) {
+					pending.push((BoolExpr) arg);
+				}
+			}
+			else if (!next.isTrue()) {
+				result.add(next);
+			}
+		}
+		return result;
+	}
+
+	public boolean isNonlinear(Expr rewrittenExpr) {
+		return this.nonlinear.getOrDefault(rewrittenExpr, false);
+	}
+
+	public Set<Expr> getNonlinearTerms() {
+		return this.nonlinearTerms;
+	}
+
+	private Expr rewrite(Expr expr) {
+		Expr done = this.rewritten.get(expr);
+		if (done != null) {
+			return done;
+		}
+		Expr result;
+		boolean isNonlinear = false;
+		if (expr.getNumArgs() == 0) {
+			result = expr;
+		}
+		else {
+			Expr[] args = expr.getArgs();
+			for (int i = 0; i < args.length; i += 1) {
+				args[i] = rewrite(args[i]);
+				isNonlinear |= isNonlinear(args[i]);
+			}
+			if (expr.isMul()) {
+				result = rewriteMul(args);
+				if (result.isMul() && countNonConstant(result.getArgs()) > 1) {
+					isNonlinear = true;
+					this.nonlinearTerms.add(result);
+				}
+			}
+			else if (expr.isAdd() && allConstant(args)) {
+				BigInteger sum = BigInteger.ZERO;
+				for (Expr arg : args) {
+					sum = sum.add(valueOf(arg));
+				}
+				result = this.ctx.mkInt(sum.toString());
+			}
+			else if (expr.isSub() && allConstant(args)) {
+				BigInteger diff = valueOf(args[0]);
+				for (int i = 1; i < args.length; i += 1) {
+					diff = diff.subtract(valueOf(args[i]));
+				}
+				result = this.ctx.mkInt(diff.toString());
+			}
+			else if (expr.isUMinus() && allConstant(args)) {
+				result = this.ctx.mkInt(valueOf(args[0]).negate().toString());
+			}
+			else {
+				result = expr.update(args);
+			}
+		}
+		this.rewritten.put(expr, result);
+		this.nonlinear.put(result, isNonlinear);
+		return result;
+	}
+
+	// multiplies all constant factors into one coefficient, which leads the product if kept
+	private Expr rewriteMul(Expr[] args) {
+		BigInteger coefficient = BigInteger.ONE;
+		List<ArithExpr> factors = new ArrayList<>();
+		for (Expr arg : args) {
+			if (isConstant(arg)) {
+				coefficient = coefficient.multiply(valueOf(arg));
+			}
+			else {
+				factors.add((ArithExpr) arg);
+			}
+		}
+		if (coefficient.signum() == 0 || factors.isEmpty()) {
+			return this.ctx.mkInt(coefficient.toString());
+		}
+		if (!coefficient.equals(BigInteger.ONE)) {
+			factors.add(0, this.ctx.mkInt(coefficient.toString()));
+		}
+		if (factors.size() == 1) {
+			return factors.get(0);
+		}
+		return this.ctx.mkMul(factors.toArray(new ArithExpr[0]));
+	}
+
+	private static boolean isConstant(Expr expr) {
+		return expr.isIntNum();
+	}
+
+	private static int countNonConstant(Expr[] args) {
+		int count = 0;
+		for (Expr arg : args) {
+			if (!isConstant(arg)) {
+				count += 1;
+			}
+		}
+		return count;
+	}
+
+	private static boolean allConstant(Expr[] args) {
+		return countNonConstant(args) == 0;
+	}
+
+	private static BigInteger valueOf(Expr expr) {
+		return ((IntNum) expr).getBigInteger();
+	}
+}
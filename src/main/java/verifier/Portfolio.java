@@ -0,0 +1,140 @@
+package verifier;
+
+import com.microsoft.z3.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+// Races one query under several solver configurations, each in its own context and thread.
+// The first definitive answer wins and the other solvers are interrupted.
+// Wins are tallied per configuration so a good default can be picked from experience.
+public class Portfolio {
+	// tactic pipelines that members cycle through; the empty pipeline keeps the base strategy
+	static final List<List<String>> STRATEGIES = List.of(
+		List.of(),
+		List.of("simplify", "solve-eqs", "smt"),
+		List.of("simplify", "propagate-values", "ctx-simplify", "smt"),
+		List.of("simplify", "purify-arith", "smt")
+	);
+
+	private static final ExecutorService pool = Executors.newCachedThreadPool(runnable -> {
+		Thread thread = new Thread(runnable, "portfolio");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	List<VerificationConfig> members;
+	// keyed by the member's description, so tallies are readable
+	Map<String, Integer> wins;
+
+	public Portfolio(List<VerificationConfig> members) {
+		if (members.isEmpty()) {
+			throw new IllegalArgumentException("Portfolio needs at least one configuration.");
+		}
+		this.members = List.copyOf(members);
+		this.wins = new ConcurrentHashMap<>();
+	}
+
+	// member i uses random seed i and the i-th strategy, or the base tactics if it sets any
+	public static Portfolio of(VerificationConfig base, int size) {
+		List<VerificationConfig> members = new ArrayList<>();
+		for (int i = 0; i < size; i += 1) {
+			VerificationConfig member = base.copy();
+			member.portfolioSize = 1;
+			member.randomSeed = i;
+			if (base.tactics.isEmpty()) {
+				member.tactics = STRATEGIES.get(i % STRATEGIES.size());
+			}
+			members.add(member);
+		}
+		return new Portfolio(members);
+	}
+
+	public Map<String, Integer> getWins() {
+		return this.wins;
+	}
+
+	public static class Result {
+		public Verdict verdict;
+		// description of the member that found a definitive verdict, otherwise null
+		public String winner;
+
+		Result(Verdict verdict, String winner) {
+			this.verdict = verdict;
+			this.winner = winner;
+		}
+	}
+
+	private static class Run {
+		VerificationConfig config;
+		Context ctx;
+		Solver solver;
+	}
+
+	// decides whether query, the negated condition in the caller's context, is satisfiable
+	public Result solve(BoolExpr query, String defaultLogic) {
+		// translating reads the caller's context, so it happens on this thread before the race
+		List<Run> runs = new ArrayList<>();
+		for (VerificationConfig member : this.members) {
+			Run run = new Run();
+			run.config = member;
+			run.ctx = member.makeContext();
+			run.solver = member.makeSolver(run.ctx, defaultLogic);
+			run.solver.add((BoolExpr) query.translate(run.ctx));
+			runs.add(run);
+		}
+		CompletionService<Run> race = new ExecutorCompletionService<>(pool);
+		Map<Run, Future<Run>> pending = new HashMap<>();
+		Map<Run, Verdict> verdicts = new ConcurrentHashMap<>();
+		for (Run run : runs) {
+			pending.put(run, race.submit(() -> {
+				verdicts.put(run, Verdict.fromStatus(run.solver.check()));
+				return run;
+			}));
+		}
+		Verdict result = Verdict.UNKNOWN;
+		String winner = null;
+		try {
+			while (!pending.isEmpty()) {
+				Run done = race.take().get();
+				pending.remove(done);
+				Verdict verdict = verdicts.get(done);
+				if (verdict != Verdict.UNKNOWN) {
+					result = verdict;
+					winner = done.config.toString();
+					this.wins.merge(winner, 1, Integer::sum);
+					break;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Portfolio member failed.", e.getCause());
+		} finally {
+			for (Run run : pending.keySet()) {
+				run.ctx.interrupt();
+			}
+			// a context can only be closed once its solver has stopped
+			boolean interrupted = false;
+			for (Future<Run> future : pending.values()) {
+				while (true) {
+					try {
+						future.get();
+						break;
+					} catch (InterruptedException e) {
+						interrupted = true;
+					} catch (ExecutionException e) {
+						break;
+					}
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			for (Run run : runs) {
+				run.ctx.close();
+			}
+		}
+		return new Result(result, winner);
+	}
+}
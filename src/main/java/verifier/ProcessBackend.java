@@ -0,0 +1,240 @@
+package verifier;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Solves scripts in a pool of solver subprocesses, such as `z3 -in`, speaking SMT-LIB2 over
+// stdin and stdout. Each query is written in one go as push, script, check-sat, pop.
+// Every process first gets a preamble of options, so the configured logic, seed and timeout apply
+// as they do in the JVM; a tactic pipeline is run with check-sat-using instead of check-sat.
+// The solver is asked to give up at the timeout itself. One that crashes, or is still running a
+// grace period later, is killed and replaced, and the query is reported as UNKNOWN; neither can
+// take down the JVM.
+public class ProcessBackend implements SolverBackend {
+	// how long past the timeout a solver may take to answer unknown before it is killed
+	static final int KILL_GRACE_MS = 1000;
+	// how often a query waiting for an idle solver checks whether the backend was closed
+	static final int POLL_MS = 100;
+
+	List<String> command;
+	// per query; 0 means no limit
+	int timeoutMs;
+	// commands sent to every process once when it starts
+	String preamble;
+	// the command that solves each query
+	String checkSat;
+	BlockingQueue<SolverProcess> idle;
+	// every process started so far, so close() can kill busy ones too
+	List<SolverProcess> started;
+	// answers are read on these threads so a hung solver can be abandoned
+	ExecutorService readers;
+	boolean closed;
+
+	private static class SolverProcess {
+		Process process;
+		Writer in;
+		BufferedReader out;
+		// error responses to the current query
+		List<String> errors;
+	}
+
+	public ProcessBackend(List<String> command, int processes, int timeoutMs) {
+		this(command, processes, timeoutMs, "", "(check-sat)");
+	}
+
+	public ProcessBackend(List<String> command, int processes, int timeoutMs, String preamble, String checkSat) {
+		if (command.isEmpty()) {
+			throw new IllegalArgumentException("Solver command must not be empty.");
+		}
+		if (processes < 1) {
+			throw new IllegalArgumentException("Need at least one solver process, got " + processes + ".");
+		}
+		this.command = List.copyOf(command);
+		this.timeoutMs = timeoutMs;
+		this.preamble = preamble;
+		this.checkSat = checkSat;
+		this.idle = new LinkedBlockingQueue<>();
+		this.started = new ArrayList<>();
+		this.readers = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "solver-reader");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.closed = false;
+		for (int i = 0; i < processes; i += 1) {
+			this.idle.add(spawn());
+		}
+	}
+
+	// a backend that runs config's solver command under config's logic, tactics, seed and timeout
+	static ProcessBackend of(VerificationConfig config) {
+		StringBuilder preamble = new StringBuilder();
+		if (config.timeoutMs > 0) {
+			preamble.append("(set-option :timeout ").append(config.timeoutMs).append(")\n");
+		}
+		if (config.randomSeed != null) {
+			preamble.append("(set-option :random-seed ").append(config.randomSeed).append(")\n");
+		}
+		String checkSat = "(check-sat)";
+		// as in the JVM, a tactic pipeline takes precedence over the logic
+		if (!config.tactics.isEmpty()) {
+			checkSat = config.tactics.size() == 1
+				? "(check-sat-using " + config.tactics.get(0) + ")"
+				: "(check-sat-using (then " + String.join(" ", config.tactics) + "))";
+		}
+		else if (config.logic != null) {
+			preamble.append("(set-logic ").append(config.logic).append(")\n");
+		}
+		return new ProcessBackend(config.solverCommand, config.solverProcesses, config.timeoutMs, preamble.toString(), checkSat);
+	}
+
+	private SolverProcess spawn() {
+		SolverProcess solver = new SolverProcess();
+		try {
+			solver.process = new ProcessBuilder(this.command)
+				.redirectError(ProcessBuilder.Redirect.DISCARD)
+				.start();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not start solver " + String.join(" ", this.command), e);
+		}
+		solver.in = new BufferedWriter(new OutputStreamWriter(solver.process.getOutputStream(), StandardCharsets.UTF_8));
+		solver.out = new BufferedReader(new InputStreamReader(solver.process.getInputStream(), StandardCharsets.UTF_8));
+		solver.errors = new ArrayList<>();
+		if (!this.preamble.isEmpty()) {
+			try {
+				solver.in.write(this.preamble);
+				solver.in.flush();
+			} catch (IOException ignored) {
+				// the process already died; its first query finds out and replaces it
+			}
+		}
+		synchronized (this) {
+			if (this.closed) {
+				solver.process.destroyForcibly();
+				throw new IllegalStateException("Solver backend is closed.");
+			}
+			this.started.add(solver);
+		}
+		return solver;
+	}
+
+	private synchronized void kill(SolverProcess solver) {
+		solver.process.destroyForcibly();
+		this.started.remove(solver);
+	}
+
+	@Override
+	public Verdict check(String script) {
+		SolverProcess solver;
+		try {
+			solver = takeIdle();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return Verdict.UNKNOWN;
+		}
+		boolean healthy = false;
+		try {
+			solver.errors.clear();
+			solver.in.write("(push 1)\n");
+			solver.in.write(script);
+			solver.in.write("\n" + this.checkSat + "\n(pop 1)\n");
+			solver.in.flush();
+			Future<String> answer = this.readers.submit(() -> readAnswer(solver));
+			String result;
+			try {
+				result = this.timeoutMs > 0 ? answer.get(this.timeoutMs + KILL_GRACE_MS, TimeUnit.MILLISECONDS) : answer.get();
+			} catch (TimeoutException e) {
+				answer.cancel(true);
+				return Verdict.UNKNOWN;
+			} catch (InterruptedException e) {
+				answer.cancel(true);
+				Thread.currentThread().interrupt();
+				return Verdict.UNKNOWN;
+			} catch (ExecutionException e) {
+				return Verdict.UNKNOWN;
+			}
+			if (result == null) {
+				// the solver exited
+				return Verdict.UNKNOWN;
+			}
+			healthy = true;
+			if (!solver.errors.isEmpty()) {
+				throw new IllegalStateException("Solver rejected script: " + solver.errors.get(0));
+			}
+			return switch (result) {
+				case "unsat" -> Verdict.VALID;
+				case "sat" -> Verdict.INVALID;
+				default -> Verdict.UNKNOWN;
+			};
+		} catch (IOException e) {
+			// the solver closed its input, most likely because it crashed
+			return Verdict.UNKNOWN;
+		} finally {
+			if (healthy) {
+				this.idle.add(solver);
+			}
+			else {
+				kill(solver);
+				if (!isClosed()) {
+					this.idle.add(spawn());
+				}
+			}
+		}
+	}
+
+	// waits for an idle solver; close() kills them all, so waiting stops once it is called
+	private SolverProcess takeIdle() throws InterruptedException {
+		while (true) {
+			if (isClosed()) {
+				throw new IllegalStateException("Solver backend is closed.");
+			}
+			SolverProcess solver = this.idle.poll(POLL_MS, TimeUnit.MILLISECONDS);
+			if (solver != null) {
+				return solver;
+			}
+		}
+	}
+
+	// returns the answer to check-sat, or null if the solver exits first
+	private static String readAnswer(SolverProcess solver) throws IOException {
+		String line;
+		while ((line = solver.out.readLine()) != null) {
+			line = line.trim();
+			switch (line) {
+				case "sat", "unsat", "unknown" -> {
+					return line;
+				}
+				default -> {
+					if (line.startsWith("(error")) {
+						solver.errors.add(line);
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	private synchronized boolean isClosed() {
+		return this.closed;
+	}
+
+	@Override
+	public void close() {
+		List<SolverProcess> running;
+		synchronized (this) {
+			if (this.closed) {
+				return;
+			}
+			this.closed = true;
+			running = new ArrayList<>(this.started);
+			this.started.clear();
+			this.idle.clear();
+		}
+		for (SolverProcess solver : running) {
+			solver.process.destroyForcibly();
+		}
+		this.readers.shutdownNow();
+	}
+}
@@ -0,0 +1,276 @@
+package verifier;
+
+import ast.*;
+import com.microsoft.z3.BoolExpr;
+
+import java.util.*;
+
+// Builds the verification condition as SMT-LIB2 text and hands it to the solver backend in one go,
+// instead of making one native call per AST node.
+// Text cannot share subterms the way Z3's term DAG does, so rather than substituting into the
+// weakest precondition the program is written forwards in SSA form: every assignment defines a
+// new version of its variable, and after an if statement each variable changed by a branch is
+// joined with an ite on the branch condition. Every check holds iff it is implied by its path
+// guard, which keeps the text linear in the size of the program.
+// Program variables are written as quoted symbols, |x|, so a variable named like an SMT-LIB
+// keyword or function, such as and, ite or true, still means the variable.
+public class SmtLibVerificationVisitor extends VerificationVisitor {
+	// the whole script: declarations and definitions in program order
+	StringBuilder out;
+	// the expression currently being visited; free variables it uses are declared in out first
+	StringBuilder expr;
+	// latest version of each variable, and the number of versions created so far
+	Map<String, Integer> versions;
+	Map<String, Integer> versionCount;
+	// variables used before being assigned, declared once as free constants
+	Set<String> declared;
+	// name of the path condition of the statement currently being visited
+	Stack<String> guards;
+	Stack<IfFrame> ifs;
+	List<String> checks;
+	int nextName;
+
+	private static class IfFrame {
+		String cond;
+		// versions at the start of the if statement and at the end of its then branch
+		Map<String, Integer> before;
+		Map<String, Integer> afterThen;
+		int branchesEntered;
+	}
+
+	public SmtLibVerificationVisitor(VerificationConfig config) {
+		super(config);
+		this.out = new StringBuilder();
+		this.expr = new StringBuilder();
+		this.versions = new HashMap<>();
+		this.versionCount = new HashMap<>();
+		this.declared = new HashSet<>();
+		this.guards = new Stack<>();
+		this.guards.push("true");
+		this.ifs = new Stack<>();
+		this.checks = new ArrayList<>();
+		this.nextName = 0;
+	}
+
+	// the script given to Z3; asserts that some check fails
+	public String getScript() {
+		return this.out.toString();
+	}
+
+	@Override
+	public Verdict verify() {
+		if (!this.ifs.isEmpty() || this.guards.size() != 1) {
+			throw new IllegalStateException("Verification visitor failed; program was not fully visited.");
+		}
+		this.out.append("(assert (not ");
+		if (this.checks.isEmpty()) {
+			this.out.append("true");
+		}
+		else {
+			this.out.append("(and");
+			for (String check : this.checks) {
+				this.out.append(' ').append(check);
+			}
+			this.out.append(')');
+		}
+		this.out.append("))\n");
+		if (this.config.usesPortfolio()) {
+			BoolExpr query = this.ctx.mkAnd(this.ctx.parseSMTLIB2String(this.out.toString(), null, null, null, null));
+			final long begin = System.nanoTime();
+			Portfolio.Result result = this.config.getPortfolio().solve(query, null);
+			final long solveNs = System.nanoTime() - begin;
+			if (result.winner != null) {
+				this.portfolioWinners.add(result.winner);
+			}
+			record(this.config.logic, query, solveNs, result.verdict, null);
+			return result.verdict;
+		}
+		final long begin = System.nanoTime();
+		Verdict verdict = this.config.getBackend().check(this.out.toString());
+		final long solveNs = System.nanoTime() - begin;
+		if (this.config.getReport() != null) {
+			// the script is only parsed back into terms to measure it, after the solve is timed
+			BoolExpr query = this.ctx.mkAnd(this.ctx.parseSMTLIB2String(this.out.toString(), null, null, null, null));
+			record(this.config.logic, query, solveNs, verdict, null);
+		}
+		return verdict;
+	}
+
+	@Override
+	public BlockTraversalOrder getTraversalOrder() {
+		return BlockTraversalOrder.FORWARDS;
+	}
+
+	private String freshName(String prefix) {
+		this.nextName += 1;
+		return prefix + "!" + this.nextName;
+	}
+
+	// version 0 is the free constant named after the variable itself
+	private static String versionName(String var, int version) {
+		return version == 0 ? "|" + var + "|" : "|" + var + "@" + version + "|";
+	}
+
+	private String currentVersion(String var) {
+		Integer version = this.versions.get(var);
+		if (version != null) {
+			return versionName(var, version);
+		}
+		String name = versionName(var, 0);
+		if (this.declared.add(var)) {
+			this.out.append("(declare-const ").append(name).append(" Int)\n");
+		}
+		return name;
+	}
+
+	private String defineBool(String prefix, CharSequence body) {
+		String name = freshName(prefix);
+		this.out.append("(define-fun ").append(name).append(" () Bool ").append(body).append(")\n");
+		return name;
+	}
+
+	// takes the finished expression out of the expression buffer
+	private String takeExpr() {
+		String result = this.expr.toString();
+		this.expr.setLength(0);
+		return result;
+	}
+
+	@Override
+	public void visitEnter(BlockNode node) {
+		if (this.ifs.isEmpty()) {
+			return;
+		}
+		// the condition of the innermost if is complete once one of its branches is entered
+		IfFrame frame = this.ifs.peek();
+		if (frame.branchesEntered == 0) {
+			frame.cond = defineBool("c", takeExpr());
+			frame.before = new HashMap<>(this.versions);
+			this.guards.push(defineBool("g", "(and " + this.guards.peek() + " " + frame.cond + ")"));
+		}
+		else {
+			frame.afterThen = this.versions;
+			this.versions = new HashMap<>(frame.before);
+			this.guards.push(defineBool("g", "(and " + this.guards.peek() + " (not " + frame.cond + "))"));
+		}
+		frame.branchesEntered += 1;
+	}
+
+	@Override
+	public void visitExit(BlockNode node) {
+		if (!this.ifs.isEmpty()) {
+			this.guards.pop();
+		}
+	}
+
+	@Override
+	public void visitEnter(IfNode node) {
+		this.ifs.push(new IfFrame());
+	}
+
+	@Override
+	public void visitExit(IfNode node) {
+		IfFrame frame = this.ifs.pop();
+		if (frame.branchesEntered != 2) {
+			throw new IllegalStateException("If statement at " + node.lexeme + " must have two branches.");
+		}
+		Map<String, Integer> afterElse = this.versions;
+		Set<String> changed = new TreeSet<>(frame.afterThen.keySet());
+		changed.addAll(afterElse.keySet());
+		this.versions = new HashMap<>(frame.before);
+		for (String var : changed) {
+			int versionThen = frame.afterThen.getOrDefault(var, 0);
+			int versionElse = afterElse.getOrDefault(var, 0);
+			if (versionThen == versionElse) {
+				this.versions.put(var, versionThen);
+				continue;
+			}
+			String valueThen = versionThen == 0 ? currentVersion(var) : versionName(var, versionThen);
+			String valueElse = versionElse == 0 ? currentVersion(var) : versionName(var, versionElse);
+			int version = newVersion(var);
+			this.out.append("(define-fun ").append(versionName(var, version)).append(" () Int (ite ")
+				.append(frame.cond).append(' ').append(valueThen).append(' ').append(valueElse).append("))\n");
+			this.versions.put(var, version);
+		}
+	}
+
+	private int newVersion(String var) {
+		int version = this.versionCount.getOrDefault(var, 0) + 1;
+		this.versionCount.put(var, version);
+		return version;
+	}
+
+	@Override
+	public void visitExit(CheckNode node) {
+		this.checks.add(defineBool("k", "(=> " + this.guards.peek() + " " + takeExpr() + ")"));
+	}
+
+	@Override
+	public void visitExit(AssignmentNode node) {
+		String rhs = takeExpr();
+		int version = newVersion(node.lhs.s);
+		this.out.append("(define-fun ").append(versionName(node.lhs.s, version)).append(" () Int ").append(rhs).append(")\n");
+		this.versions.put(node.lhs.s, version);
+	}
+
+	@Override
+	public void visitEnter(IntOperatorNode node) {
+		switch (node.op) {
+			case ADD -> this.expr.append(" (+");
+			case SUB, NEGATE -> this.expr.append(" (-");
+			case MUL -> this.expr.append(" (*");
+			default -> {
+				throw new IllegalStateException("Invalid operator at " + node.lexeme + ".");
+			}
+		}
+	}
+
+	@Override
+	public void visitExit(IntOperatorNode node) {
+		this.expr.append(')');
+	}
+
+	@Override
+	public void visitEnter(BoolOperatorNode node) {
+		switch (node.op) {
+			case OR -> this.expr.append(" (or");
+			case AND -> this.expr.append(" (and");
+			case NOT -> this.expr.append(" (not");
+			default -> {
+				throw new IllegalStateException("Invalid operator at " + node.lexeme + ".");
+			}
+		}
+	}
+
+	@Override
+	public void visitExit(BoolOperatorNode node) {
+		this.expr.append(')');
+	}
+
+	@Override
+	public void visitEnter(BoolCompareNode node) {
+		switch (node.cmp) {
+			case EQUAL -> this.expr.append(" (=");
+			case LESSER -> this.expr.append(" (<");
+			case GREATER -> this.expr.append(" (>");
+			default -> {
+				throw new IllegalStateException("Invalid comparison at " + node.lexeme + ".");
+			}
+		}
+	}
+
+	@Override
+	public void visitExit(BoolCompareNode node) {
+		this.expr.append(')');
+	}
+
+	@Override
+	public void visit(LabelNode node) {
+		this.expr.append(' ').append(currentVersion(node.label.s));
+	}
+
+	@Override
+	public void visit(IntConstantNode node) {
+		this.expr.append(' ').append(node.lexeme.s);
+	}
+}
@@ -0,0 +1,10 @@
+package verifier;
+
+// Something that can decide an SMT-LIB2 script. Scripts declare their symbols and assert the
+// negation of the condition being verified, so an unsatisfiable script means the condition holds.
+public interface SolverBackend extends AutoCloseable {
+	Verdict check(String script);
+
+	@Override
+	void close();
+}
@@ -0,0 +1,175 @@
+package verifier;
+
+import ast.*;
+import com.microsoft.z3.*;
+
+import java.util.*;
+
+// Turns expressions into Z3 terms over a symbolic state that maps each variable to its current
+// value. Variables read before being assigned stand for their unknown initial value.
+public class SymbolicEvaluator {
+	Context ctx;
+	public Map<String, ArithExpr> state;
+
+	public SymbolicEvaluator(Context ctx) {
+		this.ctx = ctx;
+		this.state = new HashMap<>();
+	}
+
+	public ArithExpr evalInt(ASTNode node) {
+		if (node instanceof IntConstantNode) {
+			return this.ctx.mkInt(node.lexeme.s);
+		}
+		else if (node instanceof LabelNode label) {
+			ArithExpr value = this.state.get(label.label.s);
+			if (value == null) {
+				value = this.ctx.mkIntConst(label.label.s);
+				this.state.put(label.label.s, value);
+			}
+			return value;
+		}
+		else if (node instanceof IntOperatorNode op) {
+			return switch (op.op) {
+				case ADD -> this.ctx.mkAdd(evalInt(op.left), evalInt(op.right));
+				case SUB -> this.ctx.mkSub(evalInt(op.left), evalInt(op.right));
+				case MUL -> this.ctx.mkMul(evalInt(op.left), evalInt(op.right));
+				case NEGATE -> this.ctx.mkUnaryMinus(evalInt(op.left));
+			};
+		}
+		throw new IllegalStateException("Expected integer expression, got " + node.getClass());
+	}
+
+	public BoolExpr evalBool(ASTNode node) {
+		if (node instanceof BoolCompareNode cmp) {
+			ArithExpr left = evalInt(cmp.left);
+			ArithExpr right = evalInt(cmp.right);
+			return switch (cmp.cmp) {
+				case GREATER -> this.ctx.mkGt(left, right);
+				case LESSER -> this.ctx.mkLt(left, right);
+				case EQUAL -> this.ctx.mkEq(left, right);
+			};
+		}
+		else if (node instanceof BoolOperatorNode op) {
+			return switch (op.op) {
+				case OR -> this.ctx.mkOr(evalBool(op.left), evalBool(op.right));
+				case AND -> this.ctx.mkAnd(evalBool(op.left), evalBool(op.right));
+				case NOT -> this.ctx.mkNot(evalBool(op.left));
+			};
+		}
+		throw new IllegalStateException("Expected boolean expression, got " + node.getClass());
+	}
+
+	public void assign(AssignmentNode node) {
+		this.state.put(node.lhs.s, evalInt(node.rhs));
+	}
+
+	// a clause of a procedure's contract for a call with the given argument values and result,
+	// which may be null for the precondition. A missing clause is true.
+	public BoolExpr contract(ProcedureNode procedure, ASTNode clause, List<ArithExpr> args, ArithExpr result) {
+		if (clause == null) {
+			return this.ctx.mkBool(true);
+		}
+		SymbolicEvaluator callee = new SymbolicEvaluator(this.ctx);
+		for (int i = 0; i < procedure.params.size(); i += 1) {
+			callee.state.put(procedure.params.get(i).s, args.get(i));
+		}
+		if (result != null) {
+			callee.state.put(procedure.result.s, result);
+		}
+		return callee.evalBool(clause);
+	}
+
+	// assigns the call a fresh value that only satisfies the callee's postcondition, which is returned
+	public BoolExpr call(CallNode node) {
+		List<ArithExpr> args = new ArrayList<>();
+		for (ASTNode arg : node.args) {
+			args.add(evalInt(arg));
+		}
+		ArithExpr result = (ArithExpr) this.ctx.mkFreshConst(node.name.s, this.ctx.getIntSort());
+		this.state.put(node.lhs.s, result);
+		return contract(node.procedure, node.procedure.ensures, args, result);
+	}
+
+	// adds every variable the statements may assign, including in nested branches and loops
+	public static void assigned(List<ASTNode> statements, Set<String> vars) {
+		for (ASTNode statement : statements) {
+			if (statement instanceof AssignmentNode assignment) {
+				vars.add(assignment.lhs.s);
+			}
+			else if (statement instanceof CallNode call) {
+				vars.add(call.lhs.s);
+			}
+			else if (statement instanceof IfNode ifNode) {
+				assigned(ifNode.branchThen.children, vars);
+				assigned(ifNode.branchElse.children, vars);
+			}
+			else if (statement instanceof WhileNode loop) {
+				assigned(loop.body.children, vars);
+			}
+		}
+	}
+
+	// gives each variable a fresh unknown value, as after any number of iterations of a loop
+	public void havoc(Set<String> vars) {
+		for (String var : vars) {
+			this.state.put(var, (ArithExpr) this.ctx.mkFreshConst(var, this.ctx.getIntSort()));
+		}
+	}
+
+	// whether statements can be run by run(): assignments, prints, and if statements made of them
+	public static boolean isCheckFree(List<ASTNode> statements) {
+		for (ASTNode statement : statements) {
+			if (statement instanceof IfNode ifNode) {
+				if (!isCheckFree(ifNode.branchThen.children) || !isCheckFree(ifNode.branchElse.children)) {
+					return false;
+				}
+			}
+			else if (!(statement instanceof AssignmentNode) && !(statement instanceof PrintNode)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// executes check-free statements, joining the states of if statements with ite
+	public void run(List<ASTNode> statements) {
+		for (ASTNode statement : statements) {
+			if (statement instanceof AssignmentNode assignment) {
+				assign(assignment);
+			}
+			else if (statement instanceof IfNode ifNode) {
+				BoolExpr cond = evalBool(ifNode.cond);
+				Map<String, ArithExpr> before = new HashMap<>(this.state);
+				run(ifNode.branchThen.children);
+				Map<String, ArithExpr> stateThen = this.state;
+				this.state = before;
+				run(ifNode.branchElse.children);
+				this.state = join(cond, stateThen, this.state);
+			}
+			else if (!(statement instanceof PrintNode)) {
+				throw new IllegalStateException("Unexpected statement node type: " + statement.getClass());
+			}
+		}
+	}
+
+	// joins the states at the end of two branches: a variable that differs becomes an ite on cond
+	public Map<String, ArithExpr> join(BoolExpr cond, Map<String, ArithExpr> stateThen, Map<String, ArithExpr> stateElse) {
+		Map<String, ArithExpr> joined = new HashMap<>(stateThen);
+		for (Map.Entry<String, ArithExpr> entry : stateElse.entrySet()) {
+			String var = entry.getKey();
+			ArithExpr valueElse = entry.getValue();
+			ArithExpr valueThen = stateThen.getOrDefault(var, this.ctx.mkIntConst(var));
+			if (!valueThen.equals(valueElse)) {
+				joined.put(var, (ArithExpr) this.ctx.mkITE(cond, valueThen, valueElse));
+			}
+		}
+		for (Map.Entry<String, ArithExpr> entry : stateThen.entrySet()) {
+			String var = entry.getKey();
+			ArithExpr initial = this.ctx.mkIntConst(var);
+			if (!stateElse.containsKey(var) && !entry.getValue().equals(initial)) {
+				joined.put(var, (ArithExpr) this.ctx.mkITE(cond, entry.getValue(), initial));
+			}
+		}
+		return joined;
+	}
+}
@@ -0,0 +1,157 @@
+package verifier;
+
+import ast.*;
+import com.microsoft.z3.*;
+import lexer.LocatedString;
+
+import java.util.*;
+
+// Verifies a program by executing it symbolically one path at a time.
+// A single incremental solver holds the current path condition: every branch pushes its
+// condition and is only entered if that keeps the path feasible, so branches decided by earlier
+// assignments are pruned immediately instead of being joined into one large formula.
+// Each check is solved under the path condition of every path that reaches it.
+// The executor owns its Z3 context, which close() frees.
+public class SymbolicExecutor implements AutoCloseable {
+	VerificationConfig config;
+	Context ctx;
+	SymbolicEvaluator evaluator;
+	Solver solver;
+	List<CheckResult> results;
+	// number of paths explored to the end of the program
+	int paths;
+	boolean failed;
+
+	// the statements still to be executed on the current path, innermost block first
+	private static class Continuation {
+		List<ASTNode> statements;
+		int index;
+		Continuation next;
+
+		Continuation(List<ASTNode> statements, int index, Continuation next) {
+			this.statements = statements;
+			this.index = index;
+			this.next = next;
+		}
+	}
+
+	public SymbolicExecutor(VerificationConfig config) {
+		this.config = config;
+		this.ctx = config.makeContext();
+		this.evaluator = new SymbolicEvaluator(this.ctx);
+		this.solver = config.makeSolver(this.ctx);
+		this.results = new ArrayList<>();
+		this.paths = 0;
+		this.failed = false;
+	}
+
+	public void run(ASTNode root) {
+		if (!(root instanceof BlockNode)) {
+			throw new IllegalArgumentException("Program root must be a BlockNode");
+		}
+		explore(new Continuation(((BlockNode) root).children, 0, null));
+	}
+
+	public List<CheckResult> getResults() {
+		return this.results;
+	}
+
+	public int getPaths() {
+		return this.paths;
+	}
+
+	// INVALID if a check fails on some path, otherwise UNKNOWN if any check was undecided
+	public Verdict verify() {
+		Verdict verdict = Verdict.VALID;
+		for (CheckResult result : this.results) {
+			if (result.verdict == Verdict.INVALID) {
+				return Verdict.INVALID;
+			}
+			if (result.verdict == Verdict.UNKNOWN) {
+				verdict = Verdict.UNKNOWN;
+			}
+		}
+		return verdict;
+	}
+
+	public boolean verifyCondition() {
+		return verify() == Verdict.VALID;
+	}
+
+	@Override
+	public void close() {
+		this.ctx.close();
+	}
+
+	private void explore(Continuation rest) {
+		while (rest != null && !this.failed) {
+			if (rest.index >= rest.statements.size()) {
+				rest = rest.next;
+				continue;
+			}
+			ASTNode statement = rest.statements.get(rest.index);
+			rest = new Continuation(rest.statements, rest.index + 1, rest.next);
+			if (statement instanceof AssignmentNode assignment) {
+				this.evaluator.assign(assignment);
+			}
+			else if (statement instanceof CheckNode check) {
+				BoolExpr cond = this.evaluator.evalBool(check.expr);
+				Verdict verdict = holds(check.lexeme, cond);
+				this.results.add(new CheckResult(check.lexeme, verdict));
+				// one counterexample is enough; the remaining paths cannot make the program valid
+				this.failed = verdict == Verdict.INVALID;
+			}
+			else if (statement instanceof IfNode ifNode) {
+				BoolExpr cond = this.evaluator.evalBool(ifNode.cond);
+				Map<String, ArithExpr> state = this.evaluator.state;
+				this.evaluator.state = new HashMap<>(state);
+				branch(cond, ifNode.branchThen, rest);
+				this.evaluator.state = state;
+				branch(this.ctx.mkNot(cond), ifNode.branchElse, rest);
+				return;
+			}
+			else if (!(statement instanceof PrintNode)) {
+				throw new IllegalStateException("Unexpected statement node type: " + statement.getClass());
+			}
+		}
+		if (rest == null) {
+			this.paths += 1;
+		}
+	}
+
+	private void branch(BoolExpr cond, BlockNode block, Continuation rest) {
+		BoolExpr simplified = (BoolExpr) cond.simplify();
+		if (simplified.isFalse()) {
+			return;
+		}
+		this.solver.push();
+		this.solver.add(simplified);
+		// a branch whose feasibility is unknown is explored, which can only cost time
+		if (simplified.isTrue() || this.solver.check() != Status.UNSATISFIABLE) {
+			explore(new Continuation(block.children, 0, rest));
+		}
+		this.solver.pop();
+	}
+
+	private Verdict holds(LocatedString location, BoolExpr cond) {
+		BoolExpr simplified = (BoolExpr) cond.simplify();
+		if (simplified.isTrue()) {
+			return Verdict.VALID;
+		}
+		VerificationReport report = this.config.getReport();
+		// the solver's statistics add up over all queries
+		Statistics before = report == null ? null : this.solver.getStatistics();
+		final long begin = System.nanoTime();
+		this.solver.push();
+		this.solver.add(this.ctx.mkNot(simplified));
+		Verdict verdict = Verdict.fromStatus(this.solver.check());
+		final long solveNs = System.nanoTime() - begin;
+		if (report != null) {
+			// the query is the path condition on the solver together with the negated check
+			BoolExpr query = this.ctx.mkAnd(this.solver.getAssertions());
+			report.add(location, this.config.logic, query, solveNs, verdict, before, this.solver.getStatistics());
+		}
+		this.solver.pop();
+		return verdict;
+	}
+}
@@ -0,0 +1,22 @@
+package verifier;
+
+import com.microsoft.z3.Status;
+
+public enum Verdict {
+	// the condition holds on every input
+	VALID,
+	// the solver found a counterexample
+	INVALID,
+	// the solver gave up, e.g. because of a timeout or memory limit
+	UNKNOWN,
+	;
+
+	// the solver is asked whether the negated condition is satisfiable
+	public static Verdict fromStatus(Status status) {
+		return switch (status) {
+			case UNSATISFIABLE -> VALID;
+			case SATISFIABLE -> INVALID;
+			default -> UNKNOWN;
+		};
+	}
+}
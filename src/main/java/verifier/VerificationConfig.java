@@ -0,0 +1,518 @@
+package verifier;
+
+import com.microsoft.z3.*;
+
+import java.util.*;
+
+public class VerificationConfig implements AutoCloseable {
+	public enum Encoding {
+		// unbounded integers, matching the interpreter exactly
+		INTEGER,
+		// 64-bit two's complement bit-vectors
+		BITVECTOR,
+	}
+
+	public enum Engine {
+		// weakest preconditions over the whole tree, solved in one query
+		WP,
+		// strongest postconditions, checking each check as the program streams in
+		SP,
+		// symbolic execution path by path, pruning infeasible branches
+		SYMBOLIC,
+	}
+
+	public enum Executor {
+		// walk the tree with interpret.Interpreter
+		TREE,
+		// compile the tree once into executor objects with interpret.ClosureCompiler
+		CLOSURE,
+		// compile the tree into a JVM class with interpret.BytecodeCompiler
+		BYTECODE,
+		// compile the tree into register instructions run by interpret.RegisterVM
+		VM,
+		// walk the tree, running independent assignments on large numbers on a ForkJoinPool
+		PARALLEL,
+	}
+
+	// SMT-LIB logic handed to the solver, e.g. QF_LIA or QF_NIA. null lets Z3 pick.
+	public String logic;
+	// tactics run in sequence to build the solver, e.g. simplify, solve-eqs, smt.
+	// Takes precedence over logic when non-empty.
+	public List<String> tactics;
+	// per-query limits; 0 means no limit
+	public int timeoutMs;
+	// Z3 only has a process-wide memory limit: every context made from a config sets it, to no
+	// limit if this is 0, so the config that made the latest context decides it for all of them
+	public int memoryLimitMb;
+	// null keeps Z3's default seed
+	public Integer randomSeed;
+	public boolean produceModels;
+	public boolean produceProofs;
+	// fold constant products before solving and send only nonlinear obligations to a nonlinear solver;
+	// off unless asked for, so the default solve path is the one callers have always had
+	public boolean linearize;
+	public Encoding encoding;
+	// only used by the bit-vector encoding; proves that no arithmetic wraps around
+	public boolean overflowChecks;
+	// encode if statements without checks as ite terms in one shared postcondition
+	public boolean iteIfs;
+	// summarize each distinct block once and reuse the summary for structurally identical blocks
+	public boolean blockSummaries;
+	// build the integer VC as SMT-LIB text parsed by Z3 in one call, instead of through the API
+	public boolean textVC;
+	// command for out-of-process solvers, e.g. z3 -in; empty solves inside the JVM with Z3
+	public List<String> solverCommand;
+	public int solverProcesses;
+	public Engine engine;
+	// number of configurations raced per query; 1 disables the portfolio
+	public int portfolioSize;
+	// keep verifying the input file whenever it changes, re-solving only what the change affects
+	public boolean watch;
+	// after verifying, drop the checks and the branches the solver proves are never taken
+	public boolean prune;
+	// fold constants and remove dead assignments with optimizer.Optimizer in the program that is
+	// run, after verifying the program as written
+	public boolean optimize;
+	// how the verified program is run
+	public Executor executor;
+	// how many times to run the verified program at once, sharing one compiled program
+	public int runs;
+	// limits on running the program with interpret.Interpreter; 0 means no limit
+	public int maxStatements;
+	public int maxBits;
+	public int deadlineMs;
+	// where to write the per-query and per-phase report; CSV if it ends in .csv, otherwise JSON.
+	// null writes no report.
+	public String reportPath;
+	// where to write the verified program compiled to register instructions, to run later
+	// without verifying it again. null writes nothing.
+	public String emitPath;
+	// created on first use and shared by every visitor made from this config
+	SolverBackend backend;
+	Portfolio portfolio;
+	VerificationReport report;
+
+	public VerificationConfig() {
+		this.logic = null;
+		this.tactics = new ArrayList<>();
+		this.timeoutMs = 0;
+		this.memoryLimitMb = 0;
+		this.randomSeed = null;
+		this.produceModels = true;
+		this.produceProofs = false;
+		this.linearize = false;
+		this.encoding = Encoding.INTEGER;
+		this.overflowChecks = true;
+		this.iteIfs = false;
+		this.blockSummaries = false;
+		this.textVC = false;
+		this.solverCommand = new ArrayList<>();
+		this.solverProcesses = 1;
+		this.engine = Engine.WP;
+		this.portfolioSize = 1;
+		this.runs = 1;
+		this.maxStatements = 0;
+		this.maxBits = 0;
+		this.deadlineMs = 0;
+		this.watch = false;
+		this.prune = false;
+		this.optimize = false;
+		this.executor = Executor.TREE;
+		this.reportPath = null;
+		this.backend = null;
+		this.portfolio = null;
+		this.report = null;
+	}
+
+	// copies the settings, but not the backend, portfolio or report built from them
+	public VerificationConfig copy() {
+		VerificationConfig copy = new VerificationConfig();
+		copy.logic = this.logic;
+		copy.tactics = this.tactics;
+		copy.timeoutMs = this.timeoutMs;
+		copy.memoryLimitMb = this.memoryLimitMb;
+		copy.randomSeed = this.randomSeed;
+		copy.produceModels = this.produceModels;
+		copy.produceProofs = this.produceProofs;
+		copy.linearize = this.linearize;
+		copy.encoding = this.encoding;
+		copy.overflowChecks = this.overflowChecks;
+		copy.iteIfs = this.iteIfs;
+		copy.blockSummaries = this.blockSummaries;
+		copy.textVC = this.textVC;
+		copy.solverCommand = this.solverCommand;
+		copy.solverProcesses = this.solverProcesses;
+		copy.engine = this.engine;
+		copy.portfolioSize = this.portfolioSize;
+		copy.watch = this.watch;
+		copy.prune = this.prune;
+		copy.optimize = this.optimize;
+		copy.executor = this.executor;
+		copy.runs = this.runs;
+		copy.maxStatements = this.maxStatements;
+		copy.maxBits = this.maxBits;
+		copy.deadlineMs = this.deadlineMs;
+		copy.emitPath = this.emitPath;
+		copy.reportPath = this.reportPath;
+		return copy;
+	}
+
+	// whether running the program is limited by --max-statements, --max-bits or --deadline
+	public boolean hasBudget() {
+		return this.maxStatements > 0 || this.maxBits > 0 || this.deadlineMs > 0;
+	}
+
+	// rejects settings that cannot be used together; flags may come in any order, so this runs
+	// once they are all parsed
+	public void validate() {
+		if (usesPortfolio() && usesSolverProcesses()) {
+			// the members are configurations of Z3 inside the JVM
+			throw new IllegalArgumentException("--portfolio cannot be combined with --solver");
+		}
+		// only the tree interpreter checks the limits, and it runs the program once
+		if (hasBudget() && this.executor != Executor.TREE && this.executor != Executor.PARALLEL) {
+			throw new IllegalArgumentException("--max-statements, --max-bits and --deadline need --executor=tree or parallel");
+		}
+		if (hasBudget() && this.runs > 1) {
+			throw new IllegalArgumentException("--max-statements, --max-bits and --deadline cannot be combined with --runs");
+		}
+		if (this.engine == Engine.SP) {
+			rejectWholeProgramOptions("--engine=sp");
+		}
+		if (this.engine == Engine.SYMBOLIC) {
+			rejectWholeProgramOptions("--engine=symbolic");
+		}
+		if (this.watch) {
+			// watching has an engine of its own
+			if (this.engine != Engine.WP) {
+				throw new IllegalArgumentException("--watch cannot be combined with --engine=" + this.engine.name().toLowerCase(Locale.ROOT));
+			}
+			rejectWholeProgramOptions("--watch");
+		}
+	}
+
+	// the sp and symbolic engines and --watch solve each check on their own with Z3 inside the JVM
+	// over unbounded integers, so the options for building and solving the whole-program VC would
+	// do nothing
+	private void rejectWholeProgramOptions(String mode) {
+		List<String> options = new ArrayList<>();
+		if (this.encoding != Encoding.INTEGER) {
+			options.add("--encoding=bv");
+		}
+		if (usesSolverProcesses()) {
+			options.add("--solver");
+		}
+		if (usesPortfolio()) {
+			options.add("--portfolio");
+		}
+		if (this.textVC) {
+			options.add("--vcgen=text");
+		}
+		if (this.iteIfs) {
+			options.add("--ite");
+		}
+		if (this.blockSummaries) {
+			options.add("--summaries");
+		}
+		if (this.linearize) {
+			options.add("--linearize");
+		}
+		if (!options.isEmpty()) {
+			throw new IllegalArgumentException(mode + " cannot be combined with " + String.join(", ", options));
+		}
+	}
+
+	public static String usage() {
+		return String.join("\n",
+			"  --logic=<logic>         SMT-LIB logic for the solver (e.g. QF_LIA, QF_NIA)",
+			"  --tactics=<t1,t2,...>   tactic pipeline to build the solver from (e.g. simplify,solve-eqs,smt)",
+			"  --timeout=<ms>          per-query solver timeout; a timeout gives an UNKNOWN verdict",
+			"  --memory=<mb>           solver memory limit",
+			"  --seed=<n>              solver random seed",
+			"  --models=<true|false>   whether the solver produces models",
+			"  --proofs=<true|false>   whether the solver produces proofs",
+			"  --linearize=<true|false> fold constant products and split linear from nonlinear obligations (off",
+			"                          by default)",
+			"  --encoding=<int|bv>     encode integers as unbounded integers or 64-bit bit-vectors",
+			"  --overflow-checks=<true|false> with --encoding=bv, also prove that no arithmetic overflows",
+			"  --ite=<true|false>      encode if statements without checks as ite terms instead of case splits",
+			"  --summaries=<true|false> summarize structurally identical blocks once and reuse the summary",
+			"  --vcgen=<api|text>      build the integer VC through the Z3 API or as SMT-LIB text",
+			"  --solver=<command>      run queries in solver subprocesses speaking SMT-LIB (e.g. \"z3 -in\")",
+			"  --solver-processes=<n>  number of solver subprocesses to keep running",
+			"  --engine=<wp|sp|symbolic> verify the whole tree with weakest preconditions, stream the program",
+			"                          through a forward strongest postcondition engine, or execute it",
+			"                          symbolically path by path",
+			"  --portfolio=<k>         race each query under k solver configurations and take the first answer",
+			"  --watch=<true|false>    re-verify the file whenever it changes, re-solving only affected checks",
+			"  --optimize=<true|false> fold and propagate constants, share repeated subexpressions and remove",
+			"                          dead assignments after verifying, before the program runs",
+			"  --prune=<true|false>    before running a verified program, remove its checks and the branches",
+			"                          the solver proves are never taken",
+			"  --executor=<tree|closure|bytecode|vm|parallel> run the program by walking the tree, or compile",
+			"                          it into executor objects, a JVM class or register instructions first;",
+			"                          parallel walks the tree and runs independent assignments at once",
+			"  --runs=<n>              run the verified program n times concurrently from one compiled program",
+			"  --max-statements=<n>    stop the run after n statements and loop iterations",
+			"  --max-bits=<n>          stop the run when a value needs more than n bits (at least 64)",
+			"  --deadline=<ms>         stop the run after ms milliseconds; any of these limits needs",
+			"                          --executor=tree or parallel and a single run",
+			"  --emit=<path>           write the verified program as register instructions to path; running",
+			"                          a .rbc file runs such a program without verifying it again",
+			"  --report=<path>         write the size, time and verdict of every solver query and the time of",
+			"                          every phase to a JSON file, or a CSV file if the path ends in .csv"
+		);
+	}
+
+	// returns false if the argument is not a verification flag.
+	// Malformed values throw IllegalArgumentException.
+	public boolean parseFlag(String arg) {
+		int eq = arg.indexOf('=');
+		if (!arg.startsWith("--") || eq < 0) {
+			return false;
+		}
+		String key = arg.substring(2, eq);
+		String value = arg.substring(eq + 1);
+		switch (key) {
+			case "logic" -> this.logic = value;
+			case "tactics" -> this.tactics = Arrays.stream(value.split(","))
+				.map(String::trim)
+				.filter(s -> !s.isEmpty())
+				.toList();
+			case "timeout" -> this.timeoutMs = parseNonNegative(key, value);
+			case "memory" -> this.memoryLimitMb = parseNonNegative(key, value);
+			case "seed" -> this.randomSeed = parseNonNegative(key, value);
+			case "models" -> this.produceModels = parseBoolean(key, value);
+			case "proofs" -> this.produceProofs = parseBoolean(key, value);
+			case "linearize" -> this.linearize = parseBoolean(key, value);
+			case "encoding" -> this.encoding = parseEncoding(key, value);
+			case "overflow-checks" -> this.overflowChecks = parseBoolean(key, value);
+			case "ite" -> this.iteIfs = parseBoolean(key, value);
+			case "summaries" -> this.blockSummaries = parseBoolean(key, value);
+			case "vcgen" -> this.textVC = parseVCGen(key, value);
+			case "solver" -> this.solverCommand = Arrays.stream(value.trim().split("\\s+"))
+				.filter(s -> !s.isEmpty())
+				.toList();
+			case "engine" -> this.engine = switch (value) {
+				case "wp" -> Engine.WP;
+				case "sp" -> Engine.SP;
+				case "symbolic" -> Engine.SYMBOLIC;
+				default -> throw new IllegalArgumentException("--" + key + " expects wp, sp or symbolic, got " + value);
+			};
+			case "portfolio" -> {
+				this.portfolioSize = parseNonNegative(key, value);
+				if (this.portfolioSize == 0) {
+					throw new IllegalArgumentException("--" + key + " expects at least 1, got " + value);
+				}
+			}
+			case "watch" -> this.watch = parseBoolean(key, value);
+			case "prune" -> this.prune = parseBoolean(key, value);
+			case "optimize" -> this.optimize = parseBoolean(key, value);
+			case "executor" -> this.executor = switch (value) {
+				case "tree" -> Executor.TREE;
+				case "closure" -> Executor.CLOSURE;
+				case "bytecode" -> Executor.BYTECODE;
+				case "vm" -> Executor.VM;
+				case "parallel" -> Executor.PARALLEL;
+				default -> throw new IllegalArgumentException("--" + key + " expects tree, closure, bytecode, vm or parallel, got " + value);
+			};
+			case "max-statements" -> this.maxStatements = parseNonNegative(key, value);
+			case "max-bits" -> {
+				this.maxBits = parseNonNegative(key, value);
+				if (this.maxBits > 0 && this.maxBits < Long.SIZE) {
+					throw new IllegalArgumentException("--" + key + " expects at least " + Long.SIZE + ", got " + value);
+				}
+			}
+			case "deadline" -> this.deadlineMs = parseNonNegative(key, value);
+			case "runs" -> {
+				this.runs = parseNonNegative(key, value);
+				if (this.runs == 0) {
+					throw new IllegalArgumentException("--" + key + " expects at least 1, got " + value);
+				}
+			}
+			case "report" -> {
+				if (value.isEmpty()) {
+					throw new IllegalArgumentException("--" + key + " expects a file path");
+				}
+				this.reportPath = value;
+			}
+			case "emit" -> {
+				if (value.isEmpty()) {
+					throw new IllegalArgumentException("--" + key + " expects a file path");
+				}
+				this.emitPath = value;
+			}
+			case "solver-processes" -> {
+				this.solverProcesses = parseNonNegative(key, value);
+				if (this.solverProcesses == 0) {
+					throw new IllegalArgumentException("--" + key + " expects at least 1, got " + value);
+				}
+			}
+			default -> {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int parseNonNegative(String key, String value) {
+		try {
+			int n = Integer.parseInt(value);
+			if (n >= 0) {
+				return n;
+			}
+		} catch (NumberFormatException ignored) {}
+		throw new IllegalArgumentException("--" + key + " expects a non-negative integer, got " + value);
+	}
+
+	private static boolean parseBoolean(String key, String value) {
+		if (value.equals("true") || value.equals("false")) {
+			return Boolean.parseBoolean(value);
+		}
+		throw new IllegalArgumentException("--" + key + " expects true or false, got " + value);
+	}
+
+	private static Encoding parseEncoding(String key, String value) {
+		return switch (value) {
+			case "int" -> Encoding.INTEGER;
+			case "bv" -> Encoding.BITVECTOR;
+			default -> throw new IllegalArgumentException("--" + key + " expects int or bv, got " + value);
+		};
+	}
+
+	private static boolean parseVCGen(String key, String value) {
+		return switch (value) {
+			case "api" -> false;
+			case "text" -> true;
+			default -> throw new IllegalArgumentException("--" + key + " expects api or text, got " + value);
+		};
+	}
+
+	public VerificationVisitor makeVisitor() {
+		return switch (this.encoding) {
+			case INTEGER -> this.textVC ? new SmtLibVerificationVisitor(this) : new VerificationVisitor(this);
+			case BITVECTOR -> new BitVectorVerificationVisitor(this);
+		};
+	}
+
+	public boolean usesSolverProcesses() {
+		return !this.solverCommand.isEmpty();
+	}
+
+	public synchronized SolverBackend getBackend() {
+		if (this.backend == null) {
+			if (usesSolverProcesses()) {
+				this.backend = ProcessBackend.of(this);
+			}
+			else {
+				this.backend = new Z3Backend(this);
+			}
+		}
+		return this.backend;
+	}
+
+	public boolean usesPortfolio() {
+		return this.portfolioSize > 1;
+	}
+
+	public synchronized Portfolio getPortfolio() {
+		if (this.portfolio == null) {
+			validate();
+			this.portfolio = Portfolio.of(this, this.portfolioSize);
+		}
+		return this.portfolio;
+	}
+
+	// null unless a report was asked for, so recording costs nothing otherwise
+	public synchronized VerificationReport getReport() {
+		if (this.report == null && this.reportPath != null) {
+			this.report = new VerificationReport();
+		}
+		return this.report;
+	}
+
+	@Override
+	public synchronized void close() {
+		if (this.backend != null) {
+			this.backend.close();
+			this.backend = null;
+		}
+	}
+
+	// model and proof generation can only be chosen when the context is created
+	public Context makeContext() {
+		Map<String, String> settings = new HashMap<>();
+		settings.put("model", Boolean.toString(this.produceModels));
+		settings.put("proof", Boolean.toString(this.produceProofs));
+		// the limit is global, so it is also set when there is none, to lift one an earlier
+		// config left behind
+		Global.setParameter("memory_max_size", Integer.toString(this.memoryLimitMb));
+		return new Context(settings);
+	}
+
+	public Solver makeSolver(Context ctx) {
+		return makeSolver(ctx, null);
+	}
+
+	// an explicit logic or tactic pipeline always wins over the logic chosen by linearization
+	public Solver makeSolver(Context ctx, String defaultLogic) {
+		Solver solver;
+		if (!this.tactics.isEmpty()) {
+			solver = ctx.mkSolver(makeTactic(ctx));
+		}
+		else if (this.logic != null) {
+			solver = ctx.mkSolver(this.logic);
+		}
+		else if (defaultLogic != null) {
+			solver = ctx.mkSolver(defaultLogic);
+		}
+		else {
+			solver = ctx.mkSolver();
+		}
+		Params params = ctx.mkParams();
+		if (this.timeoutMs > 0) {
+			params.add("timeout", this.timeoutMs);
+		}
+		if (this.randomSeed != null) {
+			params.add("random_seed", this.randomSeed);
+		}
+		solver.setParameters(params);
+		return solver;
+	}
+
+	private Tactic makeTactic(Context ctx) {
+		Tactic[] pipeline = new Tactic[this.tactics.size()];
+		for (int i = 0; i < pipeline.length; i += 1) {
+			pipeline[i] = ctx.mkTactic(this.tactics.get(i));
+		}
+		if (pipeline.length == 1) {
+			return pipeline[0];
+		}
+		return ctx.andThen(pipeline[0], pipeline[1], Arrays.copyOfRange(pipeline, 2, pipeline.length));
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append(this.tactics.isEmpty() ? (this.logic == null ? "default" : this.logic) : String.join(">", this.tactics));
+		if (this.iteIfs) {
+			builder.append(" ite");
+		}
+		if (this.blockSummaries) {
+			builder.append(" summaries");
+		}
+		if (this.textVC && this.encoding == Encoding.INTEGER) {
+			builder.append(" text");
+		}
+		if (this.encoding == Encoding.BITVECTOR) {
+			builder.append(this.overflowChecks ? " bv" : " bv-unchecked");
+		}
+		if (this.randomSeed != null) {
+			builder.append(" seed=").append(this.randomSeed);
+		}
+		if (this.timeoutMs > 0) {
+			builder.append(" timeout=").append(this.timeoutMs).append("ms");
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,215 @@
+package verifier;
+
+import com.microsoft.z3.*;
+import com.microsoft.z3.enumerations.Z3_decl_kind;
+import lexer.LocatedString;
+
+import java.util.*;
+
+// Collects what verification spent its time on, to be written out as JSON or CSV.
+// Every solver query is one obligation, with the locations of the checks it covers. Engines that
+// solve each check separately cover one check per query; the weakest precondition engine solves
+// the whole program at once, so its obligations cover every check, contract and invariant.
+// Solver statistics are counted per query, also when one solver answers several queries.
+// Phases are timed by the caller, in the order they ran.
+public class VerificationReport {
+	// Z3 statistics worth keeping; the rest depend too much on the tactic that ran
+	static final List<String> STATISTICS = List.of("conflicts", "decisions", "memory", "max memory");
+
+	public static class Obligation {
+		// the first check the query covers, null if it covers none
+		public LocatedString location;
+		// every check the query covers, in source order
+		public List<LocatedString> checks;
+		// null when the solver picked it
+		public String logic;
+		// distinct subterms of the query, and distinct uninterpreted constants among them
+		public int dagSize;
+		public int variables;
+		public long solveNs;
+		public Verdict verdict;
+		// only available when the query was solved in this JVM without a portfolio
+		public Map<String, String> statistics;
+	}
+
+	List<Obligation> obligations;
+	Map<String, Long> phases;
+
+	public VerificationReport() {
+		this.obligations = new ArrayList<>();
+		this.phases = new LinkedHashMap<>();
+	}
+
+	public List<Obligation> getObligations() {
+		return this.obligations;
+	}
+
+	// time spent per phase; a phase that runs more than once accumulates
+	public Map<String, Long> getPhases() {
+		return this.phases;
+	}
+
+	public synchronized void phase(String name, long ns) {
+		this.phases.merge(name, ns, Long::sum);
+	}
+
+	public void add(LocatedString location, String logic, BoolExpr query, long solveNs, Verdict verdict, Statistics before, Statistics after) {
+		add(List.of(location), logic, query, solveNs, verdict, before, after);
+	}
+
+	// after may be null if the solver is not available. Counters are taken relative to before,
+	// the solver's statistics ahead of the query, or null for a solver that ran only this query.
+	public synchronized void add(List<LocatedString> checks, String logic, BoolExpr query, long solveNs, Verdict verdict, Statistics before, Statistics after) {
+		Obligation obligation = new Obligation();
+		obligation.checks = new ArrayList<>(checks);
+		obligation.checks.sort(Comparator.comparingInt((LocatedString check) -> check.line).thenComparingInt(check -> check.col));
+		obligation.location = obligation.checks.isEmpty() ? null : obligation.checks.get(0);
+		obligation.logic = logic;
+		measure(query, obligation);
+		obligation.solveNs = solveNs;
+		obligation.verdict = verdict;
+		obligation.statistics = new LinkedHashMap<>();
+		if (after != null) {
+			for (Statistics.Entry entry : after.getEntries()) {
+				if (!STATISTICS.contains(entry.Key)) {
+					continue;
+				}
+				if (entry.isUInt() && before != null) {
+					obligation.statistics.put(entry.Key, Integer.toString(entry.getUIntValue() - counter(before, entry.Key)));
+				}
+				else {
+					obligation.statistics.put(entry.Key, entry.getValueString());
+				}
+			}
+		}
+		this.obligations.add(obligation);
+	}
+
+	private static int counter(Statistics statistics, String key) {
+		Statistics.Entry entry = statistics.get(key);
+		return entry != null && entry.isUInt() ? entry.getUIntValue() : 0;
+	}
+
+	// counts the shared subterms once, as Z3 stores them
+	private static void measure(Expr query, Obligation obligation) {
+		Set<Expr> seen = new HashSet<>();
+		Deque<Expr> pending = new ArrayDeque<>();
+		pending.push(query);
+		int variables = 0;
+		while (!pending.isEmpty()) {
+			Expr expr = pending.pop();
+			if (!seen.add(expr)) {
+				continue;
+			}
+			if (expr.isApp() && expr.getNumArgs() == 0 && expr.getFuncDecl().getDeclKind() == Z3_decl_kind.Z3_OP_UNINTERPRETED) {
+				variables += 1;
+			}
+			if (expr.isApp()) {
+				for (Expr arg : expr.getArgs()) {
+					pending.push(arg);
+				}
+			}
+		}
+		obligation.dagSize = seen.size();
+		obligation.variables = variables;
+	}
+
+	private static String millis(long ns) {
+		return String.format(Locale.ROOT, "%.3f", ns / 1e6);
+	}
+
+	private static String quote(String s) {
+		StringBuilder quoted = new StringBuilder("\"");
+		for (char c : s.toCharArray()) {
+			switch (c) {
+				case '"' -> quoted.append("\\\"");
+				case '\\' -> quoted.append("\\\\");
+				case '\n' -> quoted.append("\\n");
+				default -> quoted.append(c);
+			}
+		}
+		return quoted.append('"').toString();
+	}
+
+	public synchronized String toJson() {
+		StringBuilder json = new StringBuilder("{\n  \"phases\": {");
+		String separator = "\n";
+		for (Map.Entry<String, Long> phase : this.phases.entrySet()) {
+			json.append(separator).append("    ").append(quote(phase.getKey())).append(": ").append(millis(phase.getValue()));
+			separator = ",\n";
+		}
+		json.append("\n  },\n  \"obligations\": [");
+		separator = "\n";
+		for (Obligation obligation : this.obligations) {
+			json.append(separator).append("    {");
+			if (obligation.location != null) {
+				json.append("\"line\": ").append(obligation.location.line)
+					.append(", \"column\": ").append(obligation.location.col).append(", ");
+			}
+			if (obligation.checks.size() > 1) {
+				json.append("\"checks\": [");
+				String checkSeparator = "";
+				for (LocatedString check : obligation.checks) {
+					json.append(checkSeparator).append("{\"line\": ").append(check.line).append(", \"column\": ").append(check.col).append('}');
+					checkSeparator = ", ";
+				}
+				json.append("], ");
+			}
+			if (obligation.logic != null) {
+				json.append("\"logic\": ").append(quote(obligation.logic)).append(", ");
+			}
+			json.append("\"dagSize\": ").append(obligation.dagSize)
+				.append(", \"variables\": ").append(obligation.variables)
+				.append(", \"solveMs\": ").append(millis(obligation.solveNs))
+				.append(", \"verdict\": ").append(quote(obligation.verdict.name()))
+				.append(", \"statistics\": {");
+			String statisticSeparator = "";
+			for (Map.Entry<String, String> statistic : obligation.statistics.entrySet()) {
+				json.append(statisticSeparator).append(quote(statistic.getKey())).append(": ").append(statistic.getValue());
+				statisticSeparator = ", ";
+			}
+			json.append("}}");
+			separator = ",\n";
+		}
+		return json.append("\n  ]\n}\n").toString();
+	}
+
+	// one row per phase and per obligation; columns that do not apply are left empty. The last
+	// column lists every check the obligation covers as line:column, separated by spaces.
+	public synchronized String toCsv() {
+		StringBuilder csv = new StringBuilder("kind,name,line,column,logic,dag_size,variables,time_ms,verdict");
+		for (String statistic : STATISTICS) {
+			csv.append(',').append(statistic.replace(' ', '_'));
+		}
+		csv.append(",checks\n");
+		for (Map.Entry<String, Long> phase : this.phases.entrySet()) {
+			csv.append("phase,").append(phase.getKey()).append(",,,,,,").append(millis(phase.getValue())).append(',');
+			csv.append(",".repeat(STATISTICS.size() + 1)).append('\n');
+		}
+		for (Obligation obligation : this.obligations) {
+			csv.append("obligation,,");
+			if (obligation.location != null) {
+				csv.append(obligation.location.line).append(',').append(obligation.location.col);
+			}
+			else {
+				csv.append(',');
+			}
+			csv.append(',').append(obligation.logic == null ? "" : obligation.logic)
+				.append(',').append(obligation.dagSize)
+				.append(',').append(obligation.variables)
+				.append(',').append(millis(obligation.solveNs))
+				.append(',').append(obligation.verdict.name());
+			for (String statistic : STATISTICS) {
+				csv.append(',').append(obligation.statistics.getOrDefault(statistic, ""));
+			}
+			csv.append(',');
+			String checkSeparator = "";
+			for (LocatedString check : obligation.checks) {
+				csv.append(checkSeparator).append(check.line).append(':').append(check.col);
+				checkSeparator = " ";
+			}
+			csv.append('\n');
+		}
+		return csv.toString();
+	}
+}
@@ -2,10 +2,12 @@ package verifier;
 
 import ast.*;
 import com.microsoft.z3.*;
+import lexer.LocatedString;
 
 import java.util.*;
 
 public class VerificationVisitor extends ASTVisitor.Default {
+	VerificationConfig config;
 	Context ctx;
 	Map<String, IntExpr> vars;
 	// weakest preconditions for the current block
@@ -16,26 +18,131 @@ public class VerificationVisitor extends ASTVisitor.Default {
 	// traversal of bool and int expressions
 	Stack<BoolExpr> boolExprTree;
 	Stack<ArithExpr> intExprTree;
+	// multiplications that kept an obligation nonlinear in the last call to verify
+	List<String> nonlinearTerms;
+	// created on first use when block summaries are enabled
+	BlockSummaries summaries;
+	// > 0 while inside an if statement that was encoded with ite terms, whose children are skipped
+	int skipping;
+	// portfolio members that answered each query of the last call to verify
+	List<String> portfolioWinners;
+	// requires => wp(body, ensures) for every procedure visited
+	List<BoolExpr> procedureObligations;
+	// postconditions of the loops being visited, innermost on top
+	Stack<BoolExpr> loopPostconditions;
+	// every check, loop invariant and contract visited; the whole-program queries cover them all
+	List<LocatedString> checkLocations;
 
 	public VerificationVisitor() {
-		this.ctx = new Context();
+		this(new VerificationConfig());
+	}
+
+	public VerificationVisitor(VerificationConfig config) {
+		this.config = config;
+		this.ctx = config.makeContext();
 		this.vars = new HashMap<>();
 		this.wp = new Stack<>();
 		this.blockPostconditions = new Stack<>();
 		this.blockPostconditions.push(ctx.mkBool(true));
 		this.boolExprTree = new Stack<>();
 		this.intExprTree = new Stack<>();
+		this.nonlinearTerms = new ArrayList<>();
+		this.portfolioWinners = new ArrayList<>();
+		this.procedureObligations = new ArrayList<>();
+		this.loopPostconditions = new Stack<>();
+		this.checkLocations = new ArrayList<>();
+		this.skipping = 0;
+		this.summaries = null;
 	}
 
 	public boolean verifyCondition() {
+		return verify() == Verdict.VALID;
+	}
+
+	public Verdict verify() {
 		if (this.wp.size() != 1) {
 			throw new IllegalStateException("Verification visitor failed; number of weakest preconditions " + this.wp.size() + " not 1.");
 		}
-		Solver solver = this.ctx.mkSolver();
 		BoolExpr val = this.wp.pop();
-		solver.add(ctx.mkNot(val));
-		Status status = solver.check();
-		return status == Status.UNSATISFIABLE;
+		this.nonlinearTerms.clear();
+		this.portfolioWinners.clear();
+		if (!this.procedureObligations.isEmpty()) {
+			List<BoolExpr> all = new ArrayList<>(this.procedureObligations);
+			all.add(val);
+			val = this.ctx.mkAnd(all.toArray(new BoolExpr[0]));
+		}
+		if (!this.config.linearize) {
+			return solve(List.of(val), null);
+		}
+		Linearizer linearizer = new Linearizer(this.ctx);
+		List<BoolExpr> linear = new ArrayList<>();
+		List<BoolExpr> nonlinear = new ArrayList<>();
+		for (BoolExpr obligation : linearizer.obligations(linearizer.linearize(val))) {
+			if (linearizer.isNonlinear(obligation)) {
+				nonlinear.add(obligation);
+			}
+			else {
+				linear.add(obligation);
+			}
+		}
+		for (Expr term : linearizer.getNonlinearTerms()) {
+			this.nonlinearTerms.add(term.toString());
+		}
+		Verdict verdict = solve(linear, "QF_LIA");
+		if (verdict == Verdict.INVALID) {
+			return verdict;
+		}
+		Verdict nonlinearVerdict = solve(nonlinear, "QF_NIA");
+		if (nonlinearVerdict == Verdict.VALID) {
+			return verdict;
+		}
+		return nonlinearVerdict;
+	}
+
+	public List<String> getNonlinearTerms() {
+		return this.nonlinearTerms;
+	}
+
+	public List<String> getPortfolioWinners() {
+		return this.portfolioWinners;
+	}
+
+	// checks that all obligations hold together; no obligations trivially hold
+	Verdict solve(List<BoolExpr> obligations, String defaultLogic) {
+		if (obligations.isEmpty()) {
+			return Verdict.VALID;
+		}
+		BoolExpr query = this.ctx.mkNot(this.ctx.mkAnd(obligations.toArray(new BoolExpr[0])));
+		String logic = this.config.tactics.isEmpty() ? (this.config.logic == null ? defaultLogic : this.config.logic) : null;
+		final long begin = System.nanoTime();
+		if (this.config.usesPortfolio()) {
+			Portfolio.Result result = this.config.getPortfolio().solve(query, defaultLogic);
+			if (result.winner != null) {
+				this.portfolioWinners.add(result.winner);
+			}
+			record(logic, query, System.nanoTime() - begin, result.verdict, null);
+			return result.verdict;
+		}
+		Solver solver = this.config.makeSolver(this.ctx, defaultLogic);
+		solver.add(query);
+		if (this.config.usesSolverProcesses()) {
+			// the solver prints its assertions together with the declarations they need
+			Verdict verdict = this.config.getBackend().check(solver.toString());
+			record(logic, query, System.nanoTime() - begin, verdict, null);
+			return verdict;
+		}
+		Verdict verdict = Verdict.fromStatus(solver.check());
+		record(logic, query, System.nanoTime() - begin, verdict, solver.getStatistics());
+		return verdict;
+	}
+
+	// adds a whole-program query to the report, if one was asked for; the solver that gave the
+	// statistics answered only this query
+	void record(String logic, BoolExpr query, long solveNs, Verdict verdict, Statistics statistics) {
+		VerificationReport report = this.config.getReport();
+		if (report != null) {
+			report.add(this.checkLocations, logic, query, solveNs, verdict, null, statistics);
+		}
 	}
 
 	@Override
@@ -45,12 +152,25 @@ public class VerificationVisitor extends ASTVisitor.Default {
 
 	@Override
 	public void visitEnter(BlockNode node) {
+		if (this.skipping > 0) {
+			return;
+		}
 		super.visitEnter(node);
 		this.wp.push(this.blockPostconditions.pop());
 	}
 
+	// checks are collected even inside if statements encoded as a whole
+	@Override
+	public void visitEnter(CheckNode node) {
+		super.visitEnter(node);
+		this.checkLocations.add(node.lexeme);
+	}
+
 	@Override
 	public void visitExit(CheckNode node) {
+		if (this.skipping > 0) {
+			return;
+		}
 		super.visitExit(node);
 		if (this.boolExprTree.isEmpty()) {
 			throw new IllegalStateException(node.lexeme.toString() + " does not have precisely one expression.");
@@ -66,6 +186,9 @@ public class VerificationVisitor extends ASTVisitor.Default {
 
 	@Override
 	public void visitExit(AssignmentNode node) {
+		if (this.skipping > 0) {
+			return;
+		}
 		super.visitExit(node);
 		if (this.intExprTree.size() != 1) {
 			throw new IllegalStateException("Assignment " + node.lexeme + " has invalid right hand side.");
@@ -90,9 +213,119 @@ public class VerificationVisitor extends ASTVisitor.Default {
 		this.wp.push((BoolExpr) sub);
 	}
 
+	// wp(while c invariant I { B }, Q) = I && ((I && c => wp(B, I)) && (I && !c => Q))[M := fresh]
+	// where M are the variables B assigns, so the last two hold after any number of iterations
+	@Override
+	public void visitEnter(WhileNode node) {
+		if (this.skipping > 0) {
+			return;
+		}
+		super.visitEnter(node);
+		this.checkLocations.add(node.lexeme);
+		if (this.wp.isEmpty()) {
+			throw new IllegalStateException("No postcondition at " + node.lexeme);
+		}
+		this.loopPostconditions.push(this.wp.pop());
+		this.blockPostconditions.push(new SymbolicEvaluator(this.ctx).evalBool(node.invariant));
+	}
+
+	@Override
+	public void visitExit(WhileNode node) {
+		if (this.skipping > 0) {
+			return;
+		}
+		super.visitExit(node);
+		if (this.boolExprTree.size() < 2) {
+			throw new IllegalStateException("While loop at " + node.lexeme + " must have a condition and an invariant.");
+		}
+		if (this.wp.isEmpty()) {
+			throw new IllegalStateException("No weakest precondition for the body of the loop at " + node.lexeme + ".");
+		}
+		BoolExpr invariant = this.boolExprTree.pop();
+		BoolExpr cond = this.boolExprTree.pop();
+		BoolExpr preserved = this.ctx.mkImplies(this.ctx.mkAnd(invariant, cond), this.wp.pop());
+		BoolExpr exit = this.ctx.mkImplies(this.ctx.mkAnd(invariant, this.ctx.mkNot(cond)), this.loopPostconditions.pop());
+		Set<String> modified = new TreeSet<>();
+		SymbolicEvaluator.assigned(node.body.children, modified);
+		SymbolicEvaluator havoc = new SymbolicEvaluator(this.ctx);
+		havoc.havoc(modified);
+		this.wp.push(this.ctx.mkAnd(invariant, substitute(this.ctx.mkAnd(preserved, exit), havoc.state)));
+	}
+
+	// a procedure body is verified once, against its own contract, with the parameters and the
+	// result as free variables
+	@Override
+	public void visitEnter(ProcedureNode node) {
+		super.visitEnter(node);
+		this.checkLocations.add(node.lexeme);
+		BoolExpr ensures = node.ensures == null ? this.ctx.mkBool(true) : new SymbolicEvaluator(this.ctx).evalBool(node.ensures);
+		this.blockPostconditions.push(ensures);
+	}
+
+	@Override
+	public void visitExit(ProcedureNode node) {
+		super.visitExit(node);
+		if (this.wp.isEmpty()) {
+			throw new IllegalStateException("No weakest precondition for procedure " + node.name.s + ".");
+		}
+		BoolExpr requires = node.requires == null ? this.ctx.mkBool(true) : new SymbolicEvaluator(this.ctx).evalBool(node.requires);
+		this.procedureObligations.add(this.ctx.mkImplies(requires, this.wp.pop()));
+	}
+
+	// only the contract is used at a call site:
+	// wp(x := call p(args), Q) = requires(args) && (ensures(args, r) => Q[x := r]) for a fresh r
+	@Override
+	public void visitEnter(CallNode node) {
+		super.visitEnter(node);
+		this.checkLocations.add(node.lexeme);
+	}
+
+	@Override
+	public void visitExit(CallNode node) {
+		if (this.skipping > 0) {
+			return;
+		}
+		super.visitExit(node);
+		if (this.intExprTree.size() < node.args.size()) {
+			throw new IllegalStateException("Call " + node.lexeme + " does not have " + node.args.size() + " arguments.");
+		}
+		if (this.wp.isEmpty()) {
+			throw new IllegalStateException("No weakest precondition at " + node.lexeme + ".");
+		}
+		ArithExpr[] args = new ArithExpr[node.args.size()];
+		for (int i = args.length - 1; i >= 0; i -= 1) {
+			args[i] = this.intExprTree.pop();
+		}
+		IntExpr lhs = this.vars.get(node.lhs.s);
+		if (lhs == null) {
+			lhs = this.ctx.mkIntConst(node.lhs.s);
+			this.vars.put(node.lhs.s, lhs);
+		}
+		ArithExpr result = (ArithExpr) this.ctx.mkFreshConst(node.name.s, this.ctx.getIntSort());
+		SymbolicEvaluator evaluator = new SymbolicEvaluator(this.ctx);
+		BoolExpr requires = evaluator.contract(node.procedure, node.procedure.requires, List.of(args), null);
+		BoolExpr ensures = evaluator.contract(node.procedure, node.procedure.ensures, List.of(args), result);
+		BoolExpr wp = (BoolExpr) this.wp.pop().substitute(lhs, result);
+		this.wp.push(this.ctx.mkAnd(requires, this.ctx.mkImplies(ensures, wp)));
+	}
+
 	@Override
 	public void visitEnter(IfNode node) {
 		super.visitEnter(node);
+		if (this.skipping > 0) {
+			this.skipping += 1;
+			return;
+		}
+		if (summarizesBlocks() && BlockSummaries.canSummarize(node.branchThen.children) && BlockSummaries.canSummarize(node.branchElse.children)) {
+			applySummaries(node);
+			this.skipping = 1;
+			return;
+		}
+		if (convertsIfs() && SymbolicEvaluator.isCheckFree(node.branchThen.children) && SymbolicEvaluator.isCheckFree(node.branchElse.children)) {
+			convertIf(node);
+			this.skipping = 1;
+			return;
+		}
 		// duplicate the current weakest precondition for each branch
 		if (this.wp.isEmpty()) {
 			throw new IllegalStateException("No postcondition at " + node.lexeme);
@@ -105,6 +338,10 @@ public class VerificationVisitor extends ASTVisitor.Default {
 	@Override
 	public void visitExit(IfNode node) {
 		super.visitExit(node);
+		if (this.skipping > 0) {
+			this.skipping -= 1;
+			return;
+		}
 		if (this.wp.size() < 2) {
 			throw new IllegalStateException("There must be precisely two weakest preconditions at " + node.lexeme + ".");
 		}
@@ -118,8 +355,79 @@ public class VerificationVisitor extends ASTVisitor.Default {
 		this.wp.push(next);
 	}
 
+	// whether if statements without checks are encoded with ite terms
+	boolean convertsIfs() {
+		return this.config.iteIfs;
+	}
+
+	// whether the branches of if statements are handled through memoized block summaries
+	boolean summarizesBlocks() {
+		return this.config.blockSummaries;
+	}
+
+	public BlockSummaries getSummaries() {
+		return this.summaries;
+	}
+
+	// wp(if c then B1 else B2, Q) = (c => checks(B1)) && (!c => checks(B2)) && Q[ite(c, effects(B1), effects(B2))]
+	private void applySummaries(IfNode node) {
+		if (this.wp.isEmpty()) {
+			throw new IllegalStateException("No postcondition at " + node.lexeme);
+		}
+		if (this.summaries == null) {
+			this.summaries = new BlockSummaries(this.ctx);
+		}
+		SymbolicEvaluator evaluator = new SymbolicEvaluator(this.ctx);
+		BoolExpr cond = evaluator.evalBool(node.cond);
+		BlockSummaries.Instance branchThen = this.summaries.summarize(node.branchThen);
+		BlockSummaries.Instance branchElse = this.summaries.summarize(node.branchElse);
+		Map<String, ArithExpr> joined = evaluator.join(cond, branchThen.effects, branchElse.effects);
+		BoolExpr wp = substitute(this.wp.pop(), joined);
+		this.wp.push(this.ctx.mkAnd(
+			this.ctx.mkImplies(cond, branchThen.checks),
+			this.ctx.mkImplies(this.ctx.mkNot(cond), branchElse.checks),
+			wp
+		));
+	}
+
+	// simultaneously replaces each variable by its value in state
+	private BoolExpr substitute(BoolExpr expr, Map<String, ArithExpr> state) {
+		List<Expr> from = new ArrayList<>();
+		List<Expr> to = new ArrayList<>();
+		for (Map.Entry<String, ArithExpr> entry : state.entrySet()) {
+			IntExpr var = this.ctx.mkIntConst(entry.getKey());
+			if (!entry.getValue().equals(var)) {
+				from.add(var);
+				to.add(entry.getValue());
+			}
+		}
+		if (from.isEmpty()) {
+			return expr;
+		}
+		return (BoolExpr) expr.substitute(from.toArray(new Expr[0]), to.toArray(new Expr[0]));
+	}
+
+	// replaces each variable assigned in either branch by ite(cond, value after then, value after
+	// else) in the postcondition, instead of duplicating the postcondition for both branches
+	private void convertIf(IfNode node) {
+		if (this.wp.isEmpty()) {
+			throw new IllegalStateException("No postcondition at " + node.lexeme);
+		}
+		SymbolicEvaluator evaluator = new SymbolicEvaluator(this.ctx);
+		BoolExpr cond = evaluator.evalBool(node.cond);
+		evaluator.run(node.branchThen.children);
+		Map<String, ArithExpr> stateThen = evaluator.state;
+		evaluator.state = new HashMap<>();
+		evaluator.run(node.branchElse.children);
+		Map<String, ArithExpr> joined = evaluator.join(cond, stateThen, evaluator.state);
+		this.wp.push(substitute(this.wp.pop(), joined));
+	}
+
 	@Override
 	public void visitExit(IntOperatorNode node) {
+		if (this.skipping > 0) {
+			return;
+		}
 		super.visitExit(node);
 		ArithExpr expr;
 		switch (node.op) {
@@ -163,6 +471,9 @@ public class VerificationVisitor extends ASTVisitor.Default {
 
 	@Override
 	public void visitExit(BoolOperatorNode node) {
+		if (this.skipping > 0) {
+			return;
+		}
 		super.visitExit(node);
 		BoolExpr expr;
 		switch (node.op) {
@@ -198,6 +509,9 @@ public class VerificationVisitor extends ASTVisitor.Default {
 
 	@Override
 	public void visitExit(BoolCompareNode node) {
+		if (this.skipping > 0) {
+			return;
+		}
 		super.visitExit(node);
 		if (this.intExprTree.size() != 2) {
 			throw new IllegalStateException("Comparison at " + node.lexeme + " does not have precisely two subexpressions.");
@@ -224,6 +538,9 @@ public class VerificationVisitor extends ASTVisitor.Default {
 
 	@Override
 	public void visit(LabelNode node) {
+		if (this.skipping > 0) {
+			return;
+		}
 		super.visit(node);
 		IntExpr var;
 		if (this.vars.containsKey(node.label.s)) {
@@ -238,6 +555,9 @@ public class VerificationVisitor extends ASTVisitor.Default {
 
 	@Override
 	public void visit(IntConstantNode node) {
+		if (this.skipping > 0) {
+			return;
+		}
 		super.visit(node);
 		IntExpr expr = ctx.mkInt(node.lexeme.s);
 		this.intExprTree.push(expr);
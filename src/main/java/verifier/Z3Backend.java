@@ -0,0 +1,27 @@
+package verifier;
+
+import com.microsoft.z3.*;
+
+// Solves scripts with the Z3 library inside this JVM. This is the default backend.
+public class Z3Backend implements SolverBackend {
+	VerificationConfig config;
+	Context ctx;
+
+	public Z3Backend(VerificationConfig config) {
+		this.config = config;
+		this.ctx = config.makeContext();
+	}
+
+	// a Z3 context must not be used from two threads at once
+	@Override
+	public synchronized Verdict check(String script) {
+		Solver solver = this.config.makeSolver(this.ctx);
+		solver.add(this.ctx.parseSMTLIB2String(script, null, null, null, null));
+		return Verdict.fromStatus(solver.check());
+	}
+
+	@Override
+	public synchronized void close() {
+		this.ctx.close();
+	}
+}
@@ -0,0 +1,45 @@
+package interpret;
+
+import ast.ASTNode;
+import ast.AssignmentNode;
+import ast.Parser;
+import ast.ProgramNode;
+import ast.WhileNode;
+import lexer.Lexer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+public class RangeAnalysisTest {
+
+    private ProgramNode parse(String filename) throws IOException {
+        Lexer lexer = Lexer.make(filename);
+        ASTNode program = new Parser(lexer).parseProgram();
+        Assert.assertTrue("Program " + filename + " failed parsing.", lexer.dumpLogs() && program != null);
+        return (ProgramNode) program;
+    }
+
+    // the right-hand side of the assignment to variable among statements
+    private static ASTNode rhs(List<ASTNode> statements, String variable) {
+        for (ASTNode stmt : statements) {
+            if (stmt instanceof AssignmentNode && ((AssignmentNode) stmt).lhs.s.equals(variable)) {
+                return ((AssignmentNode) stmt).rhs;
+            }
+        }
+        throw new AssertionError("No assignment to " + variable);
+    }
+
+    @Test
+    public void boundsOnlyWhatCannotGrow() throws IOException {
+        ProgramNode program = parse("src/test/java/interpret/pass/test1.txt");
+        RangeAnalysis ranges = RangeAnalysis.analyze(program, SlotResolver.resolve(program));
+        List<ASTNode> loop = ((WhileNode) program.children.get(2)).body.children;
+        // i < 10 bounds the counter, but squaring x grows it without bound
+        Assert.assertTrue(ranges.fitsLong(rhs(loop, "i")));
+        Assert.assertFalse(ranges.fitsLong(rhs(loop, "x")));
+        // nothing is assumed about parameters, whatever the calls pass
+        Assert.assertFalse(ranges.fitsLong(rhs(program.procedures.get(0).body.children, "r")));
+    }
+}
@@ -2,7 +2,21 @@ package interpreter;
 
 import ast.ASTNode;
 import ast.Parser;
+import ast.ProcedureNode;
+import ast.ProgramNode;
+import interpret.Budget;
+import interpret.BudgetExceededException;
+import interpret.BytecodeCompiler;
+import interpret.BytecodeProgram;
+import interpret.CancellationToken;
+import interpret.ClosureCompiler;
+import interpret.CompiledProgram;
 import interpret.Interpreter;
+import interpret.Program;
+import interpret.ProgramRunner;
+import interpret.RegisterCompiler;
+import interpret.RegisterProgram;
+import interpret.SlotResolver;
 import lexer.Lexer;
 import logging.LogLevel;
 import logging.LogType;
@@ -10,9 +24,16 @@ import logging.Logger;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 public class InterpreterTest {
 
@@ -22,6 +43,10 @@ public class InterpreterTest {
     }
 
     private String[] interpretFileWithStdoutAndStderr(String filename) throws IOException {
+        return interpretFileWithStdoutAndStderr(filename, program -> new Interpreter().run(program));
+    }
+
+    private String[] interpretFileWithStdoutAndStderr(String filename, Consumer<ASTNode> executor) throws IOException {
         PrintStream originalOut = System.out;
         PrintStream originalErr = System.err;
 
@@ -42,8 +67,7 @@ public class InterpreterTest {
 
             Assert.assertTrue("Program " + filename + " failed parsing.", parsedOk);
 
-            Interpreter interpreter = new Interpreter();
-            interpreter.run(program);
+            executor.accept(program);
 
         } finally {
             System.out.flush();
@@ -71,6 +95,302 @@ public class InterpreterTest {
         Assert.assertEquals("z: 8\n", out);
     }
 
+    @Test
+    public void procedureCalls() throws IOException {
+        // the callee's r and a are its own; the caller's are untouched
+        String out = interpretFile("src/test/java/interpreter/pass/test4.txt");
+        Assert.assertEquals("y: 7\nz: 21\nr: 5\na: -7\n", out);
+    }
+
+    @Test
+    public void whileLoops() throws IOException {
+        String out = interpretFile("src/test/java/interpreter/pass/test5.txt");
+        Assert.assertEquals("f: 120\ni: 5\n", out);
+    }
+
+    @Test
+    public void longOverflowFallsBackToBigInteger() throws IOException {
+        String out = interpretFile("src/test/java/interpreter/pass/test6.txt");
+        Assert.assertEquals(
+            "big: 9223372036854775808\nback: 9223372036854775807\nmin: -9223372036854775808\n"
+            + "neg: 9223372036854775808\nsq: 85070591730234615847396907784232501249\nd: 7\n", out);
+    }
+
+    @Test
+    public void compiledMatchesTree() throws IOException {
+        for (int i = 1; i <= 8; i++) {
+            String filename = "src/test/java/interpreter/pass/test" + i + ".txt";
+            String[] tree = interpretFileWithStdoutAndStderr(filename);
+            String[] closure = interpretFileWithStdoutAndStderr(filename, program -> ClosureCompiler.compile(program).run());
+            Assert.assertArrayEquals("Program " + filename + " ran differently when compiled.", tree, closure);
+            String[] bytecode = interpretFileWithStdoutAndStderr(filename, program -> BytecodeCompiler.compile(program).run());
+            Assert.assertArrayEquals("Program " + filename + " ran differently as bytecode.", tree, bytecode);
+            String[] vm = interpretFileWithStdoutAndStderr(filename, program -> RegisterCompiler.compile(program).run());
+            Assert.assertArrayEquals("Program " + filename + " ran differently on the register VM.", tree, vm);
+            String[] loaded = interpretFileWithStdoutAndStderr(filename, program -> reload(RegisterCompiler.compile(program)).run());
+            Assert.assertArrayEquals("Program " + filename + " ran differently after writing and reading it.", tree, loaded);
+        }
+    }
+
+    @Test
+    public void parallelMatchesTree() throws IOException {
+        // test9 multiplies numbers of about 100000 bits, so its independent assignments run in parallel
+        for (int i = 1; i <= 9; i++) {
+            String filename = "src/test/java/interpreter/pass/test" + i + ".txt";
+            String[] tree = interpretFileWithStdoutAndStderr(filename);
+            String[] parallel = interpretFileWithStdoutAndStderr(filename,
+                program -> new Interpreter(ForkJoinPool.commonPool()).run(program));
+            Assert.assertArrayEquals("Program " + filename + " ran differently in parallel.", tree, parallel);
+        }
+        Assert.assertEquals("i: 16\nd: 0\ne: 0\n", interpretFile("src/test/java/interpreter/pass/test9.txt"));
+    }
+
+    @Test
+    public void parallelReportsFirstError() throws IOException {
+        // b and c both read an unassigned variable and may fail in either order
+        String filename = "src/test/java/interpreter/pass/test10.txt";
+        for (int run = 0; run < 5; run++) {
+            try {
+                interpretFileWithStdoutAndStderr(filename, program -> new Interpreter(ForkJoinPool.commonPool()).run(program));
+                Assert.fail("Program " + filename + " should fail.");
+            } catch (RuntimeException e) {
+                Assert.assertEquals("Variable \"y\" used before assigned at line 10, column 9", e.getMessage());
+            }
+        }
+    }
+
+    private static List<Consumer<ASTNode>> executors() {
+        return List.of(
+            program -> new Interpreter().run(program),
+            program -> ClosureCompiler.compile(program).run(),
+            program -> BytecodeCompiler.compile(program).run(),
+            program -> RegisterCompiler.compile(program).run(),
+            program -> reload(RegisterCompiler.compile(program)).run());
+    }
+
+    @Test
+    public void procedureLocalsShadowMainBlock() throws IOException {
+        // twice numbers x, y, t and the main block y, t, x, z: each has a frame of its own
+        String filename = "src/test/java/interpreter/pass/test13.txt";
+        ProgramNode program = (ProgramNode) new Parser(Lexer.make(filename)).parseProgram();
+        ProcedureNode twice = program.procedures.get(0);
+        SlotResolver slots = SlotResolver.resolve(program);
+        Assert.assertEquals(4, slots.frameSize());
+        Assert.assertEquals(3, slots.frameSize(twice));
+        Assert.assertEquals(1, slots.resultSlot(twice));
+        for (Consumer<ASTNode> executor : executors()) {
+            Assert.assertEquals("t: 100\nx: 5\ny: 1\nz: 10\n", interpretFileWithStdoutAndStderr(filename, executor)[0]);
+        }
+    }
+
+    @Test
+    public void unassignedReadReported() throws IOException {
+        // get reads b, which only the main block assigns
+        String filename = "src/test/java/interpreter/pass/test14.txt";
+        for (Consumer<ASTNode> executor : executors()) {
+            try {
+                interpretFileWithStdoutAndStderr(filename, executor);
+                Assert.fail("Program " + filename + " should fail.");
+            } catch (RuntimeException e) {
+                Assert.assertEquals("Variable \"b\" used before assigned at line 2, column 13", e.getMessage());
+            }
+        }
+    }
+
+    private BudgetExceededException.Reason stopReason(String filename, Budget budget, CancellationToken cancellation) throws IOException {
+        try {
+            interpretFileWithStdoutAndStderr(filename, program -> new Interpreter(null, budget, cancellation).run(program));
+        } catch (BudgetExceededException e) {
+            return e.reason;
+        }
+        Assert.fail("Program " + filename + " should have been stopped.");
+        return null;
+    }
+
+    @Test
+    public void statementBudgetStopsRun() throws IOException {
+        // test5 executes 17 statements and 5 loop iterations
+        Assert.assertEquals(BudgetExceededException.Reason.STATEMENTS,
+            stopReason("src/test/java/interpreter/pass/test5.txt", new Budget(10, 0, 0), null));
+        Assert.assertEquals("f: 120\ni: 5\n", interpretFileWithStdoutAndStderr("src/test/java/interpreter/pass/test5.txt",
+            program -> new Interpreter(null, new Budget(22, 0, 0), null).run(program))[0]);
+    }
+
+    @Test
+    public void bitBudgetStopsRepeatedSquaring() throws IOException {
+        Assert.assertEquals(BudgetExceededException.Reason.BITS,
+            stopReason("src/test/java/interpreter/pass/test11.txt", new Budget(0, 1 << 16, 0), null));
+    }
+
+    @Test
+    public void deadlineStopsEndlessLoop() throws IOException {
+        Assert.assertEquals(BudgetExceededException.Reason.TIME,
+            stopReason("src/test/java/interpreter/pass/test12.txt", new Budget(0, 0, 100), null));
+    }
+
+    @Test
+    public void cancellationStopsEndlessLoop() throws IOException {
+        CancellationToken cancellation = new CancellationToken();
+        Thread canceller = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ignored) {}
+            cancellation.cancel();
+        });
+        canceller.start();
+        Assert.assertEquals(BudgetExceededException.Reason.CANCELLED,
+            stopReason("src/test/java/interpreter/pass/test12.txt", Budget.UNLIMITED, cancellation));
+    }
+
+    private static RegisterProgram reload(RegisterProgram program) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            program.write(bytes);
+            return RegisterProgram.read(new ByteArrayInputStream(bytes.toByteArray()));
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void malformedRegisterProgramRejected() throws IOException {
+        ASTNode program = new Parser(Lexer.make("src/test/java/interpreter/pass/test7.txt")).parseProgram();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        RegisterCompiler.compile(program).write(bytes);
+        byte[] truncated = Arrays.copyOf(bytes.toByteArray(), bytes.size() / 2);
+        RegisterProgram.read(new ByteArrayInputStream(truncated));
+    }
+
+    // a function as RegisterProgram.write writes it, with no long constants and no reads that can fail
+    private static void writeFunction(DataOutputStream out, String name, int frameSize, int resultSlot,
+                                      int[] code, byte[][] bigs, String... strings) throws IOException {
+        out.writeUTF(name);
+        out.writeInt(frameSize);
+        out.writeInt(0);
+        out.writeInt(resultSlot);
+        out.writeInt(resultSlot < 0 ? -1 : 0);
+        out.writeInt(code.length);
+        for (int value : code) {
+            out.writeInt(value);
+        }
+        out.writeInt(0);
+        out.writeInt(bigs.length);
+        for (byte[] big : bigs) {
+            out.writeInt(big.length);
+            out.write(big);
+        }
+        out.writeInt(strings.length);
+        for (String string : strings) {
+            out.writeUTF(string);
+        }
+        out.writeInt(code.length / 2);
+        for (int i = 0; i < code.length / 2; i++) {
+            out.writeInt(-1);
+        }
+    }
+
+    // the header of RegisterProgram.write: "RBC", format 1, and the number of functions
+    private static DataOutputStream registerProgram(ByteArrayOutputStream bytes, int functions) throws IOException {
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0x52424301);
+        out.writeInt(functions);
+        return out;
+    }
+
+    @Test(expected = IOException.class)
+    public void emptyRegisterConstantRejected() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = registerProgram(bytes, 1);
+        writeFunction(out, "main", 1, -1, new int[]{0, 0, 0, 0}, new byte[][]{{}});
+        RegisterProgram.read(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    @Test(expected = IOException.class)
+    public void registerLengthBeyondStreamRejected() throws IOException {
+        // a code array of Integer.MAX_VALUE ints, in a stream that ends right after its length
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = registerProgram(bytes, 1);
+        out.writeUTF("main");
+        out.writeInt(1);
+        out.writeInt(0);
+        out.writeInt(-1);
+        out.writeInt(-1);
+        out.writeInt(Integer.MAX_VALUE);
+        RegisterProgram.read(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    @Test(expected = IOException.class)
+    public void recursiveRegisterCallRejected() throws IOException {
+        // main calls p, and p calls itself
+        int[] call = {19, 0, 1, 0, 0, 0, 0, 0};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = registerProgram(bytes, 2);
+        writeFunction(out, "main", 1, -1, call, new byte[0][]);
+        writeFunction(out, "p", 1, 0, call, new byte[0][], "Result of p not assigned");
+        RegisterProgram.read(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    @Test
+    public void concurrentRunsShareOneProgram() throws IOException {
+        String filename = "src/test/java/interpreter/pass/test7.txt";
+        String expected = interpretFile(filename);
+        ASTNode tree = new Parser(Lexer.make(filename)).parseProgram();
+        List<Program> programs = List.of(
+            ClosureCompiler.compile(tree), BytecodeCompiler.compile(tree), RegisterCompiler.compile(tree));
+        try (ProgramRunner runner = new ProgramRunner(8)) {
+            for (Program program : programs) {
+                List<ProgramRunner.Run> runs = runner.runAll(program, 200);
+                Assert.assertEquals(200, runs.size());
+                for (ProgramRunner.Run run : runs) {
+                    Assert.assertNull(run.error);
+                    Assert.assertEquals("Concurrent run of " + filename + " printed differently.",
+                        expected, run.output.replace("\r\n", "\n"));
+                }
+            }
+        }
+    }
+
+    private long averageRunMs(Runnable run) {
+        // warmup
+        for (int i = 0; i < 30; i++) {
+            run.run();
+        }
+        int numRuns = 30;
+        final long begin = System.nanoTime();
+        for (int i = 0; i < numRuns; i++) {
+            run.run();
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin) / numRuns;
+    }
+
+    @Test
+    public void executorsTime() throws IOException {
+        String filename = "src/test/java/interpreter/pass/test7.txt";
+        ASTNode program = new Parser(Lexer.make(filename)).parseProgram();
+        CompiledProgram compiled = ClosureCompiler.compile(program);
+        BytecodeProgram bytecode = BytecodeCompiler.compile(program);
+        RegisterProgram registers = RegisterCompiler.compile(program);
+        PrintStream originalOut = System.out;
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        long treeMs;
+        long closureMs;
+        long bytecodeMs;
+        long vmMs;
+        try {
+            treeMs = averageRunMs(() -> new Interpreter().run(program));
+            closureMs = averageRunMs(compiled::run);
+            bytecodeMs = averageRunMs(bytecode::run);
+            vmMs = averageRunMs(registers::run);
+        } finally {
+            System.setOut(originalOut);
+        }
+        System.out.println("Average time for running " + filename + " by walking the tree is " + treeMs + "ms");
+        System.out.println("Average time for running " + filename + " compiled to executors is " + closureMs + "ms");
+        System.out.println("Average time for running " + filename + " compiled to bytecode is " + bytecodeMs + "ms");
+        System.out.println("Average time for running " + filename + " on the register VM is " + vmMs + "ms");
+        System.out.println();
+    }
+
     // ---------- existing FAIL test ----------
 
     @Test
@@ -0,0 +1,86 @@
+package optimizer;
+
+import ast.ASTNode;
+import ast.BlockNode;
+import ast.Parser;
+import interpret.Interpreter;
+import lexer.Lexer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+public class OptimizerTest {
+
+    private ASTNode parse(String filename) throws IOException {
+        Lexer lexer = Lexer.make(filename);
+        ASTNode program = new Parser(lexer).parseProgram();
+        Assert.assertTrue("Program " + filename + " failed parsing.", lexer.dumpLogs() && program != null);
+        return program;
+    }
+
+    private String run(ASTNode program) {
+        PrintStream originalOut = System.out;
+        ByteArrayOutputStream outBaos = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outBaos));
+        try {
+            new Interpreter().run(program);
+        } finally {
+            System.out.flush();
+            System.setOut(originalOut);
+        }
+        return outBaos.toString().replace("\r\n", "\n");
+    }
+
+    private Optimizer optimizeAndCompare(String filename) throws IOException {
+        String expected = run(parse(filename));
+        ASTNode program = parse(filename);
+        Optimizer optimizer = new Optimizer();
+        optimizer.optimize(program);
+        Assert.assertEquals("Program " + filename + " ran differently when optimized.", expected, run(program));
+        return optimizer;
+    }
+
+    @Test
+    public void foldsAndSimplifiesExpressions() throws IOException {
+        Optimizer optimizer = optimizeAndCompare("src/test/java/optimizer/pass/test1.txt");
+        // (1 - 2 * 1) * (3 - 2 - 1) is folded to 0, deciding the if
+        Assert.assertEquals(1, optimizer.getDecidedIfs());
+        Assert.assertTrue(optimizer.getFolded() > 0);
+        // a * 1 + 0, i * 0, s - s and - - s
+        Assert.assertTrue(optimizer.getSimplified() >= 4);
+        // i * i - 3 is computed once per iteration
+        Assert.assertEquals(1, optimizer.getSharedExpressions());
+        // a and b are only read by the folded expressions
+        Assert.assertEquals(2, optimizer.getRemovedAssignments());
+    }
+
+    @Test
+    public void procedureBodiesAndChecks() throws IOException {
+        Optimizer optimizer = optimizeAndCompare("src/test/java/optimizer/pass/test2.txt");
+        Assert.assertEquals(1, optimizer.getRemovedChecks());
+        Assert.assertEquals(1, optimizer.getDecidedIfs());
+        // x after propagation, and both assignments of t in sq
+        Assert.assertEquals(3, optimizer.getRemovedAssignments());
+        Assert.assertEquals(1, optimizer.getSharedExpressions());
+    }
+
+    @Test
+    public void straightLineChecksDisappear() throws IOException {
+        ASTNode program = parse("src/test/java/verifier/pass/test16a.txt");
+        Optimizer optimizer = new Optimizer();
+        optimizer.optimize(program);
+        // every check is decided by constants and nothing is printed, so nothing is left
+        Assert.assertTrue(((BlockNode) program).children.isEmpty());
+        Assert.assertTrue(optimizer.getRemovedChecks() > 0);
+    }
+
+    @Test
+    public void fixturesRunUnchanged() throws IOException {
+        for (int i = 1; i <= 8; i++) {
+            optimizeAndCompare("src/test/java/interpreter/pass/test" + i + ".txt");
+        }
+    }
+}
@@ -2,10 +2,13 @@ package parser;
 
 import ast.*;
 import lexer.Lexer;
+import lexer.LocatedString;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class ParsingTest {
 	void testPass(String filename) {
@@ -32,12 +35,70 @@ public class ParsingTest {
 		}
 	}
 
+	// records the events it receives, one string each
+	static class RecordingListener implements StatementListener {
+		List<String> events = new ArrayList<>();
+
+		@Override
+		public void statement(ASTNode statement) {
+			events.add(statement.getClass().getSimpleName());
+		}
+
+		@Override
+		public void enterIf(LocatedString lexeme, ASTNode cond) {
+			events.add("if");
+		}
+
+		@Override
+		public void enterElse() {
+			events.add("else");
+		}
+
+		@Override
+		public void exitIf() {
+			events.add("end");
+		}
+	}
+
+	List<String> stream(String filename) {
+		try {
+			Lexer lexer = Lexer.make(filename);
+			RecordingListener listener = new RecordingListener();
+			boolean pass = new Parser(lexer).streamProgram(listener) && lexer.dumpLogs();
+			return pass ? listener.events : null;
+		} catch (IOException e) {
+			Assert.fail("Could not open file " + filename);
+			return null;
+		}
+	}
+
+	@Test
+	public void streaming() {
+		Assert.assertEquals(
+			List.of("AssignmentNode", "AssignmentNode", "if", "AssignmentNode", "else", "AssignmentNode", "end", "PrintNode"),
+			stream("src/test/java/parser/pass/test2.txt")
+		);
+		Assert.assertNotNull(stream("src/test/java/parser/pass/test1.txt"));
+		Assert.assertNotNull(stream("src/test/java/parser/pass/test3.txt"));
+		Assert.assertNotNull(stream("src/test/java/parser/pass/test4.txt"));
+		Assert.assertNull(stream("src/test/java/parser/fail/test1.txt"));
+		Assert.assertNull(stream("src/test/java/parser/fail/test2.txt"));
+		Assert.assertNull(stream("src/test/java/parser/fail/test3.txt"));
+		Assert.assertNull(stream("src/test/java/parser/fail/test4.txt"));
+		Assert.assertNull(stream("src/test/java/parser/fail/test5.txt"));
+		// procedures and loops need the whole tree
+		Assert.assertNull(stream("src/test/java/parser/pass/test5.txt"));
+		Assert.assertNull(stream("src/test/java/parser/pass/test6.txt"));
+	}
+
 	@Test
 	public void pass() {
 		testPass("src/test/java/parser/pass/test1.txt");
 		testPass("src/test/java/parser/pass/test2.txt");
 		testPass("src/test/java/parser/pass/test3.txt");
 		testPass("src/test/java/parser/pass/test4.txt");
+		testPass("src/test/java/parser/pass/test5.txt");
+		testPass("src/test/java/parser/pass/test6.txt");
 	}
 
 	@Test
@@ -47,5 +108,7 @@ public class ParsingTest {
 		testFail("src/test/java/parser/fail/test3.txt");
 		testFail("src/test/java/parser/fail/test4.txt");
 		testFail("src/test/java/parser/fail/test5.txt");
+		testFail("src/test/java/parser/fail/test6.txt");
+		testFail("src/test/java/parser/fail/test7.txt");
 	}
 }
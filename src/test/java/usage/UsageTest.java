@@ -32,10 +32,15 @@ public class UsageTest {
 	public void invalidUsage() {
 		Assert.assertTrue(testUsage("src/test/java/usage/pass/test1.txt"));
 		Assert.assertTrue(testUsage("src/test/java/usage/pass/test2.txt"));
+		Assert.assertTrue(testUsage("src/test/java/usage/pass/test3.txt"));
 
 		Assert.assertFalse(testUsage("src/test/java/usage/fail/test1.txt"));
 		Assert.assertFalse(testUsage("src/test/java/usage/fail/test2.txt"));
 		Assert.assertFalse(testUsage("src/test/java/usage/fail/test3.txt"));
 		Assert.assertFalse(testUsage("src/test/java/usage/fail/test4.txt"));
+		Assert.assertFalse(testUsage("src/test/java/usage/fail/test5.txt"));
+		Assert.assertFalse(testUsage("src/test/java/usage/fail/test6.txt"));
+		Assert.assertFalse(testUsage("src/test/java/usage/fail/test7.txt"));
+		Assert.assertFalse(testUsage("src/test/java/usage/fail/test8.txt"));
 	}
 }
@@ -0,0 +1,45 @@
+package verifier;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+// Stands in for an SMT solver process in ProcessBackendTest.
+// Answers every (check-sat) with its first argument, or misbehaves with "hang" or "crash".
+// With "options" or "logic" it answers unsat if the options set so far and the check command are
+// those ProcessBackendTest configures, and unknown otherwise.
+// Scripts containing "(bad" get an error response first.
+public class FakeSolver {
+    public static void main(String[] args) throws IOException {
+        String mode = args[0];
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+        StringBuilder seen = new StringBuilder();
+        String line;
+        while ((line = in.readLine()) != null) {
+            seen.append(line).append('\n');
+            if (line.contains("(bad")) {
+                System.out.println("(error \"line 1: unknown command\")");
+            }
+            if (line.contains("(check-sat")) {
+                switch (mode) {
+                    case "hang" -> {
+                        while (true) {
+                            try {
+                                Thread.sleep(1000);
+                            } catch (InterruptedException ignored) {}
+                        }
+                    }
+                    case "crash" -> System.exit(1);
+                    case "options" -> System.out.println(
+                        seen.indexOf("(set-option :timeout 5000)") >= 0
+                        && seen.indexOf("(set-option :random-seed 7)") >= 0
+                        && line.contains("(check-sat-using (then simplify smt))") ? "unsat" : "unknown");
+                    case "logic" -> System.out.println(
+                        seen.indexOf("(set-logic QF_LIA)") >= 0 && line.contains("(check-sat)") ? "unsat" : "unknown");
+                    default -> System.out.println(mode);
+                }
+                System.out.flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package verifier;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ProcessBackendTest {
+    private static final String SCRIPT = "(declare-fun x () Int)\n(assert (> x 0))";
+
+    ProcessBackend fake(String mode, int processes, int timeoutMs) {
+        String java = System.getProperty("java.home") + "/bin/java";
+        List<String> command = List.of(java, "-cp", System.getProperty("java.class.path"), "verifier.FakeSolver", mode);
+        return new ProcessBackend(command, processes, timeoutMs);
+    }
+
+    @Test
+    public void answers() {
+        try (ProcessBackend backend = fake("unsat", 2, 0)) {
+            for (int i = 0; i < 5; i++) {
+                Assert.assertEquals(Verdict.VALID, backend.check(SCRIPT));
+            }
+        }
+        try (ProcessBackend backend = fake("sat", 1, 0)) {
+            Assert.assertEquals(Verdict.INVALID, backend.check(SCRIPT));
+        }
+        try (ProcessBackend backend = fake("unknown", 1, 0)) {
+            Assert.assertEquals(Verdict.UNKNOWN, backend.check(SCRIPT));
+        }
+    }
+
+    @Test
+    public void timeout() {
+        try (ProcessBackend backend = fake("hang", 1, 500)) {
+            Assert.assertEquals(Verdict.UNKNOWN, backend.check(SCRIPT));
+            // the hung process was replaced, so the pool keeps working
+            Assert.assertEquals(Verdict.UNKNOWN, backend.check(SCRIPT));
+        }
+    }
+
+    @Test
+    public void crash() {
+        try (ProcessBackend backend = fake("crash", 1, 0)) {
+            Assert.assertEquals(Verdict.UNKNOWN, backend.check(SCRIPT));
+            Assert.assertEquals(Verdict.UNKNOWN, backend.check(SCRIPT));
+        }
+    }
+
+    @Test
+    public void passesOptions() {
+        VerificationConfig config = new VerificationConfig();
+        String java = System.getProperty("java.home") + "/bin/java";
+        config.solverCommand = List.of(java, "-cp", System.getProperty("java.class.path"), "verifier.FakeSolver", "options");
+        config.timeoutMs = 5000;
+        config.randomSeed = 7;
+        config.tactics = List.of("simplify", "smt");
+        try (ProcessBackend backend = ProcessBackend.of(config)) {
+            Assert.assertEquals(Verdict.VALID, backend.check(SCRIPT));
+        }
+    }
+
+    @Test
+    public void logic() {
+        VerificationConfig config = new VerificationConfig();
+        String java = System.getProperty("java.home") + "/bin/java";
+        config.solverCommand = List.of(java, "-cp", System.getProperty("java.class.path"), "verifier.FakeSolver", "logic");
+        config.logic = "QF_LIA";
+        try (ProcessBackend backend = ProcessBackend.of(config)) {
+            Assert.assertEquals(Verdict.VALID, backend.check(SCRIPT));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void closedBackendRejectsQueries() {
+        ProcessBackend backend = fake("unsat", 1, 0);
+        backend.close();
+        backend.check(SCRIPT);
+    }
+
+    @Test
+    public void error() {
+        try (ProcessBackend backend = fake("unsat", 1, 0)) {
+            try {
+                backend.check("(bad)");
+                Assert.fail("Solver error was not reported.");
+            } catch (IllegalStateException expected) {}
+            Assert.assertEquals(Verdict.VALID, backend.check(SCRIPT));
+        }
+    }
+}
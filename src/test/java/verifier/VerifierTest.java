@@ -3,6 +3,9 @@ package verifier;
 import static org.junit.Assert.fail;
 
 import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import org.junit.Assert;
@@ -10,12 +13,19 @@ import org.junit.Test;
 import verifier.VerificationVisitor;
 
 import ast.ASTNode;
+import ast.BlockNode;
+import ast.CheckNode;
+import ast.IfNode;
 import ast.Parser;
 import lexer.Lexer;
 import logging.*;
 
 public class VerifierTest {
     void testPass(String filename) {
+		testPass(filename, new VerificationConfig());
+	}
+
+    void testPass(String filename, VerificationConfig config) {
 		try {
 			Lexer lexer = Lexer.make(filename);
 			Parser parser = new Parser(lexer);
@@ -23,7 +33,7 @@ public class VerifierTest {
 			boolean pass = lexer.dumpLogs() && program != null;
 			Assert.assertTrue("Program " + filename + " failed parsing.", pass);
             
-            VerificationVisitor verifier = new VerificationVisitor();
+            VerificationVisitor verifier = config.makeVisitor();
             program.acceptVisitor(verifier);
 			Assert.assertTrue("Program " + filename + " failed verification.", verifier.verifyCondition());
 		} catch (IOException e) {
@@ -32,6 +42,10 @@ public class VerifierTest {
 	}
 
     void testFail(String filename) {
+		testFail(filename, new VerificationConfig());
+	}
+
+    void testFail(String filename, VerificationConfig config) {
 		try {
 			Lexer lexer = Lexer.make(filename);
 			Parser parser = new Parser(lexer);
@@ -39,7 +53,7 @@ public class VerifierTest {
 			boolean pass = lexer.dumpLogs() && program != null;
 			Assert.assertTrue("Program " + filename + " failed parsing.", pass);
 
-			VerificationVisitor verifier = new VerificationVisitor();
+			VerificationVisitor verifier = config.makeVisitor();
 			program.acceptVisitor(verifier);
 			Assert.assertFalse("Program " + filename + " passed verification.", verifier.verifyCondition());
 		} catch (IOException e) {
@@ -48,6 +62,10 @@ public class VerifierTest {
 	}
 
 	void testTime(String filename){
+		testTime(filename, new VerificationConfig());
+	}
+
+	void testTime(String filename, VerificationConfig config){
 		try {
 			Lexer lexer = Lexer.make(filename);
 			Parser parser = new Parser(lexer);
@@ -55,13 +73,13 @@ public class VerifierTest {
 			boolean pass = lexer.dumpLogs() && program != null;
 			Assert.assertTrue("Program " + filename + " failed parsing.", pass);
             
-            VerificationVisitor verifier = new VerificationVisitor();
+            VerificationVisitor verifier = config.makeVisitor();
             program.acceptVisitor(verifier);
 			Assert.assertTrue("Program " + filename + " failed verification.", verifier.verifyCondition());
 
 			// warmup
 			for (int i = 0; i < 10; i++){
-				verifier = new VerificationVisitor();
+				verifier = config.makeVisitor();
 				program.acceptVisitor(verifier);
 				verifier.verifyCondition();
 			}
@@ -71,7 +89,7 @@ public class VerifierTest {
 			long totalSolveTimeNs = 0;
 			long totalTimeNs = 0;
 			for (int i = 0; i < numRuns; i++){
-				verifier = new VerificationVisitor();
+				verifier = config.makeVisitor();
 				final long beginVCGen = System.nanoTime();
 				program.acceptVisitor(verifier);
 				final long endVCGen = System.nanoTime();
@@ -91,7 +109,7 @@ public class VerifierTest {
 			long avgVCGenMs = totalVCGenTimeMs/numRuns;
 			long avgSolveMs = totalSolveTimeMs/numRuns;
 			long avgTimeMs = totalTimeMs/numRuns;
-			System.out.println("Total average time for verifying " + filename + " is " + avgTimeMs + "ms");
+			System.out.println("Total average time for verifying " + filename + " (" + config + ") is " + avgTimeMs + "ms");
 			System.out.println("Average time for VC generation of " + filename + " is " + avgVCGenMs + "ms");
 			System.out.println("Average time for Z3 solving " + filename + " is " + avgSolveMs + "ms");
 			System.out.println();
@@ -125,6 +143,11 @@ public class VerifierTest {
 		testPass("src/test/java/verifier/pass/test16f.txt");
 		testPass("src/test/java/verifier/pass/test16g.txt");
 		testPass("src/test/java/verifier/pass/test16h.txt");
+		testPass("src/test/java/verifier/pass/test17.txt");
+		testPass("src/test/java/verifier/pass/test18.txt");
+		testPass("src/test/java/verifier/pass/test19.txt");
+		testPass("src/test/java/verifier/pass/test20.txt");
+		testPass("src/test/java/verifier/pass/test21.txt");
     }
 
     @Test
@@ -136,8 +159,470 @@ public class VerifierTest {
 		testFail("src/test/java/verifier/fail/test5.txt");
 		testFail("src/test/java/verifier/fail/test6.txt");
 		testFail("src/test/java/verifier/fail/test7.txt");
+		testFail("src/test/java/verifier/fail/test8.txt");
+		testFail("src/test/java/verifier/fail/test9.txt");
+		testFail("src/test/java/verifier/fail/test10.txt");
+		testFail("src/test/java/verifier/fail/test11.txt");
+		testFail("src/test/java/verifier/fail/test12.txt");
+		testFail("src/test/java/verifier/fail/test13.txt");
+		testFail("src/test/java/verifier/fail/test14.txt");
     }
 
+	@Test
+	public void configured() {
+		VerificationConfig config = new VerificationConfig();
+		Assert.assertTrue(config.parseFlag("--tactics=simplify,solve-eqs,smt"));
+		Assert.assertTrue(config.parseFlag("--timeout=10000"));
+		Assert.assertTrue(config.parseFlag("--seed=7"));
+		Assert.assertTrue(config.parseFlag("--models=false"));
+		Assert.assertFalse(config.parseFlag("--unknown=1"));
+		testPass("src/test/java/verifier/pass/test1.txt", config);
+		testPass("src/test/java/verifier/pass/test16c.txt", config);
+
+		config = new VerificationConfig();
+		Assert.assertTrue(config.parseFlag("--logic=QF_NIA"));
+		testPass("src/test/java/verifier/pass/test3.txt", config);
+	}
+
+	@Test
+	public void bitVector() {
+		VerificationConfig config = new VerificationConfig();
+		Assert.assertTrue(config.parseFlag("--encoding=bv"));
+		testPass("src/test/java/verifier/pass/test1.txt", config);
+		testPass("src/test/java/verifier/pass/test3.txt", config);
+		testPass("src/test/java/verifier/pass/test16c.txt", config);
+		testFail("src/test/java/verifier/fail/test1.txt", config);
+		testFail("src/test/java/verifier/fail/test8.txt", config);
+
+		// wraps around in 64 bits but not with unbounded integers
+		testPass("src/test/java/verifier/overflow/test1.txt");
+		testFail("src/test/java/verifier/overflow/test1.txt", config);
+		Assert.assertTrue(config.parseFlag("--overflow-checks=false"));
+		testFail("src/test/java/verifier/overflow/test1.txt", config);
+	}
+
+	@Test
+	public void encodingsTime() {
+		VerificationConfig config = new VerificationConfig();
+		config.encoding = VerificationConfig.Encoding.BITVECTOR;
+		testTime("src/test/java/verifier/pass/test3.txt");
+		testTime("src/test/java/verifier/pass/test3.txt", config);
+		testTime("src/test/java/verifier/pass/test16b.txt");
+		testTime("src/test/java/verifier/pass/test16b.txt", config);
+		// testTime("src/test/java/verifier/pass/test16d.txt");
+		// testTime("src/test/java/verifier/pass/test16d.txt", config);
+	}
+
+	@Test
+	public void textVC() {
+		VerificationConfig config = new VerificationConfig();
+		Assert.assertTrue(config.parseFlag("--vcgen=text"));
+		testPass("src/test/java/verifier/pass/test1.txt", config);
+		testPass("src/test/java/verifier/pass/test2.txt", config);
+		testPass("src/test/java/verifier/pass/test3.txt", config);
+		testPass("src/test/java/verifier/pass/test13.txt", config);
+		testPass("src/test/java/verifier/pass/test15.txt", config);
+		testPass("src/test/java/verifier/pass/test16c.txt", config);
+		testPass("src/test/java/verifier/pass/test16h.txt", config);
+		testPass("src/test/java/verifier/pass/test17.txt", config);
+		// variables named like SMT-LIB keywords and functions
+		testPass("src/test/java/verifier/pass/test22.txt", config);
+		testFail("src/test/java/verifier/fail/test15.txt", config);
+		testFail("src/test/java/verifier/fail/test1.txt", config);
+		testFail("src/test/java/verifier/fail/test2.txt", config);
+		testFail("src/test/java/verifier/fail/test3.txt", config);
+		testFail("src/test/java/verifier/fail/test4.txt", config);
+		testFail("src/test/java/verifier/fail/test5.txt", config);
+		testFail("src/test/java/verifier/fail/test6.txt", config);
+		testFail("src/test/java/verifier/fail/test7.txt", config);
+		testFail("src/test/java/verifier/fail/test8.txt", config);
+	}
+
+	@Test
+	public void linearize() {
+		VerificationConfig config = new VerificationConfig();
+		Assert.assertTrue(config.parseFlag("--linearize=true"));
+		testPass("src/test/java/verifier/pass/test1.txt", config);
+		testPass("src/test/java/verifier/pass/test2.txt", config);
+		testPass("src/test/java/verifier/pass/test3.txt", config);
+		testPass("src/test/java/verifier/pass/test13.txt", config);
+		testPass("src/test/java/verifier/pass/test17.txt", config);
+		testPass("src/test/java/verifier/pass/test23.txt", config);
+		testFail("src/test/java/verifier/fail/test1.txt", config);
+		testFail("src/test/java/verifier/fail/test2.txt", config);
+		testFail("src/test/java/verifier/fail/test3.txt", config);
+		testFail("src/test/java/verifier/fail/test8.txt", config);
+		testFail("src/test/java/verifier/fail/test16.txt", config);
+	}
+
+	List<String> nonlinearTerms(String filename, boolean valid) throws IOException {
+		VerificationConfig config = new VerificationConfig();
+		config.linearize = true;
+		VerificationVisitor verifier = new VerificationVisitor(config);
+		parse(filename).acceptVisitor(verifier);
+		Assert.assertEquals(valid, verifier.verifyCondition());
+		return verifier.getNonlinearTerms();
+	}
+
+	@Test
+	public void nonlinearTerms() throws IOException {
+		// every product in test17 has a constant-propagated factor: y * z, z * 1 * y, z * a, a * a
+		Assert.assertEquals(List.of(), nonlinearTerms("src/test/java/verifier/pass/test17.txt", true));
+		Assert.assertEquals(List.of(), nonlinearTerms("src/test/java/verifier/fail/test8.txt", false));
+		// k * x is linear once k is 3; x * y and z * 1 * y, which folds to z * y, are not
+		Assert.assertEquals(Set.of("(* x y)", "(* z y)"), new HashSet<>(nonlinearTerms("src/test/java/verifier/pass/test23.txt", true)));
+		Assert.assertEquals(Set.of("(* x y)", "(* z y)"), new HashSet<>(nonlinearTerms("src/test/java/verifier/fail/test16.txt", false)));
+	}
+
+	@Test
+	public void textVCTime() {
+		VerificationConfig config = new VerificationConfig();
+		config.textVC = true;
+		testTime("src/test/java/verifier/pass/test16a.txt");
+		testTime("src/test/java/verifier/pass/test16a.txt", config);
+		testTime("src/test/java/verifier/pass/test16b.txt");
+		testTime("src/test/java/verifier/pass/test16b.txt", config);
+	}
+
+	@Test
+	public void portfolio() {
+		VerificationConfig config = new VerificationConfig();
+		Assert.assertTrue(config.parseFlag("--portfolio=3"));
+		testPass("src/test/java/verifier/pass/test3.txt", config);
+		testPass("src/test/java/verifier/pass/test16c.txt", config);
+		testPass("src/test/java/verifier/pass/test17.txt", config);
+		testFail("src/test/java/verifier/fail/test1.txt", config);
+		testFail("src/test/java/verifier/fail/test8.txt", config);
+		int wins = 0;
+		for (int n : config.getPortfolio().getWins().values()) {
+			wins += n;
+		}
+		Assert.assertTrue("Portfolio did not record its winners.", wins > 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void portfolioRejectsSolverProcesses() {
+		VerificationConfig config = new VerificationConfig();
+		Assert.assertTrue(config.parseFlag("--portfolio=3"));
+		Assert.assertTrue(config.parseFlag("--solver=z3 -in"));
+		config.validate();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void streamingRejectsSolverProcesses() {
+		VerificationConfig config = new VerificationConfig();
+		Assert.assertTrue(config.parseFlag("--engine=sp"));
+		config.validate();
+		Assert.assertTrue(config.parseFlag("--solver=z3 -in"));
+		config.validate();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void symbolicRejectsSolverProcesses() {
+		VerificationConfig config = new VerificationConfig();
+		Assert.assertTrue(config.parseFlag("--engine=symbolic"));
+		config.validate();
+		Assert.assertTrue(config.parseFlag("--solver=z3 -in"));
+		config.validate();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void symbolicRejectsPortfolio() {
+		VerificationConfig config = new VerificationConfig();
+		Assert.assertTrue(config.parseFlag("--engine=symbolic"));
+		Assert.assertTrue(config.parseFlag("--portfolio=3"));
+		config.validate();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void watchRejectsSolverProcesses() {
+		VerificationConfig config = new VerificationConfig();
+		Assert.assertTrue(config.parseFlag("--watch=true"));
+		config.validate();
+		Assert.assertTrue(config.parseFlag("--solver=z3 -in"));
+		config.validate();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void watchRejectsTextVC() {
+		VerificationConfig config = new VerificationConfig();
+		Assert.assertTrue(config.parseFlag("--watch=true"));
+		Assert.assertTrue(config.parseFlag("--vcgen=text"));
+		config.validate();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void streamingRejectsBitVectors() {
+		VerificationConfig config = new VerificationConfig();
+		Assert.assertTrue(config.parseFlag("--engine=sp"));
+		Assert.assertTrue(config.parseFlag("--encoding=bv"));
+		config.validate();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void budgetRejectsOtherExecutors() {
+		VerificationConfig config = new VerificationConfig();
+		Assert.assertTrue(config.parseFlag("--max-statements=1000"));
+		Assert.assertTrue(config.parseFlag("--executor=parallel"));
+		config.validate();
+		Assert.assertTrue(config.parseFlag("--executor=bytecode"));
+		config.validate();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void budgetRejectsRuns() {
+		VerificationConfig config = new VerificationConfig();
+		Assert.assertTrue(config.parseFlag("--deadline=1000"));
+		Assert.assertTrue(config.parseFlag("--runs=4"));
+		config.validate();
+	}
+
+	@Test
+	public void iteIfs() {
+		VerificationConfig config = new VerificationConfig();
+		Assert.assertTrue(config.parseFlag("--ite=true"));
+		for (int i = 1; i <= 15; i++) {
+			testPass("src/test/java/verifier/pass/test" + i + ".txt", config);
+		}
+		testPass("src/test/java/verifier/pass/test16c.txt", config);
+		testPass("src/test/java/verifier/pass/test16h.txt", config);
+		testPass("src/test/java/verifier/pass/test17.txt", config);
+		for (int i = 1; i <= 9; i++) {
+			testFail("src/test/java/verifier/fail/test" + i + ".txt", config);
+		}
+	}
+
+	@Test
+	public void iteIfsTime() {
+		VerificationConfig config = new VerificationConfig();
+		config.iteIfs = true;
+		testTime("src/test/java/verifier/pass/test16c.txt");
+		testTime("src/test/java/verifier/pass/test16c.txt", config);
+		// testTime("src/test/java/verifier/pass/test16d.txt");
+		// testTime("src/test/java/verifier/pass/test16d.txt", config);
+		// testTime("src/test/java/verifier/pass/test16e.txt");
+		// testTime("src/test/java/verifier/pass/test16e.txt", config);
+		// testTime("src/test/java/verifier/pass/test16f.txt");
+		// testTime("src/test/java/verifier/pass/test16f.txt", config);
+		// testTime("src/test/java/verifier/pass/test16g.txt");
+		// testTime("src/test/java/verifier/pass/test16g.txt", config);
+		// testTime("src/test/java/verifier/pass/test16h.txt");
+		// testTime("src/test/java/verifier/pass/test16h.txt", config);
+	}
+
+	@Test
+	public void summaries() {
+		VerificationConfig config = new VerificationConfig();
+		Assert.assertTrue(config.parseFlag("--summaries=true"));
+		for (int i = 1; i <= 15; i++) {
+			testPass("src/test/java/verifier/pass/test" + i + ".txt", config);
+		}
+		testPass("src/test/java/verifier/pass/test16c.txt", config);
+		testPass("src/test/java/verifier/pass/test16h.txt", config);
+		testPass("src/test/java/verifier/pass/test17.txt", config);
+		testPass("src/test/java/verifier/pass/test18.txt", config);
+		testPass("src/test/java/verifier/pass/test19.txt", config);
+		for (int i = 1; i <= 9; i++) {
+			testFail("src/test/java/verifier/fail/test" + i + ".txt", config);
+		}
+	}
+
+	@Test
+	public void summariesReused() throws IOException {
+		Lexer lexer = Lexer.make("src/test/java/verifier/pass/test18.txt");
+		ASTNode program = new Parser(lexer).parseProgram();
+		VerificationConfig config = new VerificationConfig();
+		config.blockSummaries = true;
+		VerificationVisitor verifier = config.makeVisitor();
+		program.acceptVisitor(verifier);
+		Assert.assertTrue(verifier.verifyCondition());
+		// three copies of the same if statement, one of them renamed, have four distinct blocks;
+		// the two copies summarized last reuse both branch summaries of the first
+		Assert.assertEquals(4, verifier.getSummaries().getMisses());
+		Assert.assertEquals(4, verifier.getSummaries().getHits());
+	}
+
+	boolean streamVerify(String filename) {
+		try (ForwardVerifier verifier = new ForwardVerifier(new VerificationConfig())) {
+			Lexer lexer = Lexer.make(filename);
+			boolean pass = new Parser(lexer).streamProgram(verifier) && lexer.dumpLogs();
+			Assert.assertTrue("Program " + filename + " failed parsing.", pass);
+			return verifier.verifyCondition();
+		} catch (IOException e) {
+			Assert.fail("Could not open file " + filename);
+			return false;
+		}
+	}
+
+	@Test
+	public void forward() {
+		for (int i = 1; i <= 15; i++) {
+			String filename = "src/test/java/verifier/pass/test" + i + ".txt";
+			Assert.assertTrue("Program " + filename + " failed verification.", streamVerify(filename));
+		}
+		Assert.assertTrue(streamVerify("src/test/java/verifier/pass/test16c.txt"));
+		Assert.assertTrue(streamVerify("src/test/java/verifier/pass/test16h.txt"));
+		Assert.assertTrue(streamVerify("src/test/java/verifier/pass/test17.txt"));
+		for (int i = 1; i <= 9; i++) {
+			String filename = "src/test/java/verifier/fail/test" + i + ".txt";
+			Assert.assertFalse("Program " + filename + " passed verification.", streamVerify(filename));
+		}
+	}
+
+	boolean executeSymbolically(String filename) {
+		try {
+			Lexer lexer = Lexer.make(filename);
+			Parser parser = new Parser(lexer);
+			ASTNode program = parser.parseProgram();
+			boolean pass = lexer.dumpLogs() && program != null;
+			Assert.assertTrue("Program " + filename + " failed parsing.", pass);
+			try (SymbolicExecutor executor = new SymbolicExecutor(new VerificationConfig())) {
+				executor.run(program);
+				return executor.verifyCondition();
+			}
+		} catch (IOException e) {
+			Assert.fail("Could not open file " + filename);
+			return false;
+		}
+	}
+
+	@Test
+	public void symbolic() {
+		for (int i = 1; i <= 15; i++) {
+			String filename = "src/test/java/verifier/pass/test" + i + ".txt";
+			Assert.assertTrue("Program " + filename + " failed verification.", executeSymbolically(filename));
+		}
+		Assert.assertTrue(executeSymbolically("src/test/java/verifier/pass/test16c.txt"));
+		Assert.assertTrue(executeSymbolically("src/test/java/verifier/pass/test16h.txt"));
+		Assert.assertTrue(executeSymbolically("src/test/java/verifier/pass/test17.txt"));
+		for (int i = 1; i <= 9; i++) {
+			String filename = "src/test/java/verifier/fail/test" + i + ".txt";
+			Assert.assertFalse("Program " + filename + " passed verification.", executeSymbolically(filename));
+		}
+	}
+
+	ASTNode parse(String filename) throws IOException {
+		Lexer lexer = Lexer.make(filename);
+		ASTNode program = new Parser(lexer).parseProgram();
+		Assert.assertTrue("Program " + filename + " failed parsing.", lexer.dumpLogs() && program != null);
+		return program;
+	}
+
+	@Test
+	public void incremental() throws IOException {
+		try (IncrementalVerifier verifier = new IncrementalVerifier(new VerificationConfig())) {
+			verifier.run(parse("src/test/java/verifier/incremental/test1a.txt"));
+			Assert.assertTrue(verifier.verifyCondition());
+			Assert.assertEquals(5, verifier.getSolved());
+			// the same program again is answered entirely from the last run
+			verifier.run(parse("src/test/java/verifier/incremental/test1a.txt"));
+			Assert.assertTrue(verifier.verifyCondition());
+			Assert.assertEquals(0, verifier.getSolved());
+			// the edit to y only reaches the two checks that read y; the others are reused,
+			// the first of them without evaluating its statements again
+			verifier.run(parse("src/test/java/verifier/incremental/test1b.txt"));
+			Assert.assertTrue(verifier.verifyCondition());
+			Assert.assertEquals(4, verifier.getReplayedStatements());
+			Assert.assertEquals(2, verifier.getSolved());
+			Assert.assertEquals(3, verifier.getReused());
+			Assert.assertEquals(9, verifier.getResults().get(2).location.line);
+		}
+	}
+
+	@Test
+	public void report() throws IOException {
+		VerificationConfig config = new VerificationConfig();
+		config.reportPath = "report.csv";
+		try (IncrementalVerifier verifier = new IncrementalVerifier(config)) {
+			verifier.run(parse("src/test/java/verifier/incremental/test1a.txt"));
+		}
+		VerificationReport report = config.getReport();
+		report.phase("solve", 2000000);
+		// one obligation per check, in program order, each with its path condition and check
+		Assert.assertEquals(5, report.getObligations().size());
+		VerificationReport.Obligation first = report.getObligations().get(0);
+		Assert.assertEquals(4, first.location.line);
+		Assert.assertEquals(Verdict.VALID, first.verdict);
+		Assert.assertTrue(first.dagSize > 1);
+		Assert.assertEquals(0, first.variables);
+		String[] rows = report.toCsv().split("\n");
+		Assert.assertEquals(7, rows.length);
+		Assert.assertEquals("phase,solve,,,,,,2.000,,,,,,", rows[1]);
+		Assert.assertTrue(rows[2].startsWith("obligation,,4,"));
+		Assert.assertTrue(report.toJson().contains("\"solve\": 2.000"));
+	}
+
+	@Test
+	public void wholeProgramReport() throws IOException {
+		VerificationConfig config = new VerificationConfig();
+		config.reportPath = "report.json";
+		VerificationVisitor verifier = new VerificationVisitor(config);
+		parse("src/test/java/verifier/pass/test2.txt").acceptVisitor(verifier);
+		Assert.assertEquals(Verdict.VALID, verifier.verify());
+		// the single query covers both checks, in source order
+		VerificationReport.Obligation obligation = config.getReport().getObligations().get(0);
+		Assert.assertEquals(2, obligation.checks.size());
+		Assert.assertEquals(10, obligation.location.line);
+		Assert.assertEquals(11, obligation.checks.get(1).line);
+	}
+
+	@Test
+	public void prune() throws IOException {
+		ASTNode program = parse("src/test/java/verifier/prune/test1.txt");
+		DeadCodeEliminator eliminator = new DeadCodeEliminator(new VerificationConfig());
+		BlockNode block = (BlockNode) eliminator.optimize(program);
+		// every condition is decided by the constants, and only the checks on taken branches are counted
+		Assert.assertEquals(3, eliminator.getDecidedIfs());
+		Assert.assertEquals(2, eliminator.getRemovedChecks());
+		Assert.assertEquals(6, block.children.size());
+		for (ASTNode statement : block.children) {
+			Assert.assertFalse(statement instanceof IfNode || statement instanceof CheckNode);
+		}
+	}
+
+	// compares symbolic execution against the WP visitor on one program
+	void symbolicTime(String filename) {
+		try {
+			Lexer lexer = Lexer.make(filename);
+			ASTNode program = new Parser(lexer).parseProgram();
+			Assert.assertTrue("Program " + filename + " failed parsing.", lexer.dumpLogs() && program != null);
+			int numRuns = 10;
+			long wpTimeNs = 0;
+			long symbolicTimeNs = 0;
+			for (int i = 0; i < numRuns; i++) {
+				final long beginWP = System.nanoTime();
+				VerificationVisitor verifier = new VerificationVisitor();
+				program.acceptVisitor(verifier);
+				Assert.assertTrue(verifier.verifyCondition());
+				final long endWP = System.nanoTime();
+				try (SymbolicExecutor executor = new SymbolicExecutor(new VerificationConfig())) {
+					executor.run(program);
+					Assert.assertTrue(executor.verifyCondition());
+				}
+				final long endSymbolic = System.nanoTime();
+				wpTimeNs += endWP - beginWP;
+				symbolicTimeNs += endSymbolic - endWP;
+			}
+			System.out.println("Average WP time for " + filename + " is " + TimeUnit.NANOSECONDS.toMillis(wpTimeNs / numRuns) + "ms");
+			System.out.println("Average symbolic execution time for " + filename + " is " + TimeUnit.NANOSECONDS.toMillis(symbolicTimeNs / numRuns) + "ms");
+			System.out.println();
+		} catch (IOException e) {
+			Assert.fail("Could not open file " + filename);
+		}
+	}
+
+	@Test
+	public void symbolicTimes() {
+		symbolicTime("src/test/java/verifier/pass/test16a.txt");
+		symbolicTime("src/test/java/verifier/pass/test16b.txt");
+		// symbolicTime("src/test/java/verifier/pass/test16c.txt");
+		// symbolicTime("src/test/java/verifier/pass/test16d.txt");
+		// symbolicTime("src/test/java/verifier/pass/test16e.txt");
+		// symbolicTime("src/test/java/verifier/pass/test16f.txt");
+		// symbolicTime("src/test/java/verifier/pass/test16g.txt");
+		// symbolicTime("src/test/java/verifier/pass/test16h.txt");
+	}
+
 	@Test
 	public void testsTime(){
         testTime("src/test/java/verifier/pass/test1.txt");